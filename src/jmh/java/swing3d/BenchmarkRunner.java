@@ -0,0 +1,37 @@
+package swing3d;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler switched on, so that allocation
+ * rates are reported next to the timings. The forked JVMs run headless.
+ *
+ * Build and run with:
+ *
+ * mvn -Pbenchmarks package
+ * java -jar target/benchmarks.jar [JMH options]
+ *
+ * Any normal JMH command line options (a benchmark regex, -p sides=6, -f 1,
+ * and so on) are passed through.
+ *
+ * @author marcus
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException,
+            CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .build();
+        new Runner(options).run();
+    } // main( String [] )
+
+} // BenchmarkRunner
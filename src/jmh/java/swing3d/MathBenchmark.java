@@ -0,0 +1,74 @@
+package swing3d;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for Matrix4X4 and Vector: the matrix product used to build
+ * spinners, the matrix-vector product applied to every vertex of every
+ * object, and a face normal worked out from its corners. The vector ones are
+ * run both allocating a result each time and writing into a reused one.
+ *
+ * @author marcus
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MathBenchmark {
+
+    @Benchmark
+    public Matrix4X4 multiplyMatrix(SceneState state) {
+        Matrix4X4 product = state.spinner;
+        for (int i = 0; i < state.objects; i++) {
+            product = product.multiply(state.spinner);
+        } // for
+        return product;
+    } // multiplyMatrix( SceneState )
+
+    @Benchmark
+    public void multiplyVector(SceneState state, Blackhole blackhole) {
+        for (Vector v : state.vertices) {
+            blackhole.consume(state.spinner.multiply(v));
+        } // for
+    } // multiplyVector( SceneState, Blackhole )
+
+    @Benchmark
+    public Vector transformVectorInto(SceneState state) {
+        Vector product = new Vector();
+        for (Vector v : state.vertices) {
+            state.spinner.transformInto(v, product);
+        } // for
+        return product;
+    } // transformVectorInto( SceneState )
+
+    @Benchmark
+    public void normalAllocating(SceneState state, Blackhole blackhole) {
+        Vector[] v = state.vertices;
+        for (int i = 2; i < v.length; i++) {
+            blackhole.consume(v[i].subtract(v[i - 1])
+                    .cross(v[i - 2].subtract(v[i - 1])).normalise());
+        } // for
+    } // normalAllocating( SceneState, Blackhole )
+
+    @Benchmark
+    public Vector normalInto(SceneState state) {
+        Vector[] v = state.vertices;
+        VectorPool pool = VectorPool.get();
+        int mark = pool.mark();
+        Vector edge = pool.take();
+        Vector other = pool.take();
+        Vector normal = new Vector();
+        for (int i = 2; i < v.length; i++) {
+            v[i].subtractInto(v[i - 1], edge);
+            v[i - 2].subtractInto(v[i - 1], other);
+            edge.crossInto(other, normal);
+            normal.normaliseInPlace();
+        } // for
+        pool.release(mark);
+        return normal;
+    } // normalInto( SceneState )
+
+} // MathBenchmark
@@ -0,0 +1,52 @@
+package swing3d;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the per-frame work SwingPanel does on each Polygon3D:
+ * transforming the vertices, computing the face normals and sorting the sides.
+ *
+ * @author marcus
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolygonBenchmark {
+
+    @Benchmark
+    public void transform(SceneState state) {
+        for (Polygon3D poly : state.polygons) {
+            poly.transform(state.spinner);
+        } // for
+    } // transform( SceneState )
+
+    @Benchmark
+    public void sortSides(SceneState state, Blackhole blackhole) {
+        for (Polygon3D poly : state.polygons) {
+            blackhole.consume(poly.sortSides());
+        } // for
+    } // sortSides( SceneState, Blackhole )
+
+    @Benchmark
+    public ArrayList<Double> mergeSort(SceneState state) {
+        return MergeSort.mergeSort(state.depths, 0, state.depths.size());
+    } // mergeSort( SceneState )
+
+    @Benchmark
+    public void normals(SceneState state, Blackhole blackhole) {
+        for (Polygon3D poly : state.polygons) {
+            blackhole.consume(poly.getNormalTop());
+            blackhole.consume(poly.getNormalBottom());
+            for (int i = 0; i < state.sides - 1; i++) {
+                blackhole.consume(poly.getNormalSide(i));
+            } // for
+            blackhole.consume(poly.getNormalFinalSide());
+        } // for
+    } // normals( SceneState, Blackhole )
+
+} // PolygonBenchmark
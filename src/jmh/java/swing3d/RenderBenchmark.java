@@ -0,0 +1,60 @@
+package swing3d;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks a full Graphics2DRenderer.draw3DShape of every object onto an
+ * offscreen image, using the same camera paintComponent sets up for a 600 by
+ * 600 panel. The renderer is built on its own rather than through a
+ * SwingPanel, whose timer and simulation thread would run alongside the
+ * measurement.
+ *
+ * @author marcus
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private static final int SIZE = 600;
+
+    private Graphics2DRenderer renderer;
+    private BufferedImage image;
+    private Graphics2D g2D;
+    private Camera camera;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.renderer = new Graphics2DRenderer(new Illumination(),
+                new BackFaceCuller(), new FrameMetrics(), new DetailSelector());
+        this.image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        this.g2D = this.image.createGraphics();
+        this.camera = new Camera();
+        this.camera.setViewport(0, 0, SIZE, SIZE);
+    } // setUp()
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.g2D.dispose();
+    } // tearDown()
+
+    @Benchmark
+    public BufferedImage draw3DShape(SceneState state) {
+        for (Polygon3D poly : state.polygons) {
+            this.renderer.draw3DShape(this.camera, this.g2D, poly);
+        } // for
+        return this.image;
+    } // draw3DShape( SceneState )
+
+} // RenderBenchmark
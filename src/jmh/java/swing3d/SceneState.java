@@ -0,0 +1,58 @@
+package swing3d;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The shared benchmark fixture: a number of polygons with a given number of
+ * sides, the same spinner matrix SwingPanel uses, and the face depths the
+ * sorter works on.
+ *
+ * @author marcus
+ */
+@State(Scope.Thread)
+public class SceneState {
+
+    @Param({"6", "64", "512"})
+    public int sides;
+
+    @Param({"1", "16", "256"})
+    public int objects;
+
+    public List<Polygon3D> polygons;
+    public Matrix4X4 spinner;
+    public Vector[] vertices;
+    public ArrayList<Double> depths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.polygons = new ArrayList<>();
+        for (int i = 0; i < objects; i++) {
+            this.polygons.add(Polygon3D.prism(sides, 0.6, 1));
+        } // for
+
+        Matrix4X4 a = new Matrix4X4();
+        a.rotationX(-0.01);
+        Matrix4X4 b = new Matrix4X4();
+        b.rotationY(0.04);
+        Matrix4X4 c = new Matrix4X4();
+        c.rotationZ(0.025);
+        this.spinner = a.multiply(b).multiply(c);
+
+        List<Vector> all = new ArrayList<>();
+        this.depths = new ArrayList<>();
+        for (Polygon3D poly : this.polygons) {
+            all.addAll(poly.getVertices());
+            for (int i = 0; i < sides; i++) {
+                this.depths.add(poly.getSideHighestZ(i));
+            } // for
+        } // for
+        this.vertices = all.toArray(new Vector[0]);
+    } // setUp()
+
+} // SceneState
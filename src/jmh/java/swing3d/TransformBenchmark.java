@@ -0,0 +1,108 @@
+package swing3d;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the bulk vertex transforms: the scalar loop Mesh has always used
+ * against whatever BulkTransform.detect finds, in double and single
+ * precision. To compare against the Vector API one, build with
+ * "mvn -Psimd,benchmarks package" and run with
+ * "java --add-modules jdk.incubator.vector -jar target/benchmarks.jar
+ * TransformBenchmark"; without those the detected transform is the scalar one
+ * too, and the two pairs of results should match.
+ *
+ * @author marcus
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformBenchmark {
+
+    /**
+     * Packed vertices, the rows of the spinner matrix and somewhere to put
+     * the results, in both precisions.
+     */
+    @State(Scope.Thread)
+    public static class Vertices {
+
+        @Param({"16", "256", "4096", "65536"})
+        public int count;
+
+        public final BulkTransform scalar = new ScalarTransform();
+        public final BulkTransform detected = BulkTransform.detect();
+        public double[] m = new double[12];
+        public double[][] from;
+        public double[][] to;
+        public float[] mf = new float[12];
+        public float[][] fromF;
+        public float[][] toF;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Matrix4X4 a = new Matrix4X4();
+            a.rotationX(-0.01);
+            Matrix4X4 b = new Matrix4X4();
+            b.rotationY(0.04);
+            Matrix4X4 c = new Matrix4X4();
+            c.rotationZ(0.025);
+            Matrix4X4 spinner = a.multiply(b).multiply(c);
+            for (int i = 0; i < 12; i++) {
+                this.m[i] = spinner.get(i / 4, i % 4);
+                this.mf[i] = (float) this.m[i];
+            } // for
+
+            Random random = new Random(1);
+            this.from = new double[4][count];
+            this.to = new double[4][count];
+            this.fromF = new float[4][count];
+            this.toF = new float[4][count];
+            for (int i = 0; i < count; i++) {
+                for (int k = 0; k < 3; k++) {
+                    this.from[k][i] = random.nextDouble() * 2 - 1;
+                    this.fromF[k][i] = (float) this.from[k][i];
+                } // for
+                this.from[3][i] = 1.0;
+                this.fromF[3][i] = 1.0f;
+            } // for
+        } // setUp()
+
+    } // Vertices
+
+    @Benchmark
+    public double[][] scalarDouble(Vertices v) {
+        v.scalar.transform(v.m, 0, v.from[0], v.from[1], v.from[2], v.from[3],
+                v.to[0], v.to[1], v.to[2], v.to[3], v.count);
+        return v.to;
+    } // scalarDouble( Vertices )
+
+    @Benchmark
+    public double[][] detectedDouble(Vertices v) {
+        v.detected.transform(v.m, 0, v.from[0], v.from[1], v.from[2], v.from[3],
+                v.to[0], v.to[1], v.to[2], v.to[3], v.count);
+        return v.to;
+    } // detectedDouble( Vertices )
+
+    @Benchmark
+    public float[][] scalarFloat(Vertices v) {
+        v.scalar.transform(v.mf, 0, v.fromF[0], v.fromF[1], v.fromF[2], v.fromF[3],
+                v.toF[0], v.toF[1], v.toF[2], v.toF[3], v.count);
+        return v.toF;
+    } // scalarFloat( Vertices )
+
+    @Benchmark
+    public float[][] detectedFloat(Vertices v) {
+        v.detected.transform(v.mf, 0, v.fromF[0], v.fromF[1], v.fromF[2], v.fromF[3],
+                v.toF[0], v.toF[1], v.toF[2], v.toF[3], v.count);
+        return v.toF;
+    } // detectedFloat( Vertices )
+
+} // TransformBenchmark
@@ -0,0 +1,115 @@
+package swing3d;
+
+/**
+ * The back-face culling stage of the render pipeline. A face is culled when its
+ * outward normal points away from the viewer, that is, when the dot product of
+ * the normal with the view direction is positive. With an orthographic
+ * camera the view direction is the one the camera looks in, the same for
+ * every face; with a perspective camera it is from the eye to the face.
+ *
+ * The culler counts the faces it tests and culls. Renderers call beginFrame
+ * before drawing, so after a frame the counts are for that frame.
+ *
+ * @author marcus
+ */
+public class BackFaceCuller {
+
+    // The direction the viewer looks in. A smaller z is nearer the viewer, so
+    // the viewer looks along +z.
+    private final Vector viewDirection = new Vector(0, 0, 1, 0);
+    private final double[] eye = new double[3];
+    private final double[] forward = new double[3];
+    private boolean perspective = false;
+    private int[] corners = new int[0];
+    private int facesTested = 0;
+    private int facesCulled = 0;
+
+    /**
+     * Resets the counters for a new frame, viewed along +z.
+     */
+    public void beginFrame() {
+        this.viewDirection.set(0, 0, 1, 0);
+        this.perspective = false;
+        this.facesTested = 0;
+        this.facesCulled = 0;
+    } // beginFrame()
+
+    /**
+     * Resets the counters for a new frame seen by a camera.
+     *
+     * @param camera The camera the frame is drawn from.
+     */
+    public void beginFrame(Camera camera) {
+        beginFrame();
+        this.perspective = camera.isPerspective();
+        if (this.perspective) {
+            camera.getEye(this.eye);
+        } else {
+            camera.getForward(this.forward);
+            this.viewDirection.set(this.forward[0], this.forward[1],
+                    this.forward[2], 0);
+        }
+    } // beginFrame( Camera )
+
+    /**
+     * Tests one face and counts it.
+     *
+     * @param poly The mesh.
+     * @param face The face, as numbered by the mesh.
+     * @return True if the face faces away from the viewer.
+     */
+    public boolean isCulled(Mesh poly, int face) {
+        this.facesTested++;
+        if (this.perspective) {
+            if (this.corners.length < poly.getMaxFaceSize()) {
+                this.corners = new int[poly.getMaxFaceSize()];
+            }
+            poly.getFaceVertices(face, this.corners);
+            int v = this.corners[0];
+            this.viewDirection.set(poly.getX(v) - this.eye[0],
+                    poly.getY(v) - this.eye[1], poly.getZ(v) - this.eye[2], 0);
+        }
+        if (poly.isFrontFacing(face, this.viewDirection)) {
+            return false;
+        }
+        this.facesCulled++;
+        return true;
+    } // isCulled( Mesh, int )
+
+    /**
+     * Writes the faces of a mesh that face the viewer into an array.
+     *
+     * @param poly The mesh.
+     * @param visible The array to fill. It must hold getFaceCount() values.
+     * @return The number of faces written.
+     */
+    public int cull(Mesh poly, int[] visible) {
+        int count = 0;
+        int faceCount = poly.getFaceCount();
+        for (int f = 0; f < faceCount; f++) {
+            if (!isCulled(poly, f)) {
+                visible[count++] = f;
+            }
+        } // for
+        return count;
+    } // cull( Mesh, int [] )
+
+    /**
+     * Returns the number of faces tested since the frame began.
+     *
+     * @return The number of faces tested.
+     */
+    public int getFacesTested() {
+        return this.facesTested;
+    } // getFacesTested()
+
+    /**
+     * Returns the number of faces culled since the frame began.
+     *
+     * @return The number of faces culled.
+     */
+    public int getFacesCulled() {
+        return this.facesCulled;
+    } // getFacesCulled()
+
+} // BackFaceCuller
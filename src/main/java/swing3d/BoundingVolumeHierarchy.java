@@ -0,0 +1,362 @@
+package swing3d;
+
+import java.util.Arrays;
+
+/**
+ * A bounding volume hierarchy over axis-aligned boxes, for finding the boxes
+ * that overlap a query box, or lie inside a set of planes, without testing
+ * every one of them.
+ *
+ * The caller sets every leaf's box each frame with setLeaf and then calls
+ * refit. The shape of the tree is built top down, splitting each node's
+ * leaves at the median along the axis their centres spread furthest over,
+ * and is only rebuilt when the number of leaves changes. Otherwise refit
+ * just recomputes the node boxes bottom up, which is linear in the number of
+ * nodes. Leaves that move a long way make the tree looser, never wrong.
+ *
+ * The nodes are kept in flat arrays in depth-first order: a node's left
+ * child is the node after it, and every child comes after its parent. The
+ * leaves under a node are a contiguous run of leafOrder.
+ *
+ * @author marcus
+ */
+public class BoundingVolumeHierarchy {
+
+    // The most leaves a node holds before it is split.
+    private static final int LEAF_SIZE = 4;
+
+    // The doubles per box: min x, y, z then max x, y, z.
+    private static final int BOX = 6;
+
+    private int leafCount = 0;
+    private int builtCount = -1;
+    private double[] leafBoxes = new double[0];
+    private int[] leafOrder = new int[0];
+    private int nodeCount = 0;
+    private double[] nodeBoxes = new double[0];
+    private int[] nodeStart = new int[0];
+    private int[] nodeSize = new int[0];
+    private int[] nodeRight = new int[0];
+    private int[] stack = new int[0];
+
+    /**
+     * Sets the number of leaves. If it differs from the number the tree was
+     * built with, the next refit rebuilds the tree.
+     *
+     * @param count The number of leaves.
+     */
+    public void setLeafCount(int count) {
+        if (this.leafBoxes.length < BOX * count) {
+            this.leafBoxes = Arrays.copyOf(this.leafBoxes, BOX * count);
+        }
+        this.leafCount = count;
+    } // setLeafCount( int )
+
+    /**
+     * Returns the number of leaves.
+     *
+     * @return The number of leaves.
+     */
+    public int getLeafCount() {
+        return this.leafCount;
+    } // getLeafCount()
+
+    /**
+     * Sets the box of a leaf.
+     *
+     * @param leaf The leaf, from 0 to getLeafCount() - 1.
+     * @param minX The smallest x of the box.
+     * @param minY The smallest y of the box.
+     * @param minZ The smallest z of the box.
+     * @param maxX The largest x of the box.
+     * @param maxY The largest y of the box.
+     * @param maxZ The largest z of the box.
+     */
+    public void setLeaf(int leaf, double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        int o = BOX * leaf;
+        this.leafBoxes[o] = minX;
+        this.leafBoxes[o + 1] = minY;
+        this.leafBoxes[o + 2] = minZ;
+        this.leafBoxes[o + 3] = maxX;
+        this.leafBoxes[o + 4] = maxY;
+        this.leafBoxes[o + 5] = maxZ;
+    } // setLeaf( int, double, double, double, double, double, double )
+
+    /**
+     * Brings the node boxes up to date with the leaf boxes, building the tree
+     * first if the number of leaves has changed.
+     */
+    public void refit() {
+        if (this.builtCount != this.leafCount) {
+            build();
+        }
+        for (int node = this.nodeCount - 1; node >= 0; node--) {
+            int o = BOX * node;
+            if (this.nodeRight[node] < 0) {
+                resetBox(this.nodeBoxes, o);
+                int end = this.nodeStart[node] + this.nodeSize[node];
+                for (int k = this.nodeStart[node]; k < end; k++) {
+                    includeBox(this.nodeBoxes, o, this.leafBoxes,
+                            BOX * this.leafOrder[k]);
+                } // for
+            } // if
+            else {
+                resetBox(this.nodeBoxes, o);
+                includeBox(this.nodeBoxes, o, this.nodeBoxes, o + BOX);
+                includeBox(this.nodeBoxes, o, this.nodeBoxes,
+                        BOX * this.nodeRight[node]);
+            } // else
+        } // for
+    } // refit()
+
+    /**
+     * Finds the leaves whose boxes overlap a box. A subtree whose box misses
+     * the query is skipped whole, and one whose box lies inside it is taken
+     * whole without testing its leaves.
+     *
+     * @param minX The smallest x of the query.
+     * @param minY The smallest y of the query.
+     * @param minZ The smallest z of the query.
+     * @param maxX The largest x of the query.
+     * @param maxY The largest y of the query.
+     * @param maxZ The largest z of the query.
+     * @param out Filled with the leaves found, in no particular order. Must
+     * hold getLeafCount() elements.
+     * @return The number of leaves found.
+     */
+    public int query(double minX, double minY, double minZ, double maxX,
+            double maxY, double maxZ, int[] out) {
+        if (this.nodeCount == 0) {
+            return 0;
+        }
+        int found = 0;
+        int top = 0;
+        this.stack[top++] = 0;
+        while (top > 0) {
+            int node = this.stack[--top];
+            double[] b = this.nodeBoxes;
+            int o = BOX * node;
+            if (b[o] > maxX || b[o + 3] < minX || b[o + 1] > maxY
+                    || b[o + 4] < minY || b[o + 2] > maxZ || b[o + 5] < minZ) {
+                continue;
+            }
+            boolean inside = b[o] >= minX && b[o + 3] <= maxX
+                    && b[o + 1] >= minY && b[o + 4] <= maxY
+                    && b[o + 2] >= minZ && b[o + 5] <= maxZ;
+            if (inside) {
+                int size = this.nodeSize[node];
+                System.arraycopy(this.leafOrder, this.nodeStart[node], out,
+                        found, size);
+                found += size;
+            } // if
+            else if (this.nodeRight[node] < 0) {
+                double[] l = this.leafBoxes;
+                int end = this.nodeStart[node] + this.nodeSize[node];
+                for (int k = this.nodeStart[node]; k < end; k++) {
+                    int leaf = this.leafOrder[k];
+                    int p = BOX * leaf;
+                    if (l[p] <= maxX && l[p + 3] >= minX && l[p + 1] <= maxY
+                            && l[p + 4] >= minY && l[p + 2] <= maxZ
+                            && l[p + 5] >= minZ) {
+                        out[found++] = leaf;
+                    }
+                } // for
+            } // else if
+            else {
+                this.stack[top++] = this.nodeRight[node];
+                this.stack[top++] = node + 1;
+            } // else
+        } // while
+        return found;
+    } // query( double, double, double, double, double, double, int [] )
+
+    /**
+     * Finds the leaves whose boxes are not wholly outside any of a set of
+     * planes, such as a camera's frustum. A subtree whose box is outside one
+     * plane is skipped whole, and one whose box is inside them all is taken
+     * whole without testing its leaves. Like any box test against planes, a
+     * box near a corner of the frustum can be found without being in it.
+     *
+     * @param planes The planes, four coefficients a, b, c, d each, with the
+     * inside where a x + b y + c z + d is 0 or more.
+     * @param planeCount The number of planes.
+     * @param out Filled with the leaves found, in no particular order. Must
+     * hold getLeafCount() elements.
+     * @return The number of leaves found.
+     */
+    public int query(double[] planes, int planeCount, int[] out) {
+        if (this.nodeCount == 0) {
+            return 0;
+        }
+        int found = 0;
+        int top = 0;
+        this.stack[top++] = 0;
+        while (top > 0) {
+            int node = this.stack[--top];
+            int side = classify(this.nodeBoxes, BOX * node, planes,
+                    planeCount);
+            if (side < 0) {
+                continue;
+            }
+            if (side > 0) {
+                int size = this.nodeSize[node];
+                System.arraycopy(this.leafOrder, this.nodeStart[node], out,
+                        found, size);
+                found += size;
+            } // if
+            else if (this.nodeRight[node] < 0) {
+                int end = this.nodeStart[node] + this.nodeSize[node];
+                for (int k = this.nodeStart[node]; k < end; k++) {
+                    int leaf = this.leafOrder[k];
+                    if (classify(this.leafBoxes, BOX * leaf, planes,
+                            planeCount) >= 0) {
+                        out[found++] = leaf;
+                    }
+                } // for
+            } // else if
+            else {
+                this.stack[top++] = this.nodeRight[node];
+                this.stack[top++] = node + 1;
+            } // else
+        } // while
+        return found;
+    } // query( double [], int, int [] )
+
+    /**
+     * Returns -1 if a box is wholly outside one of the planes, 1 if it is
+     * wholly inside all of them, and 0 otherwise. For each plane only the
+     * box's corner furthest along the plane's normal, and the one furthest
+     * against it, need testing.
+     */
+    private static int classify(double[] box, int o, double[] planes,
+            int planeCount) {
+        int side = 1;
+        for (int k = 0; k < 4 * planeCount; k += 4) {
+            double a = planes[k];
+            double b = planes[k + 1];
+            double c = planes[k + 2];
+            double d = planes[k + 3];
+            double furthest = a * (a >= 0 ? box[o + 3] : box[o])
+                    + b * (b >= 0 ? box[o + 4] : box[o + 1])
+                    + c * (c >= 0 ? box[o + 5] : box[o + 2]) + d;
+            if (furthest < 0) {
+                return -1;
+            }
+            double nearest = a * (a >= 0 ? box[o] : box[o + 3])
+                    + b * (b >= 0 ? box[o + 1] : box[o + 4])
+                    + c * (c >= 0 ? box[o + 2] : box[o + 5]) + d;
+            if (nearest < 0) {
+                side = 0;
+            }
+        } // for
+        return side;
+    } // classify( double [], int, double [], int )
+
+    /**
+     * Builds the shape of the tree over the current leaf boxes.
+     */
+    private void build() {
+        int n = this.leafCount;
+        int capacity = Math.max(1, 2 * n);
+        this.leafOrder = new int[n];
+        for (int k = 0; k < n; k++) {
+            this.leafOrder[k] = k;
+        } // for
+        this.nodeBoxes = new double[BOX * capacity];
+        this.nodeStart = new int[capacity];
+        this.nodeSize = new int[capacity];
+        this.nodeRight = new int[capacity];
+        this.stack = new int[capacity];
+        this.nodeCount = 0;
+        if (n > 0) {
+            double[] keys = new double[n];
+            int[] order = new int[n];
+            int[] scratch = new int[n];
+            buildNode(0, n, keys, order, scratch);
+        }
+        this.builtCount = n;
+    } // build()
+
+    /**
+     * Adds a node over a run of leafOrder and, if it holds more than
+     * LEAF_SIZE leaves, its two children.
+     */
+    private int buildNode(int start, int size, double[] keys, int[] order,
+            int[] scratch) {
+        int node = this.nodeCount++;
+        this.nodeStart[node] = start;
+        this.nodeSize[node] = size;
+        this.nodeRight[node] = -1;
+        if (size <= LEAF_SIZE) {
+            return node;
+        }
+
+        // Split along the axis the leaf centres spread furthest over.
+        int axis = 0;
+        double widest = -1.0;
+        for (int a = 0; a < 3; a++) {
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            for (int k = start; k < start + size; k++) {
+                double centre = centre(this.leafOrder[k], a);
+                low = Math.min(low, centre);
+                high = Math.max(high, centre);
+            } // for
+            if (high - low > widest) {
+                widest = high - low;
+                axis = a;
+            }
+        } // for
+        for (int k = 0; k < size; k++) {
+            keys[k] = centre(this.leafOrder[start + k], axis);
+        } // for
+        MergeSort.argsort(keys, size, order, scratch, false);
+        for (int k = 0; k < size; k++) {
+            scratch[k] = this.leafOrder[start + order[k]];
+        } // for
+        System.arraycopy(scratch, 0, this.leafOrder, start, size);
+
+        int half = size / 2;
+        buildNode(start, half, keys, order, scratch);
+        this.nodeRight[node] = buildNode(start + half, size - half, keys,
+                order, scratch);
+        return node;
+    } // buildNode( int, int, double [], int [], int [] )
+
+    /**
+     * Returns the centre of a leaf's box along an axis, treating an empty box
+     * as being at the origin.
+     */
+    private double centre(int leaf, int axis) {
+        double centre = (this.leafBoxes[BOX * leaf + axis]
+                + this.leafBoxes[BOX * leaf + 3 + axis]) / 2;
+        return Double.isNaN(centre) ? 0.0 : centre;
+    } // centre( int, int )
+
+    /**
+     * Sets a box to the empty box, which includeBox grows from.
+     */
+    private static void resetBox(double[] box, int o) {
+        box[o] = Double.POSITIVE_INFINITY;
+        box[o + 1] = Double.POSITIVE_INFINITY;
+        box[o + 2] = Double.POSITIVE_INFINITY;
+        box[o + 3] = Double.NEGATIVE_INFINITY;
+        box[o + 4] = Double.NEGATIVE_INFINITY;
+        box[o + 5] = Double.NEGATIVE_INFINITY;
+    } // resetBox( double [], int )
+
+    /**
+     * Grows a box to contain another.
+     */
+    private static void includeBox(double[] box, int o, double[] other,
+            int p) {
+        box[o] = Math.min(box[o], other[p]);
+        box[o + 1] = Math.min(box[o + 1], other[p + 1]);
+        box[o + 2] = Math.min(box[o + 2], other[p + 2]);
+        box[o + 3] = Math.max(box[o + 3], other[p + 3]);
+        box[o + 4] = Math.max(box[o + 4], other[p + 4]);
+        box[o + 5] = Math.max(box[o + 5], other[p + 5]);
+    } // includeBox( double [], int, double [], int )
+
+} // BoundingVolumeHierarchy
@@ -0,0 +1,90 @@
+package swing3d;
+
+/**
+ * Multiplies whole arrays of vertices by an affine matrix at once. The
+ * vertices are packed the way Mesh keeps them, one array per component, and
+ * the matrix is given as its top three rows, twelve values in row order
+ * starting at an offset. The bottom row is taken to be 0 0 0 1, so w is
+ * copied through unchanged.
+ *
+ * The destination arrays may be the source arrays, to transform in place.
+ *
+ * There is a plain loop, ScalarTransform, that runs anywhere, and one built
+ * on the incubating JDK Vector API, VectorTransform, that is only compiled
+ * with the simd profile and only usable when the JVM is started with
+ * --add-modules jdk.incubator.vector. detect picks the best one this JVM can
+ * run. Both add the products up in the same order, so they give the same
+ * results bit for bit.
+ *
+ * @author marcus
+ */
+public interface BulkTransform {
+
+    /**
+     * Transforms double precision vertices.
+     *
+     * @param m The top three rows of the matrix.
+     * @param offset Where the rows start in m.
+     * @param x The x components to transform.
+     * @param y The y components to transform.
+     * @param z The z components to transform.
+     * @param w The w components to transform.
+     * @param toX Where to put the transformed x components.
+     * @param toY Where to put the transformed y components.
+     * @param toZ Where to put the transformed z components.
+     * @param toW Where to put the w components.
+     * @param count How many vertices, from the start of the arrays.
+     */
+    void transform(double[] m, int offset,
+            double[] x, double[] y, double[] z, double[] w,
+            double[] toX, double[] toY, double[] toZ, double[] toW, int count);
+
+    /**
+     * Transforms single precision vertices.
+     *
+     * @param m The top three rows of the matrix.
+     * @param offset Where the rows start in m.
+     * @param x The x components to transform.
+     * @param y The y components to transform.
+     * @param z The z components to transform.
+     * @param w The w components to transform.
+     * @param toX Where to put the transformed x components.
+     * @param toY Where to put the transformed y components.
+     * @param toZ Where to put the transformed z components.
+     * @param toW Where to put the w components.
+     * @param count How many vertices, from the start of the arrays.
+     */
+    void transform(float[] m, int offset,
+            float[] x, float[] y, float[] z, float[] w,
+            float[] toX, float[] toY, float[] toZ, float[] toW, int count);
+
+    /**
+     * Returns a short description, for logs and benchmark output.
+     *
+     * @return The description.
+     */
+    String getName();
+
+    /**
+     * Returns the Vector API transform if it was compiled in, the JVM can
+     * load it and the hardware has vector registers to run it on, and the
+     * scalar one otherwise. Setting the system property swing3d.simd to
+     * false always gives the scalar one.
+     *
+     * @return The transform.
+     */
+    static BulkTransform detect() {
+        if (!Boolean.parseBoolean(System.getProperty("swing3d.simd", "true"))) {
+            return new ScalarTransform();
+        } // if
+        try {
+            return (BulkTransform) Class.forName("swing3d.VectorTransform")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError
+                | RuntimeException e) {
+            //not compiled in, module not added, or no vector hardware
+            return new ScalarTransform();
+        }
+    } // detect()
+
+} // BulkTransform
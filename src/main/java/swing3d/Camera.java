@@ -0,0 +1,398 @@
+package swing3d;
+
+/**
+ * Where a scene is seen from and how it is flattened onto the panel, as three
+ * Matrix4X4s: the view, which takes world coordinates into the camera's; the
+ * projection, orthographic or perspective, which takes those into normalised
+ * coordinates from -1 to 1; and the viewport, which takes those into pixels.
+ *
+ * The camera looks along its +z with +y pointing down the panel, the same way
+ * round as the panel has always shown the scene, so a smaller z is nearer the
+ * viewer. After projection, depth runs from -1 at the near plane to 1 at the
+ * far plane.
+ *
+ * The three matrices are multiplied into one only when one of them changes,
+ * and every vertex of a mesh is then projected by that one matrix in a single
+ * pass with project. Meshes in a Scene are already in world coordinates, so
+ * this matrix is their model-view-projection matrix as it stands.
+ *
+ * @author marcus
+ */
+public class Camera {
+
+    private final Matrix4X4 view = new Matrix4X4();
+    private final Matrix4X4 projection = new Matrix4X4();
+    private final Matrix4X4 viewport = new Matrix4X4();
+    private final Matrix4X4 viewProjection = new Matrix4X4();
+    private boolean perspective = false;
+    private boolean dirty = true;
+
+    /**
+     * Creates a camera at the origin looking along +z, with an orthographic
+     * projection of the square from -1 to 1 in x and y and from -100 to 100
+     * in z, onto a viewport 2 pixels wide and high.
+     */
+    public Camera() {
+        orthographic(-1, 1, -1, 1, -100, 100);
+        setViewport(0, 0, 2, 2);
+    } // Camera()
+
+    /**
+     * Sets the view matrix, which takes world coordinates into the camera's.
+     * It must be a rotation and translation only.
+     *
+     * @param view The view matrix. It is copied.
+     */
+    public void setView(Matrix4X4 view) {
+        this.view.set(view);
+        this.dirty = true;
+    } // setView( Matrix4X4 )
+
+    /**
+     * Sets the view to look from one point towards another.
+     *
+     * @param eyeX The x of the camera.
+     * @param eyeY The y of the camera.
+     * @param eyeZ The z of the camera.
+     * @param targetX The x of the point looked at.
+     * @param targetY The y of the point looked at.
+     * @param targetZ The z of the point looked at.
+     * @param upX The x of the direction that is up on the panel.
+     * @param upY The y of the up direction.
+     * @param upZ The z of the up direction.
+     */
+    public void lookAt(double eyeX, double eyeY, double eyeZ, double targetX,
+            double targetY, double targetZ, double upX, double upY,
+            double upZ) {
+        double fx = targetX - eyeX;
+        double fy = targetY - eyeY;
+        double fz = targetZ - eyeZ;
+        double length = Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx /= length;
+        fy /= length;
+        fz /= length;
+        // The camera's +y is down, so right is down cross forward.
+        double rx = -upY * fz + upZ * fy;
+        double ry = -upZ * fx + upX * fz;
+        double rz = -upX * fy + upY * fx;
+        length = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= length;
+        ry /= length;
+        rz /= length;
+        double dx = fy * rz - fz * ry;
+        double dy = fz * rx - fx * rz;
+        double dz = fx * ry - fy * rx;
+
+        this.view.identity();
+        setRow(this.view, 0, rx, ry, rz,
+                -(rx * eyeX + ry * eyeY + rz * eyeZ));
+        setRow(this.view, 1, dx, dy, dz,
+                -(dx * eyeX + dy * eyeY + dz * eyeZ));
+        setRow(this.view, 2, fx, fy, fz,
+                -(fx * eyeX + fy * eyeY + fz * eyeZ));
+        this.dirty = true;
+    } // lookAt( double, double, double, double, double, double, double, double, double )
+
+    /**
+     * Sets an orthographic projection of a box in camera coordinates.
+     *
+     * @param left The x shown at the left edge.
+     * @param right The x shown at the right edge.
+     * @param top The y shown at the top edge.
+     * @param bottom The y shown at the bottom edge.
+     * @param near The z of the near plane.
+     * @param far The z of the far plane.
+     */
+    public void orthographic(double left, double right, double top,
+            double bottom, double near, double far) {
+        this.projection.identity();
+        setRow(this.projection, 0, 2 / (right - left), 0, 0,
+                -(right + left) / (right - left));
+        setRow(this.projection, 1, 0, 2 / (bottom - top), 0,
+                -(bottom + top) / (bottom - top));
+        setRow(this.projection, 2, 0, 0, 2 / (far - near),
+                -(far + near) / (far - near));
+        this.perspective = false;
+        this.dirty = true;
+    } // orthographic( double, double, double, double, double, double )
+
+    /**
+     * Sets a perspective projection, with the camera at the apex.
+     *
+     * @param fieldOfView The angle from the top edge to the bottom edge, in
+     * radians.
+     * @param aspect The width of the view divided by its height.
+     * @param near The distance to the near plane, more than 0.
+     * @param far The distance to the far plane.
+     */
+    public void perspective(double fieldOfView, double aspect, double near,
+            double far) {
+        double focal = 1 / Math.tan(fieldOfView / 2);
+        this.projection.identity();
+        setRow(this.projection, 0, focal / aspect, 0, 0, 0);
+        setRow(this.projection, 1, 0, focal, 0, 0);
+        setRow(this.projection, 2, 0, 0, (far + near) / (far - near),
+                -2 * far * near / (far - near));
+        setRow(this.projection, 3, 0, 0, 1, 0);
+        this.perspective = true;
+        this.dirty = true;
+    } // perspective( double, double, double, double )
+
+    /**
+     * Sets the rectangle of pixels the projection is drawn into.
+     *
+     * @param x The left edge.
+     * @param y The top edge.
+     * @param width The width.
+     * @param height The height.
+     */
+    public void setViewport(double x, double y, double width, double height) {
+        this.viewport.identity();
+        setRow(this.viewport, 0, width / 2, 0, 0, x + width / 2);
+        setRow(this.viewport, 1, 0, height / 2, 0, y + height / 2);
+        this.dirty = true;
+    } // setViewport( double, double, double, double )
+
+    /**
+     * Returns whether the projection is a perspective one.
+     *
+     * @return True for perspective, false for orthographic.
+     */
+    public boolean isPerspective() {
+        return this.perspective;
+    } // isPerspective()
+
+    /**
+     * Returns viewport * projection * view, the matrix that takes world
+     * coordinates to pixels and depth before the divide by w. It is only
+     * recomputed after the camera changes.
+     *
+     * @return The matrix. It must not be changed.
+     */
+    public Matrix4X4 getViewProjection() {
+        if (this.dirty) {
+            this.viewport.multiplyInto(this.projection, this.viewProjection);
+            this.viewProjection.multiplyInto(this.view, this.viewProjection);
+            this.dirty = false;
+        }
+        return this.viewProjection;
+    } // getViewProjection()
+
+    /**
+     * Writes the model-view-projection matrix for an object that is not
+     * already in world coordinates.
+     *
+     * @param model Takes the object's coordinates into world coordinates.
+     * @param destination The matrix that receives the product.
+     */
+    public void modelViewProjection(Matrix4X4 model, Matrix4X4 destination) {
+        getViewProjection().multiplyInto(model, destination);
+    } // modelViewProjection( Matrix4X4, Matrix4X4 )
+
+    /**
+     * Projects every vertex of a mesh to pixels in one pass. Depth is -1 at
+     * the near plane and 1 at the far plane; a vertex nearer than the near
+     * plane, or behind the camera, gets a depth below -1.
+     *
+     * @param poly The mesh.
+     * @param screenX Receives the x of each vertex in pixels.
+     * @param screenY Receives the y of each vertex in pixels.
+     * @param screenZ Receives the depth of each vertex.
+     */
+    public void project(Mesh poly, float[] screenX, float[] screenY,
+            float[] screenZ) {
+        Matrix4X4 m = getViewProjection();
+        double m00 = m.get(0, 0), m01 = m.get(0, 1), m02 = m.get(0, 2), m03 = m.get(0, 3);
+        double m10 = m.get(1, 0), m11 = m.get(1, 1), m12 = m.get(1, 2), m13 = m.get(1, 3);
+        double m20 = m.get(2, 0), m21 = m.get(2, 1), m22 = m.get(2, 2), m23 = m.get(2, 3);
+        double m30 = m.get(3, 0), m31 = m.get(3, 1), m32 = m.get(3, 2), m33 = m.get(3, 3);
+        int vertexCount = poly.getVertexCount();
+        if (!this.perspective) {
+            for (int v = 0; v < vertexCount; v++) {
+                double x = poly.getX(v);
+                double y = poly.getY(v);
+                double z = poly.getZ(v);
+                screenX[v] = (float) (m00 * x + m01 * y + m02 * z + m03);
+                screenY[v] = (float) (m10 * x + m11 * y + m12 * z + m13);
+                screenZ[v] = (float) (m20 * x + m21 * y + m22 * z + m23);
+            } // for
+            return;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            double x = poly.getX(v);
+            double y = poly.getY(v);
+            double z = poly.getZ(v);
+            double w = m30 * x + m31 * y + m32 * z + m33;
+            if (w <= 0) {
+                //behind the camera
+                screenX[v] = 0f;
+                screenY[v] = 0f;
+                screenZ[v] = Float.NEGATIVE_INFINITY;
+                continue;
+            }
+            double inverse = 1 / w;
+            screenX[v] = (float) ((m00 * x + m01 * y + m02 * z + m03) * inverse);
+            screenY[v] = (float) ((m10 * x + m11 * y + m12 * z + m13) * inverse);
+            screenZ[v] = (float) ((m20 * x + m21 * y + m22 * z + m23) * inverse);
+        } // for
+    } // project( Mesh, float [], float [], float [] )
+
+    /**
+     * Returns how far a point is in front of the camera, along the direction
+     * it looks in. Larger is further away.
+     *
+     * @param x The x of the point.
+     * @param y The y of the point.
+     * @param z The z of the point.
+     * @return The point's z in camera coordinates.
+     */
+    public double getDepth(double x, double y, double z) {
+        return this.view.get(2, 0) * x + this.view.get(2, 1) * y
+                + this.view.get(2, 2) * z + this.view.get(2, 3);
+    } // getDepth( double, double, double )
+
+    /**
+     * Returns the radius in pixels of a sphere drawn on the panel, taken at
+     * its centre's depth, for choosing how much detail to draw it with.
+     *
+     * @param x The x of the centre.
+     * @param y The y of the centre.
+     * @param z The z of the centre.
+     * @param radius The radius.
+     * @return The projected radius, infinite if the centre is behind the
+     * camera.
+     */
+    public double getProjectedRadius(double x, double y, double z,
+            double radius) {
+        Matrix4X4 m = getViewProjection();
+        double w = m.get(3, 0) * x + m.get(3, 1) * y + m.get(3, 2) * z
+                + m.get(3, 3);
+        if (w <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // A step along the camera's right or down axis keeps the depth, so
+        // w, and moves the pixel by the matrix times the step over w.
+        double scale = 0.0;
+        for (int axis = 0; axis < 2; axis++) {
+            double ax = this.view.get(axis, 0);
+            double ay = this.view.get(axis, 1);
+            double az = this.view.get(axis, 2);
+            double px = m.get(0, 0) * ax + m.get(0, 1) * ay + m.get(0, 2) * az;
+            double py = m.get(1, 0) * ax + m.get(1, 1) * ay + m.get(1, 2) * az;
+            scale = Math.max(scale, Math.sqrt(px * px + py * py));
+        } // for
+        return radius * scale / w;
+    } // getProjectedRadius( double, double, double, double )
+
+    /**
+     * Finds the rectangle of pixels a box covers on the panel, from its eight
+     * corners.
+     *
+     * @param minX The smallest x of the box.
+     * @param minY The smallest y of the box.
+     * @param minZ The smallest z of the box.
+     * @param maxX The largest x of the box.
+     * @param maxY The largest y of the box.
+     * @param maxZ The largest z of the box.
+     * @param out Receives the smallest pixel x and y and then the largest.
+     * @return False, leaving out unfinished, if a corner is behind the camera
+     * and the box could cover anything.
+     */
+    public boolean getScreenBounds(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ, double[] out) {
+        Matrix4X4 m = getViewProjection();
+        out[0] = Double.POSITIVE_INFINITY;
+        out[1] = Double.POSITIVE_INFINITY;
+        out[2] = Double.NEGATIVE_INFINITY;
+        out[3] = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            double x = (corner & 1) == 0 ? minX : maxX;
+            double y = (corner & 2) == 0 ? minY : maxY;
+            double z = (corner & 4) == 0 ? minZ : maxZ;
+            double w = m.get(3, 0) * x + m.get(3, 1) * y + m.get(3, 2) * z
+                    + m.get(3, 3);
+            if (w <= 0) {
+                return false;
+            }
+            double px = (m.get(0, 0) * x + m.get(0, 1) * y + m.get(0, 2) * z
+                    + m.get(0, 3)) / w;
+            double py = (m.get(1, 0) * x + m.get(1, 1) * y + m.get(1, 2) * z
+                    + m.get(1, 3)) / w;
+            out[0] = Math.min(out[0], px);
+            out[1] = Math.min(out[1], py);
+            out[2] = Math.max(out[2], px);
+            out[3] = Math.max(out[3], py);
+        } // for
+        return true;
+    } // getScreenBounds( double, double, double, double, double, double, double [] )
+
+    /**
+     * Writes the x, y and z of the camera's position in world coordinates.
+     *
+     * @param out Receives the position.
+     */
+    public void getEye(double[] out) {
+        // The view is a rotation R then a translation t, so the eye is -R't.
+        double tx = this.view.get(0, 3);
+        double ty = this.view.get(1, 3);
+        double tz = this.view.get(2, 3);
+        for (int j = 0; j < 3; j++) {
+            out[j] = -(this.view.get(0, j) * tx + this.view.get(1, j) * ty
+                    + this.view.get(2, j) * tz);
+        } // for
+    } // getEye( double [] )
+
+    /**
+     * Writes the direction the camera looks in, in world coordinates.
+     *
+     * @param out Receives the unit direction.
+     */
+    public void getForward(double[] out) {
+        out[0] = this.view.get(2, 0);
+        out[1] = this.view.get(2, 1);
+        out[2] = this.view.get(2, 2);
+    } // getForward( double [] )
+
+    /**
+     * Writes the six planes bounding what the camera sees, in world
+     * coordinates: the viewport's left, right, top and bottom edges and the
+     * near and far planes. Plane k is a, b, c, d at 4k to 4k + 3, and a point
+     * is on the inside of it when a x + b y + c z + d is 0 or more.
+     *
+     * @param minX The left edge of the view in pixels.
+     * @param minY The top edge of the view in pixels.
+     * @param maxX The right edge of the view in pixels.
+     * @param maxY The bottom edge of the view in pixels.
+     * @param planes Receives the 24 plane coefficients.
+     */
+    public void getFrustumPlanes(double minX, double minY, double maxX,
+            double maxY, double[] planes) {
+        Matrix4X4 m = getViewProjection();
+        for (int c = 0; c < 4; c++) {
+            double x = m.get(0, c);
+            double y = m.get(1, c);
+            double z = m.get(2, c);
+            double w = m.get(3, c);
+            // Each bound is a comparison of pixels against w before the
+            // divide, which is a plane in world coordinates.
+            planes[c] = x - minX * w;
+            planes[4 + c] = maxX * w - x;
+            planes[8 + c] = y - minY * w;
+            planes[12 + c] = maxY * w - y;
+            planes[16 + c] = z + w;
+            planes[20 + c] = w - z;
+        } // for
+    } // getFrustumPlanes( double, double, double, double, double [] )
+
+    /**
+     * Sets one row of a matrix.
+     */
+    private static void setRow(Matrix4X4 matrix, int row, double c0,
+            double c1, double c2, double c3) {
+        matrix.set(row, 0, c0);
+        matrix.set(row, 1, c1);
+        matrix.set(row, 2, c2);
+        matrix.set(row, 3, c3);
+    } // setRow( Matrix4X4, int, double, double, double, double )
+
+} // Camera
@@ -0,0 +1,132 @@
+package swing3d;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The level-of-detail stage of the render pipeline. For each object in view
+ * that has a LevelOfDetail, it works out how large the object's bounding
+ * sphere is on the panel, chooses a level with hysteresis, and hands back the
+ * mesh to draw: the object itself at the finest level, or otherwise the
+ * chosen level placed by the object's motion into a mesh of the selector's
+ * own, the same way renderers place instances.
+ *
+ * The level each object was last drawn at is kept by object index, so the
+ * hysteresis carries over from one frame to the next even when each frame is
+ * a different copy of the scene. A selector must only be used by one thread.
+ *
+ * The selector counts the faces it saves, those of the finest levels less
+ * those of the levels drawn. Renderers call beginFrame before drawing, so
+ * after a frame the count is for that frame.
+ *
+ * @author marcus
+ */
+public class DetailSelector {
+
+    /**
+     * The hysteresis new selectors start with: an object must be a quarter
+     * smaller than a coarser level's largest radius to move to it.
+     */
+    public static final double DEFAULT_HYSTERESIS = 0.25;
+
+    private final Map<LevelOfDetail, Mesh[]> meshes = new IdentityHashMap<>();
+    private int[] levels = new int[0];
+    private double hysteresis = DEFAULT_HYSTERESIS;
+    private boolean enabled = true;
+    private int facesSaved = 0;
+
+    /**
+     * Resets the count of faces saved for a new frame.
+     */
+    public void beginFrame() {
+        this.facesSaved = 0;
+    } // beginFrame()
+
+    /**
+     * Returns the mesh to draw for an object in a scene.
+     *
+     * @param camera The camera the scene is drawn from.
+     * @param scene The scene.
+     * @param i The index of the object.
+     * @return The object itself, or a coarser level placed where it is. A
+     * coarser level is only valid until the next call.
+     */
+    public Mesh select(Camera camera, Scene scene, int i) {
+        Mesh poly = scene.get(i);
+        LevelOfDetail lod = scene.getLevelOfDetail(i);
+        if (lod == null || !this.enabled) {
+            return poly;
+        }
+        if (this.levels.length < scene.size()) {
+            this.levels = Arrays.copyOf(this.levels, scene.size());
+        }
+        double radius = camera.getProjectedRadius(poly.getSphereX(),
+                poly.getSphereY(), poly.getSphereZ(), poly.getSphereRadius());
+        int level = lod.select(this.levels[i], radius, this.hysteresis);
+        this.levels[i] = level;
+        if (level == 0) {
+            return poly;
+        }
+        Mesh[] placed = this.meshes.computeIfAbsent(lod,
+                key -> new Mesh[key.getLevelCount()]);
+        if (placed[level] == null) {
+            placed[level] = lod.getLevel(level).copy();
+        }
+        Mesh mesh = placed[level];
+        scene.getMotion(i).place(lod.getLevel(level), mesh);
+        this.facesSaved += poly.getFaceCount() - mesh.getFaceCount();
+        return mesh;
+    } // select( Camera, Scene, int )
+
+    /**
+     * Returns the level an object was last drawn at.
+     *
+     * @param i The index of the object.
+     * @return The level, 0 being the finest.
+     */
+    public int getLevel(int i) {
+        return i < this.levels.length ? this.levels[i] : 0;
+    } // getLevel( int )
+
+    /**
+     * Sets how much smaller than a coarser level's largest radius an object
+     * must be to move to it. With no hysteresis the level depends only on the
+     * object's current size, as for frames rendered out of order.
+     *
+     * @param hysteresis The fraction, 0 for none.
+     */
+    public void setHysteresis(double hysteresis) {
+        this.hysteresis = hysteresis;
+    } // setHysteresis( double )
+
+    /**
+     * Turns level-of-detail selection on or off. When off every object is
+     * drawn at its finest level.
+     *
+     * @param enabled True to choose levels.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    } // setEnabled( boolean )
+
+    /**
+     * Returns whether levels are chosen.
+     *
+     * @return True if levels are chosen.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    } // isEnabled()
+
+    /**
+     * Returns the number of faces left out this frame by drawing objects at
+     * coarser levels.
+     *
+     * @return The number of faces saved.
+     */
+    public int getFacesSaved() {
+        return this.facesSaved;
+    } // getFacesSaved()
+
+} // DetailSelector
@@ -0,0 +1,191 @@
+package swing3d;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out which parts of a panel need repainting for a new frame: wherever
+ * the last frame drew something, so it can be erased, and wherever the new
+ * one will, so it can be drawn. Everything else on the panel is background
+ * both times and can be left alone.
+ *
+ * Where a frame draws is found from the bounding box of every object and
+ * instance in the scene, projected by the camera and widened by a couple of
+ * pixels for edges that round outwards. Anything else drawn on the panel,
+ * such as an overlay, can be added as an extra rectangle.
+ *
+ * By default all of this is united into one rectangle. When coalescing, the
+ * rectangles are kept apart and only merged, cheapest first, until there are
+ * no more than MAX_REGIONS and none overlap, so a few small shapes far apart
+ * repaint a few small regions rather than everything between them. Merging
+ * two rectangles costs the area their union covers that neither did.
+ *
+ * @author marcus
+ */
+public class DirtyRegions {
+
+    /**
+     * The most rectangles a coalesced update returns.
+     */
+    public static final int MAX_REGIONS = 4;
+
+    // The pixels added round each projected box.
+    private static final int MARGIN = 2;
+
+    private final double[] box = new double[6];
+    private final double[] bounds = new double[4];
+    private List<Rectangle> drawn = new ArrayList<>();
+    private List<Rectangle> next = new ArrayList<>();
+    private final List<Rectangle> dirty = new ArrayList<>();
+    private boolean coalescing = false;
+
+    /**
+     * Sets whether the regions are kept apart, up to MAX_REGIONS of them,
+     * rather than united into one.
+     *
+     * @param coalescing True to keep up to MAX_REGIONS regions.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    } // setCoalescing( boolean )
+
+    /**
+     * Returns whether the regions are kept apart.
+     *
+     * @return True if up to MAX_REGIONS regions are kept.
+     */
+    public boolean isCoalescing() {
+        return this.coalescing;
+    } // isCoalescing()
+
+    /**
+     * Measures where a new frame will draw and returns the regions to
+     * repaint for it, then remembers where it drew for the next update.
+     *
+     * @param scene The scene the frame will show.
+     * @param camera The camera it will be drawn from.
+     * @param width The width of the panel.
+     * @param height The height of the panel.
+     * @param extra Anything else the frame draws, or null.
+     * @return The regions to repaint, inside the panel and not overlapping.
+     * The list is reused by the next update.
+     */
+    public List<Rectangle> update(Scene scene, Camera camera, int width,
+            int height, Rectangle extra) {
+        int max = this.coalescing ? MAX_REGIONS : 1;
+        Rectangle panel = new Rectangle(0, 0, width, height);
+        this.next.clear();
+        for (int i = 0; i < scene.size(); i++) {
+            Mesh poly = scene.get(i);
+            addBox(panel, camera, poly.getMinX(), poly.getMinY(),
+                    poly.getMinZ(), poly.getMaxX(), poly.getMaxY(),
+                    poly.getMaxZ(), max);
+        } // for
+        for (int b = 0; b < scene.getBatchCount(); b++) {
+            InstanceBatch batch = scene.getBatch(b);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.getBounds(i, this.box);
+                addBox(panel, camera, this.box[0], this.box[1], this.box[2],
+                        this.box[3], this.box[4], this.box[5], max);
+            } // for
+        } // for
+        if (extra != null) {
+            add(this.next, extra.intersection(panel), max);
+        }
+
+        this.dirty.clear();
+        for (Rectangle region : this.drawn) {
+            add(this.dirty, region, max);
+        } // for
+        for (Rectangle region : this.next) {
+            add(this.dirty, region, max);
+        } // for
+        List<Rectangle> swap = this.drawn;
+        this.drawn = this.next;
+        this.next = swap;
+        return this.dirty;
+    } // update( Scene, Camera, int, int, Rectangle )
+
+    /**
+     * Adds the pixels a box covers to the frame's regions. A box reaching
+     * behind the camera could cover anything, so it adds the whole panel.
+     */
+    private void addBox(Rectangle panel, Camera camera, double minX,
+            double minY, double minZ, double maxX, double maxY, double maxZ,
+            int max) {
+        if (!camera.getScreenBounds(minX, minY, minZ, maxX, maxY, maxZ,
+                this.bounds)) {
+            add(this.next, panel, max);
+            return;
+        }
+        int left = (int) Math.floor(this.bounds[0]) - MARGIN;
+        int top = (int) Math.floor(this.bounds[1]) - MARGIN;
+        int right = (int) Math.ceil(this.bounds[2]) + MARGIN;
+        int bottom = (int) Math.ceil(this.bounds[3]) + MARGIN;
+        add(this.next, panel.intersection(
+                new Rectangle(left, top, right - left, bottom - top)), max);
+    } // addBox( Rectangle, Camera, double, double, double, double, double, double, int )
+
+    /**
+     * Adds a rectangle to a list of regions, merging it with every region
+     * it overlaps, and then merging the cheapest pairs while there are more
+     * than max regions.
+     */
+    private static void add(List<Rectangle> regions, Rectangle rectangle,
+            int max) {
+        if (rectangle.isEmpty()) {
+            return;
+        }
+        Rectangle merged = new Rectangle(rectangle);
+        int k = 0;
+        while (k < regions.size()) {
+            if (regions.get(k).intersects(merged)) {
+                //the grown region may now reach ones already passed
+                merged.add(regions.remove(k));
+                k = 0;
+            } else {
+                k++;
+            }
+        } // while
+        regions.add(merged);
+        if (regions.size() <= max) {
+            return;
+        }
+
+        int best = 0;
+        int other = 1;
+        long bestCost = Long.MAX_VALUE;
+        for (int a = 0; a < regions.size(); a++) {
+            for (int b = a + 1; b < regions.size(); b++) {
+                long cost = mergeCost(regions.get(a), regions.get(b));
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = a;
+                    other = b;
+                }
+            } // for b
+        } // for a
+        Rectangle union = regions.get(best).union(regions.get(other));
+        regions.remove(other);
+        regions.remove(best);
+        add(regions, union, max);
+    } // add( List<Rectangle>, Rectangle, int )
+
+    /**
+     * Returns the area the union of two disjoint rectangles covers that
+     * neither does.
+     */
+    private static long mergeCost(Rectangle a, Rectangle b) {
+        Rectangle union = a.union(b);
+        return area(union) - area(a) - area(b);
+    } // mergeCost( Rectangle, Rectangle )
+
+    /**
+     * Returns the area of a rectangle.
+     */
+    private static long area(Rectangle rectangle) {
+        return (long) rectangle.width * rectangle.height;
+    } // area( Rectangle )
+
+} // DirtyRegions
@@ -0,0 +1,298 @@
+package swing3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Streams rendered frames to disk on a background thread, either as one raw
+ * RGB file (three bytes a pixel, frames back to back, as read by video tools
+ * as "rawvideo rgb24") or as a directory of numbered PNG files.
+ *
+ * The exporter owns a fixed pool of frame buffers. submit copies an image's
+ * pixels into a free buffer and queues it; the writer thread converts queued
+ * frames and hands them to a FileChannel, several at a time in one gathering
+ * write, then returns the buffers to the pool. Nothing is allocated per frame
+ * for raw output, and the thread that renders only ever copies pixels. If the
+ * writer falls behind, trySubmit drops the frame instead of waiting.
+ *
+ * @author marcus
+ */
+public class FrameExporter implements AutoCloseable {
+
+    /**
+     * The file formats that can be written.
+     */
+    public enum Format {
+        RAW_RGB, PNG
+    }
+
+    // The most frames written by one gathering write.
+    private static final int MAX_BATCH = 8;
+
+    /**
+     * One pooled frame: its pixels, their RGB bytes and its frame number.
+     */
+    private static final class Frame {
+
+        private final int[] pixels;
+        private final ByteBuffer bytes;
+        private long number;
+
+        private Frame(int[] pixels, ByteBuffer bytes) {
+            this.pixels = pixels;
+            this.bytes = bytes;
+        } // Frame( int [], ByteBuffer )
+
+    } // Frame
+
+    // Queued after the last frame to stop the writer.
+    private static final Frame END = new Frame(null, null);
+
+    private final Path output;
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> full;
+    private final FileChannel channel;
+    private final Thread writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private volatile IOException failure;
+
+    /**
+     * Creates an exporter and starts its writer thread.
+     *
+     * @param output The file to write for RAW_RGB, or the directory to write
+     * PNG files into.
+     * @param format The file format.
+     * @param width The width of every frame.
+     * @param height The height of every frame.
+     * @param poolSize The number of frames that can be queued at once.
+     * @throws IOException If the file or directory cannot be created.
+     */
+    public FrameExporter(Path output, Format format, int width, int height,
+            int poolSize) throws IOException {
+        this.output = output;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.free = new ArrayBlockingQueue<>(poolSize);
+        this.full = new ArrayBlockingQueue<>(poolSize + 1);
+        for (int i = 0; i < poolSize; i++) {
+            ByteBuffer bytes = format == Format.RAW_RGB
+                    ? ByteBuffer.allocateDirect(width * height * 3) : null;
+            this.free.add(new Frame(new int[width * height], bytes));
+        } // for
+
+        if (format == Format.RAW_RGB) {
+            this.channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            Files.createDirectories(output);
+            this.channel = null;
+        }
+        this.writer = new Thread(this::writeFrames, "FrameExporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    } // FrameExporter( Path, Format, int, int, int )
+
+    /**
+     * Queues a frame, waiting for a free buffer if every one is in use.
+     * Frames of the wrong size are dropped.
+     *
+     * @param image The frame.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void submit(BufferedImage image) throws InterruptedException {
+        if (!fits(image)) {
+            return;
+        }
+        enqueue(this.free.take(), image);
+    } // submit( BufferedImage )
+
+    /**
+     * Queues a frame if a buffer is free, and otherwise drops it. This never
+     * waits, so it is safe to call from the render loop.
+     *
+     * @param image The frame.
+     * @return True if the frame was queued.
+     */
+    public boolean trySubmit(BufferedImage image) {
+        if (!fits(image)) {
+            return false;
+        }
+        Frame frame = this.free.poll();
+        if (frame == null) {
+            this.dropped.incrementAndGet();
+            return false;
+        }
+        enqueue(frame, image);
+        return true;
+    } // trySubmit( BufferedImage )
+
+    /**
+     * Returns true if an image is the size this exporter writes, and counts it
+     * as dropped if not.
+     */
+    private boolean fits(BufferedImage image) {
+        if (image.getWidth() == this.width
+                && image.getHeight() == this.height) {
+            return true;
+        }
+        this.dropped.incrementAndGet();
+        return false;
+    } // fits( BufferedImage )
+
+    /**
+     * Copies an image's pixels into a pooled frame and queues it.
+     */
+    private void enqueue(Frame frame, BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer())
+                    .getData();
+            System.arraycopy(data, 0, frame.pixels, 0, frame.pixels.length);
+        } else {
+            image.getRGB(0, 0, this.width, this.height, frame.pixels, 0,
+                    this.width);
+        }
+        frame.number = this.submitted.getAndIncrement();
+        this.full.add(frame);
+    } // enqueue( Frame, BufferedImage )
+
+    /**
+     * Returns the number of frames written to disk so far.
+     *
+     * @return The number of frames written.
+     */
+    public long getFramesWritten() {
+        return this.written.get();
+    } // getFramesWritten()
+
+    /**
+     * Returns the number of frames dropped because no buffer was free or the
+     * frame was the wrong size.
+     *
+     * @return The number of frames dropped.
+     */
+    public long getFramesDropped() {
+        return this.dropped.get();
+    } // getFramesDropped()
+
+    /**
+     * Writes every queued frame, stops the writer thread and closes the file.
+     *
+     * @throws IOException If any frame could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        this.full.add(END);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.channel != null) {
+            this.channel.close();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    } // close()
+
+    /**
+     * The writer thread: takes queued frames in batches and writes them until
+     * END arrives.
+     */
+    private void writeFrames() {
+        Frame[] batch = new Frame[MAX_BATCH];
+        ByteBuffer[] buffers = new ByteBuffer[MAX_BATCH];
+        BufferedImage png = this.format == Format.PNG
+                ? new BufferedImage(this.width, this.height,
+                        BufferedImage.TYPE_INT_RGB) : null;
+        boolean ended = false;
+        while (!ended) {
+            int count = 0;
+            try {
+                Frame frame = this.full.take();
+                while (frame != null && count < MAX_BATCH) {
+                    if (frame == END) {
+                        ended = true;
+                        break;
+                    }
+                    batch[count++] = frame;
+                    frame = count < MAX_BATCH ? this.full.poll() : null;
+                } // while
+            } catch (InterruptedException e) {
+                ended = true;
+            }
+
+            try {
+                if (this.failure == null && count > 0) {
+                    if (png != null) {
+                        writePng(png, batch, count);
+                    } else {
+                        writeRaw(batch, buffers, count);
+                    }
+                    this.written.addAndGet(count);
+                }
+            } catch (IOException e) {
+                this.failure = e;
+            }
+            for (int i = 0; i < count; i++) {
+                this.free.add(batch[i]);
+                batch[i] = null;
+            } // for
+        } // while
+    } // writeFrames()
+
+    /**
+     * Converts frames to packed RGB bytes and writes them with one gathering
+     * write.
+     */
+    private void writeRaw(Frame[] batch, ByteBuffer[] buffers, int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            ByteBuffer bytes = batch[i].bytes;
+            bytes.clear();
+            for (int pixel : batch[i].pixels) {
+                bytes.put((byte) (pixel >> 16));
+                bytes.put((byte) (pixel >> 8));
+                bytes.put((byte) pixel);
+            } // for
+            bytes.flip();
+            buffers[i] = bytes;
+        } // for
+        long remaining = (long) count * this.width * this.height * 3;
+        while (remaining > 0) {
+            remaining -= this.channel.write(buffers, 0, count);
+        } // while
+    } // writeRaw( Frame [], ByteBuffer [], int )
+
+    /**
+     * Writes each frame as a PNG file named by its frame number.
+     */
+    private void writePng(BufferedImage png, Frame[] batch, int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            png.getRaster().setDataElements(0, 0, this.width, this.height,
+                    batch[i].pixels);
+            Path file = this.output.resolve(
+                    String.format("frame-%06d.png", batch[i].number));
+            ImageIO.write(png, "png", file.toFile());
+        } // for
+    } // writePng( BufferedImage, Frame [], int )
+
+} // FrameExporter
@@ -0,0 +1,260 @@
+package swing3d;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Timings for each phase of a frame, kept in lock-free latency histograms and
+ * exported over JMX.
+ *
+ * The simulation thread records TRANSFORM directly with record. The renderer
+ * adds up the time it spends in each of the other phases with add, across all
+ * the objects in a frame, and endFrame records the totals, so timing costs a
+ * few System.nanoTime calls per object rather than per face. add and endFrame
+ * must only be called by the one thread that draws.
+ *
+ * As an MBean each phase has P50, P99 and Max attributes in microseconds, and
+ * a Count; for example FillP99. The reset operation clears them all.
+ *
+ * @author marcus
+ */
+public class FrameMetrics implements DynamicMBean {
+
+    /**
+     * The phases of a frame. CULL is finding the objects in view; FRAME is
+     * the whole of paintComponent.
+     */
+    public enum Phase {
+        TRANSFORM, CULL, NORMALS, SORT, SHADE, FILL, BLIT, FRAME
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms
+            = new LatencyHistogram[PHASES.length];
+    private final long[] frameNanos = new long[PHASES.length];
+    private ObjectName registeredName;
+
+    public FrameMetrics() {
+        for (int i = 0; i < PHASES.length; i++) {
+            this.histograms[i] = new LatencyHistogram();
+        } // for
+    } // FrameMetrics()
+
+    /**
+     * Records one duration for a phase. Any thread may call this.
+     *
+     * @param phase The phase.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(Phase phase, long nanos) {
+        this.histograms[phase.ordinal()].record(nanos);
+    } // record( Phase, long )
+
+    /**
+     * Adds time to a phase of the frame being drawn.
+     *
+     * @param phase The phase.
+     * @param nanos The time in nanoseconds.
+     */
+    public void add(Phase phase, long nanos) {
+        this.frameNanos[phase.ordinal()] += nanos;
+    } // add( Phase, long )
+
+    /**
+     * Records the time added to each phase during the frame, skipping phases
+     * the renderer did not use, and starts a new frame.
+     */
+    public void endFrame() {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (this.frameNanos[i] > 0) {
+                this.histograms[i].record(this.frameNanos[i]);
+                this.frameNanos[i] = 0;
+            }
+        } // for
+    } // endFrame()
+
+    /**
+     * Returns the histogram for a phase.
+     *
+     * @param phase The phase.
+     * @return The histogram.
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return this.histograms[phase.ordinal()];
+    } // getHistogram( Phase )
+
+    /**
+     * Clears every histogram.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : this.histograms) {
+            histogram.reset();
+        } // for
+    } // reset()
+
+    /**
+     * Returns a heading and then one line per phase giving its p50, p99 and
+     * max in milliseconds, for the on-panel overlay.
+     *
+     * @return The summary lines.
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add("ms           p50    p99    max");
+        for (Phase phase : PHASES) {
+            LatencyHistogram h = this.histograms[phase.ordinal()];
+            if (h.getCount() == 0) {
+                continue;
+            }
+            lines.add(String.format("%-9s %6.2f %6.2f %6.2f",
+                    phase.name().toLowerCase(), h.getPercentile(50) / 1e6,
+                    h.getPercentile(99) / 1e6, h.getMax() / 1e6));
+        } // for
+        return lines;
+    } // summary()
+
+    /**
+     * Registers this object with the platform MBean server. It can only be
+     * registered under one name at a time.
+     *
+     * @param name The object name, for example
+     * "swing3d:type=FrameMetrics,name=SwingPanel12345", as SwingPanel uses.
+     * @return True if it was registered, false if the name is malformed or
+     * taken, or this object is already registered.
+     */
+    public synchronized boolean register(String name) {
+        if (this.registeredName != null) {
+            return false;
+        }
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, objectName);
+            this.registeredName = objectName;
+            return true;
+        } catch (JMException e) {
+            return false;
+        }
+    } // register( String )
+
+    /**
+     * Removes this object from the platform MBean server, if register added
+     * it.
+     */
+    public synchronized void unregister() {
+        if (this.registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(this.registeredName);
+        } catch (JMException e) {
+            // Someone else has already unregistered it.
+        }
+        this.registeredName = null;
+    } // unregister()
+
+    /**
+     * Returns the attribute name prefix for a phase, such as "Fill".
+     */
+    private static String prefix(Phase phase) {
+        String name = phase.name();
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    } // prefix( Phase )
+
+    @Override
+    public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+        for (Phase phase : PHASES) {
+            String prefix = prefix(phase);
+            if (!attribute.startsWith(prefix)) {
+                continue;
+            }
+            LatencyHistogram h = this.histograms[phase.ordinal()];
+            switch (attribute.substring(prefix.length())) {
+                case "P50":
+                    return h.getPercentile(50) / 1e3;
+                case "P99":
+                    return h.getPercentile(99) / 1e3;
+                case "Max":
+                    return h.getMax() / 1e3;
+                case "Count":
+                    return h.getCount();
+                default:
+                    break;
+            } //switch
+        } // for
+        throw new AttributeNotFoundException(attribute);
+    } // getAttribute( String )
+
+    @Override
+    public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName()
+                + " is read-only");
+    } // setAttribute( Attribute )
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            } catch (AttributeNotFoundException e) {
+                // Unknown attributes are left out, as the interface allows.
+            }
+        } // for
+        return list;
+    } // getAttributes( String [] )
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    } // setAttributes( AttributeList )
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws ReflectionException {
+        if (actionName.equals("reset")) {
+            this.reset();
+            return null;
+        }
+        throw new ReflectionException(
+                new NoSuchMethodException(actionName));
+    } // invoke( String, Object [], String [] )
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Phase phase : PHASES) {
+            String prefix = prefix(phase);
+            for (String stat : new String[]{"P50", "P99", "Max"}) {
+                attributes.add(new MBeanAttributeInfo(prefix + stat, "double",
+                        phase + " " + stat + " in microseconds", true, false,
+                        false));
+            } // for
+            attributes.add(new MBeanAttributeInfo(prefix + "Count", "long",
+                    phase + " samples recorded", true, false, false));
+        } // for
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset",
+                "Clears every histogram", null, "void",
+                MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(),
+                "Per-phase frame timings",
+                attributes.toArray(new MBeanAttributeInfo[0]), null,
+                new MBeanOperationInfo[]{reset}, null);
+    } // getMBeanInfo()
+
+} // FrameMetrics
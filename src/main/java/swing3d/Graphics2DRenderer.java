@@ -0,0 +1,236 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Draws a scene with the painter's algorithm: objects back to front, and
+ * within each object its faces back to front by their mean depth. Every
+ * vertex of a mesh is projected by the camera once, into whole pixels, and
+ * each face is filled as a polygon of those pixels through Graphics2D.
+ * Objects the scene marks for culling have their back faces skipped, and
+ * only objects and instances the scene finds in view, or in the Graphics2D's
+ * clip when only part of the panel is repainted, are drawn at all, each
+ * object at the level of detail the DetailSelector chooses.
+ * Each face is filled in one colour, so faces are always shaded flat, the
+ * whole mesh lit in one batch, whatever shading the illumination asks for.
+ *
+ * Instance batches are drawn after the objects, each batch's instances back
+ * to front by their centre z. Each instance is placed into a mesh of the
+ * renderer's own and drawn in its own colour.
+ *
+ * @author marcus
+ */
+public class Graphics2DRenderer implements Renderer {
+
+    private final Illumination illumination;
+    private final BackFaceCuller culler;
+    private final FrameMetrics metrics;
+    private final DetailSelector detail;
+    private int[] faces = new int[0];
+    private Color[] colours = new Color[0];
+    private float[] intensity = new float[0];
+    private float[] screenX = new float[0];
+    private float[] screenY = new float[0];
+    private float[] screenZ = new float[0];
+    private int[] pixelX = new int[0];
+    private int[] pixelY = new int[0];
+    private int[] corners = new int[0];
+    private int[] cornerX = new int[0];
+    private int[] cornerY = new int[0];
+    private final Map<Mesh, Mesh> instanceMeshes = new IdentityHashMap<>();
+
+    public Graphics2DRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics) {
+        this(illumination, culler, metrics, new DetailSelector());
+    } // Graphics2DRenderer( Illumination, BackFaceCuller, FrameMetrics )
+
+    /**
+     * Creates a renderer that chooses levels of detail with a given
+     * selector, so its count of faces saved can be read.
+     *
+     * @param illumination The light and shape colour.
+     * @param culler The back-face culler.
+     * @param metrics Where to add the frame timings.
+     * @param detail The level-of-detail selector.
+     */
+    public Graphics2DRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics,
+            DetailSelector detail) {
+        this.illumination = illumination;
+        this.culler = culler;
+        this.metrics = metrics;
+        this.detail = detail;
+    } // Graphics2DRenderer( Illumination, BackFaceCuller, FrameMetrics, DetailSelector )
+
+    @Override
+    public void render(Graphics2D g2D, Camera camera, Scene scene,
+            Color background, int width, int height) {
+        this.culler.beginFrame(camera);
+        this.detail.beginFrame();
+        long start = System.nanoTime();
+        Rectangle clip = Renderer.clipBounds(g2D, width, height);
+        scene.cullToView(camera, clip.x, clip.y, clip.x + clip.width,
+                clip.y + clip.height);
+        long cullDone = System.nanoTime();
+        int[] order = scene.depthOrder(camera);
+        this.metrics.add(FrameMetrics.Phase.CULL, cullDone - start);
+        this.metrics.add(FrameMetrics.Phase.SORT, System.nanoTime() - cullDone);
+        for (int i = 0; i < scene.getVisibleCount(); i++) {
+            draw3DShape(camera, g2D,
+                    this.detail.select(camera, scene, order[i]),
+                    scene.isCulling(order[i]));
+        }//for
+
+        for (int b = 0; b < scene.getBatchCount(); b++) {
+            InstanceBatch batch = scene.getBatch(b);
+            Mesh mesh = instanceMesh(batch);
+            start = System.nanoTime();
+            int count = scene.getVisibleInstanceCount(b);
+            int[] instances = batch.depthOrder(
+                    scene.getVisibleInstances(b), count, camera);
+            this.metrics.add(FrameMetrics.Phase.SORT,
+                    System.nanoTime() - start);
+            for (int i = 0; i < count; i++) {
+                batch.place(instances[i], mesh);
+                draw3DShape(camera, g2D, mesh,
+                        batch.isCulling(), batch.getColour(instances[i]));
+            }//for
+        }//for
+    } // render( Graphics2D, Camera, Scene, Color, int, int )
+
+    /**
+     * Returns this renderer's mesh for placing a batch's instances into. It
+     * is kept by the batch's geometry, which every copy of the batch shares,
+     * so a new copy of the scene each frame reuses the same mesh.
+     */
+    private Mesh instanceMesh(InstanceBatch batch) {
+        return this.instanceMeshes.computeIfAbsent(batch.getGeometry(),
+                key -> batch.newInstanceMesh());
+    } // instanceMesh( InstanceBatch )
+
+    /**
+     * Draws every face of a mesh.
+     *
+     * @param camera Where the mesh is seen from.
+     * @param g2D The graphics to draw on.
+     * @param poly The mesh to draw.
+     */
+    public void draw3DShape(Camera camera, Graphics2D g2D, Mesh poly) {
+        draw3DShape(camera, g2D, poly, false);
+    }
+
+    /**
+     * Draws a mesh, its faces back to front. When culling, faces that point
+     * away from the viewer are dropped before the rest are sorted, and faces
+     * reaching nearer than the camera's near plane are never drawn. The work
+     * is done in phases (normals, culling and projection, sorting, shading,
+     * filling), each timed into the metrics.
+     *
+     * @param camera Where the mesh is seen from.
+     * @param g2D The graphics to draw on.
+     * @param poly The mesh to draw.
+     * @param cull True to skip back faces.
+     */
+    public void draw3DShape(Camera camera, Graphics2D g2D, Mesh poly,
+            boolean cull) {
+        draw3DShape(camera, g2D, poly, cull,
+                this.illumination.getColour().getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Draws a mesh in a colour other than the shape colour, as for an
+     * instance.
+     *
+     * @param camera Where the mesh is seen from.
+     * @param g2D The graphics to draw on.
+     * @param poly The mesh to draw.
+     * @param cull True to skip back faces.
+     * @param colour The colour of the mesh, as 0xRRGGBB.
+     */
+    public void draw3DShape(Camera camera, Graphics2D g2D, Mesh poly,
+            boolean cull, int colour) {
+        long start = System.nanoTime();
+        int faceCount = poly.getFaceCount();
+        int vertexCount = poly.getVertexCount();
+        if (this.faces.length < faceCount) {
+            this.faces = new int[faceCount];
+            this.colours = new Color[faceCount];
+            this.intensity = new float[faceCount];
+        }
+        if (this.screenX.length < vertexCount) {
+            this.screenX = new float[vertexCount];
+            this.screenY = new float[vertexCount];
+            this.screenZ = new float[vertexCount];
+            this.pixelX = new int[vertexCount];
+            this.pixelY = new int[vertexCount];
+        }
+        if (this.corners.length < poly.getMaxFaceSize()) {
+            this.corners = new int[poly.getMaxFaceSize()];
+            this.cornerX = new int[poly.getMaxFaceSize()];
+            this.cornerY = new int[poly.getMaxFaceSize()];
+        }
+
+        camera.project(poly, this.screenX, this.screenY, this.screenZ);
+        for (int v = 0; v < vertexCount; v++) {
+            this.pixelX[v] = Math.round(this.screenX[v]);
+            this.pixelY[v] = Math.round(this.screenY[v]);
+        }//for
+
+        poly.updateNormals();
+        int count = 0;
+        for (int f = 0; f < faceCount; f++) {
+            if (cull && this.culler.isCulled(poly, f)) {
+                continue;
+            }
+            if (!isClipped(poly, f)) {
+                this.faces[count++] = f;
+            }
+        }//for
+        long normalsDone = System.nanoTime();
+
+        poly.sortFaces(this.faces, count, this.screenZ);
+        long sortDone = System.nanoTime();
+
+        poly.lightFaces(this.illumination.getLighting(), this.intensity);
+        for (int k = 0; k < count; k++) {
+            this.colours[k] = this.illumination.getShadeColour(
+                    this.intensity[this.faces[k]], colour);
+        }//for
+        long shadeDone = System.nanoTime();
+
+        for (int k = 0; k < count; k++) {
+            int n = poly.getFaceVertices(this.faces[k], this.corners);
+            for (int c = 0; c < n; c++) {
+                this.cornerX[c] = this.pixelX[this.corners[c]];
+                this.cornerY[c] = this.pixelY[this.corners[c]];
+            }//for
+            g2D.setColor(this.colours[k]);
+            g2D.fillPolygon(this.cornerX, this.cornerY, n);
+        }//for
+        long fillDone = System.nanoTime();
+
+        this.metrics.add(FrameMetrics.Phase.NORMALS, normalsDone - start);
+        this.metrics.add(FrameMetrics.Phase.SORT, sortDone - normalsDone);
+        this.metrics.add(FrameMetrics.Phase.SHADE, shadeDone - sortDone);
+        this.metrics.add(FrameMetrics.Phase.FILL, fillDone - shadeDone);
+    }
+
+    /**
+     * Returns whether a face reaches nearer than the near plane, going by the
+     * depths last projected.
+     */
+    private boolean isClipped(Mesh poly, int face) {
+        int n = poly.getFaceVertices(face, this.corners);
+        for (int c = 0; c < n; c++) {
+            if (this.screenZ[this.corners[c]] < -1f) {
+                return true;
+            }
+        }//for
+        return false;
+    } // isClipped( Mesh, int )
+
+} // Graphics2DRenderer
@@ -0,0 +1,182 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Renders frames of an animation into offscreen images, with no window, for
+ * pre-rendering on machines without a display (run with
+ * -Djava.awt.headless=true).
+ *
+ * Each frame is computed directly from the starting scene with
+ * Scene.setFrame, so frames do not depend on each other and are rendered in
+ * parallel across all cores. Every worker thread has its own copy of the
+ * scene and its own renderer; only the illumination is shared, and it is only
+ * read.
+ *
+ * @author marcus
+ */
+public class HeadlessRenderer {
+
+    private final Scene start;
+    private final Illumination illumination;
+    private final int width;
+    private final int height;
+    private final Color background;
+    private final boolean zBuffer;
+    private final ThreadLocal<Worker> workers;
+    private volatile double framesPerSecond = 0.0;
+
+    /**
+     * The per-thread state: a scene to pose and a renderer to draw it.
+     */
+    private final class Worker {
+
+        private final Scene scene = new Scene(start);
+        private final Camera camera = new Camera();
+        private final Renderer renderer;
+
+        private Worker() {
+            BackFaceCuller culler = new BackFaceCuller();
+            FrameMetrics metrics = new FrameMetrics();
+            //frames come in any order, so each level is chosen afresh
+            DetailSelector detail = new DetailSelector();
+            detail.setHysteresis(0.0);
+            if (zBuffer) {
+                this.renderer = new ZBufferRenderer(illumination, culler,
+                        metrics, detail);
+            } else {
+                this.renderer = new Graphics2DRenderer(illumination, culler,
+                        metrics, detail);
+            }
+        } // Worker()
+
+    } // Worker
+
+    /**
+     * Creates a headless renderer.
+     *
+     * @param start The scene at frame 0, with each object's model matrix
+     * being its change per frame. It is copied, not changed.
+     * @param illumination The light and shape colour.
+     * @param width The width of each frame in pixels.
+     * @param height The height of each frame in pixels.
+     * @param background The background colour.
+     * @param zBuffer True to use the z-buffer renderer, false for Graphics2D.
+     */
+    public HeadlessRenderer(Scene start, Illumination illumination, int width,
+            int height, Color background, boolean zBuffer) {
+        this.start = new Scene(start);
+        this.illumination = illumination;
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.zBuffer = zBuffer;
+        this.workers = ThreadLocal.withInitial(Worker::new);
+    } // HeadlessRenderer( Scene, Illumination, int, int, Color, boolean )
+
+    /**
+     * Renders one frame on the calling thread.
+     *
+     * @param frame The frame number.
+     * @return A new image of the frame.
+     */
+    public BufferedImage renderFrame(long frame) {
+        Worker worker = this.workers.get();
+        worker.scene.setFrame(this.start, frame);
+
+        BufferedImage image = new BufferedImage(this.width, this.height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2D = image.createGraphics();
+        g2D.setColor(this.background);
+        g2D.fillRect(0, 0, this.width, this.height);
+
+        worker.camera.setViewport(0, 0, this.width, this.height);
+        worker.renderer.render(g2D, worker.camera, worker.scene,
+                this.background, this.width, this.height);
+        g2D.dispose();
+        return image;
+    } // renderFrame( long )
+
+    /**
+     * Renders a run of frames in parallel and keeps them all. For long runs
+     * use the form that takes a consumer, so frames need not all be held in
+     * memory at once.
+     *
+     * @param first The first frame number.
+     * @param count The number of frames.
+     * @return The images, in frame order.
+     */
+    public BufferedImage[] renderFrames(long first, int count) {
+        BufferedImage[] frames = new BufferedImage[count];
+        renderFrames(first, count,
+                (image, frame) -> frames[(int) (frame - first)] = image);
+        return frames;
+    } // renderFrames( long, int )
+
+    /**
+     * Renders a run of frames in parallel, handing each image to a consumer
+     * as soon as it is finished. The consumer is called from several threads
+     * at once and in no particular frame order.
+     *
+     * @param first The first frame number.
+     * @param count The number of frames.
+     * @param consumer Receives each image with its frame number.
+     */
+    public void renderFrames(long first, int count,
+            ObjLongConsumer<BufferedImage> consumer) {
+        long begin = System.nanoTime();
+        IntStream.range(0, count).parallel().forEach(i -> {
+            long frame = first + i;
+            consumer.accept(renderFrame(frame), frame);
+        });
+        long elapsed = System.nanoTime() - begin;
+        this.framesPerSecond = count * 1e9 / Math.max(1, elapsed);
+    } // renderFrames( long, int, ObjLongConsumer<BufferedImage> )
+
+    /**
+     * Returns the throughput of the last run of frames.
+     *
+     * @return Frames rendered per second.
+     */
+    public double getFramesPerSecond() {
+        return this.framesPerSecond;
+    } // getFramesPerSecond()
+
+    /**
+     * Renders frames of the SwingPanel scene and reports the throughput.
+     *
+     * @param args The number of frames, the width and the height, all
+     * optional, then "graphics2d" or "zbuffer" for the renderer, the number
+     * of polygons and "instanced" to draw them as instances of one polygon.
+     */
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+        boolean zBuffer = !(args.length > 3
+                && args[3].equalsIgnoreCase("graphics2d"));
+
+        Illumination illumination = new Illumination();
+        int polygons = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        boolean instanced = args.length > 5
+                && args[5].equalsIgnoreCase("instanced");
+        Scene scene = instanced
+                ? SwingPanel.createInstancedScene(polygons, 6, "normal")
+                : SwingPanel.createScene(polygons, 6, "normal");
+        HeadlessRenderer renderer = new HeadlessRenderer(scene, illumination,
+                width, height, Color.black, zBuffer);
+        renderer.renderFrames(0, frames, (image, frame) -> { });
+        System.out.printf("%d frames of %dx%d on %d cores: %.1f frames/s%n",
+                frames, width, height,
+                Runtime.getRuntime().availableProcessors(),
+                renderer.getFramesPerSecond());
+    } // main( String [] )
+
+} // HeadlessRenderer
@@ -0,0 +1,217 @@
+package swing3d;
+
+import java.awt.Color;
+
+/**
+ * The lighting for the scene and the colour of the shapes. Faces are lit by
+ * a Lighting, by default a single directional light from the top left and
+ * in front, and coloured by the shape colour scaled by the light intensity,
+ * clamped to between 0 and 1.
+ *
+ * Shading is either flat, one intensity per face worked out at its centre,
+ * or Gouraud, one intensity per vertex worked out from the vertex normals and
+ * blended across each face. The z-buffer renderers draw either; Graphics2D
+ * fills whole polygons in one colour, so it always shades flat.
+ *
+ * The shades of the shape colour are looked up in a ShadeTable that is only
+ * rebuilt when the colour changes, so shading a face allocates nothing, not
+ * even for Graphics2D. Faces of other colours, such as instances, are
+ * quantised to the same levels but worked out as they are asked for. For
+ * Graphics2D the last such shade is kept, so the faces of an instance that
+ * come out the same shade share one Color.
+ *
+ * @author marcus
+ */
+public class Illumination {
+
+    /**
+     * How intensities are spread over a face.
+     */
+    public enum Shading {
+        /**
+         * One intensity for the whole face.
+         */
+        FLAT,
+        /**
+         * An intensity at each vertex, blended across the face.
+         */
+        GOURAUD
+    } // Shading
+
+    private final ShadeTable material = new ShadeTable(Color.red);
+    private final Lighting lighting = new Lighting();
+    private volatile Shading shading = Shading.FLAT;
+    private volatile Color lastShade;
+
+    /**
+     * Creates the illumination with the default light and flat shading.
+     */
+    public Illumination() {
+        this.lighting.addDirectional(-1, -1, -1, 1.0);
+    } // Illumination()
+
+    public Color getColour() {
+        return this.material.getColour();
+    } // getColour()
+
+    /**
+     * Sets the shape colour. The shade table is only rebuilt if the colour is
+     * different from the current one.
+     *
+     * @param c The new colour.
+     */
+    public void setColour(Color c) {
+        this.material.setColour(c);
+    } // setColour( Color )
+
+    /**
+     * Returns the shades of the shape colour.
+     *
+     * @return The shade table.
+     */
+    public ShadeTable getShadeTable() {
+        return this.material;
+    } // getShadeTable()
+
+    /**
+     * Returns the lights, to add to or change.
+     *
+     * @return The lighting.
+     */
+    public Lighting getLighting() {
+        return this.lighting;
+    } // getLighting()
+
+    /**
+     * Returns how faces are shaded.
+     *
+     * @return The shading.
+     */
+    public Shading getShading() {
+        return this.shading;
+    } // getShading()
+
+    /**
+     * Sets how faces are shaded.
+     *
+     * @param shading The shading.
+     */
+    public void setShading(Shading shading) {
+        this.shading = shading;
+    } // setShading( Shading )
+
+    /**
+     * Returns the index in a ShadeTable of the shade for a face of a mesh.
+     *
+     * @param mesh The mesh.
+     * @param face The face.
+     * @return The index of the shade.
+     */
+    public int getShadeIndex(Mesh mesh, int face) {
+        return ShadeTable.index(mesh.lightFace(this.lighting, face));
+    } // getShadeIndex( Mesh, int )
+
+    /**
+     * Returns the shade of a colour for a light intensity as packed ARGB,
+     * for intensities from Mesh.lightFaces or Mesh.lightVertices.
+     *
+     * @param intensity The light intensity.
+     * @param rgb The colour, as 0xRRGGBB.
+     * @return The shade, as 0xFFRRGGBB.
+     */
+    public int getShadeARGB(double intensity, int rgb) {
+        return this.material.getShade(rgb, ShadeTable.index(intensity));
+    } // getShadeARGB( double, int )
+
+    /**
+     * Returns the shade of a colour for a light intensity as a Color. A new
+     * Color is only made when the colour is not the shape colour and the
+     * shade is not the same as the last one made.
+     *
+     * @param intensity The light intensity.
+     * @param rgb The colour, as 0xRRGGBB.
+     * @return The shade.
+     */
+    public Color getShadeColour(double intensity, int rgb) {
+        int index = ShadeTable.index(intensity);
+        Color shade = this.material.getShadeColour(rgb, index);
+        if (shade != null) {
+            return shade;
+        }
+        int argb = ShadeTable.shade(rgb, index);
+        Color last = this.lastShade;
+        if (last != null && last.getRGB() == argb) {
+            return last;
+        }
+        last = new Color(argb);
+        this.lastShade = last;
+        return last;
+    } // getShadeColour( double, int )
+
+    /**
+     * Returns the colour of a face of a mesh.
+     *
+     * @param mesh The mesh.
+     * @param face The face.
+     * @return The colour of the face.
+     */
+    public Color getIllumination(Mesh mesh, int face) {
+        return this.material.getShadeColour(getShadeIndex(mesh, face));
+    } // getIllumination( Mesh, int )
+
+    /**
+     * Returns the colour of a face of a mesh drawn in a colour other than the
+     * shape colour, as instances are. A new Color is only made when the
+     * colour is not the shape colour.
+     *
+     * @param mesh The mesh.
+     * @param face The face.
+     * @param rgb The colour of the mesh, as 0xRRGGBB.
+     * @return The colour of the face.
+     */
+    public Color getIllumination(Mesh mesh, int face, int rgb) {
+        return getShadeColour(mesh.lightFace(this.lighting, face), rgb);
+    } // getIllumination( Mesh, int, int )
+
+    /**
+     * Returns the colour of a face of a mesh as packed ARGB, without
+     * allocating, for renderers that write pixels directly.
+     *
+     * @param mesh The mesh.
+     * @param face The face.
+     * @param rgb The colour of the mesh, as 0xRRGGBB.
+     * @return The colour of the face, as 0xFFRRGGBB.
+     */
+    public int getIlluminationARGB(Mesh mesh, int face, int rgb) {
+        return getShadeARGB(mesh.lightFace(this.lighting, face), rgb);
+    } // getIlluminationARGB( Mesh, int, int )
+
+    public Color getIlluminationTop(Polygon3D poly) {
+        return getIllumination(poly, poly.getSides());
+    }
+
+    public Color getIlluminationBottom(Polygon3D poly) {
+        return getIllumination(poly, poly.getSides() + 1);
+    }
+
+    public Color getIlluminationSide(Polygon3D poly, int firstSide) {
+        return getIllumination(poly, firstSide);
+    }
+
+    public Color getIlluminationFinalSide(Polygon3D poly) {
+        // The same face as the last side, wound the other way, so lit from
+        // behind.
+        VectorPool pool = VectorPool.get();
+        int mark = pool.mark();
+        Vector normal = pool.take();
+        Vector centre = pool.take();
+        int face = poly.getSides() - 1;
+        poly.getNormal(face, normal);
+        poly.getFaceCentre(face, centre);
+        double intensity = this.lighting.intensity(-normal.x(), -normal.y(),
+                -normal.z(), centre.x(), centre.y(), centre.z());
+        pool.release(mark);
+        return this.material.getShadeColour(ShadeTable.index(intensity));
+    }
+
+} // Illumination
@@ -0,0 +1,483 @@
+package swing3d;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Many copies of one mesh, each with its own pose and colour.
+ *
+ * The mesh is the rest pose and is never moved. Each instance moves the way
+ * a Motion does: an orientation at frame 0 and a spin, each a quaternion,
+ * the current orientation, the spin composed onto it once per update, and a
+ * position. It also has a packed RGB colour and its pose, the matrix that
+ * places the rest pose in the scene, rebuilt from the orientation and
+ * position after every change. The pose is affine (its bottom row is
+ * 0 0 0 1), so only its top three rows are kept, twelve doubles. Everything
+ * is packed one instance after another in primitive arrays, so a hundred
+ * thousand prisms cost a few megabytes instead of a hundred thousand vertex
+ * lists.
+ *
+ * As with Motion, the pose never multiplies into itself: the orientations
+ * are normalised every Motion.RENORMALISE_STEPS updates so rounding cannot
+ * grow or shrink them, and setFrame raises each spin to the frame's power in
+ * constant time.
+ *
+ * Renderers draw an instance by placing the rest pose into a mesh of their
+ * own with place, which transforms every vertex in one pass, and drawing that
+ * mesh as usual.
+ *
+ * An instance's bounding box is found from its pose and the rest pose's box
+ * alone, without placing it, so the scene can leave instances out of view
+ * undrawn at the cost of a few multiplies each.
+ *
+ * @author marcus
+ */
+public class InstanceBatch {
+
+    // The doubles per packed matrix: the top three rows of a 4x4 matrix.
+    private static final int STRIDE = 12;
+
+    // The doubles per packed quaternion, w then x, y and z.
+    private static final int QUATERNION = 4;
+
+    // Below this many instances the update runs on the calling thread.
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final Mesh geometry;
+    private final double restCentreX;
+    private final double restCentreY;
+    private final double restCentreZ;
+    private double[] poses = new double[0];
+    private double[] starts = new double[0];
+    private double[] spins = new double[0];
+    private double[] orientations = new double[0];
+    private double[] positions = new double[0];
+    private int[] colours = new int[0];
+    private int count = 0;
+    private int steps = 0;
+    private boolean culling = true;
+    private double[] depths = new double[0];
+    private int[] order = new int[0];
+    private int[] sortScratch = new int[0];
+    private int[] subsetOrder = new int[0];
+
+    /**
+     * Creates an empty batch of a mesh. The mesh is kept, not copied, and must
+     * not be changed while the batch is in use.
+     *
+     * @param geometry The rest pose every instance shares.
+     */
+    public InstanceBatch(Mesh geometry) {
+        this.geometry = geometry;
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumZ = 0.0;
+        int n = geometry.getVertexCount();
+        for (int v = 0; v < n; v++) {
+            sumX += geometry.getX(v);
+            sumY += geometry.getY(v);
+            sumZ += geometry.getZ(v);
+        } // for
+        this.restCentreX = sumX / n;
+        this.restCentreY = sumY / n;
+        this.restCentreZ = sumZ / n;
+    } // InstanceBatch( Mesh )
+
+    /**
+     * Creates a copy of another batch, sharing its geometry and with its own
+     * poses, motions and colours.
+     *
+     * @param other The batch to copy.
+     */
+    public InstanceBatch(InstanceBatch other) {
+        this.geometry = other.geometry;
+        this.restCentreX = other.restCentreX;
+        this.restCentreY = other.restCentreY;
+        this.restCentreZ = other.restCentreZ;
+        int n = other.count;
+        this.poses = Arrays.copyOf(other.poses, STRIDE * n);
+        this.starts = Arrays.copyOf(other.starts, QUATERNION * n);
+        this.spins = Arrays.copyOf(other.spins, QUATERNION * n);
+        this.orientations = Arrays.copyOf(other.orientations, QUATERNION * n);
+        this.positions = Arrays.copyOf(other.positions, 3 * n);
+        this.colours = Arrays.copyOf(other.colours, n);
+        this.count = n;
+        this.steps = other.steps;
+        this.culling = other.culling;
+    } // InstanceBatch( InstanceBatch )
+
+    /**
+     * Copies the poses, motions and colours of another batch with the same
+     * number of instances into this one, without allocating.
+     *
+     * @param other The batch to copy from.
+     */
+    public void copyFrom(InstanceBatch other) {
+        int n = this.count;
+        System.arraycopy(other.poses, 0, this.poses, 0, STRIDE * n);
+        System.arraycopy(other.starts, 0, this.starts, 0, QUATERNION * n);
+        System.arraycopy(other.spins, 0, this.spins, 0, QUATERNION * n);
+        System.arraycopy(other.orientations, 0, this.orientations, 0,
+                QUATERNION * n);
+        System.arraycopy(other.positions, 0, this.positions, 0, 3 * n);
+        System.arraycopy(other.colours, 0, this.colours, 0, n);
+        this.steps = other.steps;
+        this.culling = other.culling;
+    } // copyFrom( InstanceBatch )
+
+    /**
+     * Adds an instance that moves as a Motion made from the same orientation,
+     * spin and position would.
+     *
+     * @param orientation The orientation at frame 0. It is copied.
+     * @param spin The rotation every update adds. It is copied.
+     * @param x The x position of the instance.
+     * @param y The y position of the instance.
+     * @param z The z position of the instance.
+     * @param colour The colour of the instance.
+     */
+    public void add(Quaternion orientation, Quaternion spin, double x,
+            double y, double z, Color colour) {
+        if (this.count == this.colours.length) {
+            int capacity = Math.max(16, 2 * this.count);
+            this.poses = Arrays.copyOf(this.poses, STRIDE * capacity);
+            this.starts = Arrays.copyOf(this.starts, QUATERNION * capacity);
+            this.spins = Arrays.copyOf(this.spins, QUATERNION * capacity);
+            this.orientations = Arrays.copyOf(this.orientations,
+                    QUATERNION * capacity);
+            this.positions = Arrays.copyOf(this.positions, 3 * capacity);
+            this.colours = Arrays.copyOf(this.colours, capacity);
+        } // if
+        int i = this.count;
+        pack(orientation, this.starts, QUATERNION * i);
+        pack(spin, this.spins, QUATERNION * i);
+        pack(orientation, this.orientations, QUATERNION * i);
+        this.positions[3 * i] = x;
+        this.positions[3 * i + 1] = y;
+        this.positions[3 * i + 2] = z;
+        this.colours[i] = colour.getRGB() & 0xFFFFFF;
+        this.count++;
+        updatePose(i);
+    } // add( Quaternion, Quaternion, double, double, double, Color )
+
+    /**
+     * Adds an instance at a position that spins about that position, as
+     * Scene.add does for a whole mesh. It starts unrotated.
+     *
+     * @param spinner The rotation to apply every update. Only its top left
+     * 3X3 is used.
+     * @param x The x position of the instance.
+     * @param y The y position of the instance.
+     * @param z The z position of the instance.
+     * @param colour The colour of the instance.
+     */
+    public void add(Matrix4X4 spinner, double x, double y, double z,
+            Color colour) {
+        Quaternion spin = new Quaternion();
+        spin.fromMatrix(spinner);
+        this.add(new Quaternion(), spin, x, y, z, colour);
+    } // add( Matrix4X4, double, double, double, Color )
+
+    /**
+     * Returns the number of instances.
+     *
+     * @return The number of instances.
+     */
+    public int size() {
+        return this.count;
+    } // size()
+
+    /**
+     * Returns the rest pose every instance shares.
+     *
+     * @return The geometry.
+     */
+    public Mesh getGeometry() {
+        return this.geometry;
+    } // getGeometry()
+
+    /**
+     * Returns the packed RGB colour of an instance.
+     *
+     * @param i The instance.
+     * @return The colour, as 0xRRGGBB.
+     */
+    public int getColour(int i) {
+        return this.colours[i];
+    } // getColour( int )
+
+    /**
+     * Sets the colour of an instance.
+     *
+     * @param i The instance.
+     * @param colour The colour.
+     */
+    public void setColour(int i, Color colour) {
+        this.colours[i] = colour.getRGB() & 0xFFFFFF;
+    } // setColour( int, Color )
+
+    /**
+     * Writes the pose of an instance into a matrix.
+     *
+     * @param i The instance.
+     * @param pose The matrix to fill.
+     */
+    public void getPose(int i, Matrix4X4 pose) {
+        unpack(this.poses, STRIDE * i, pose);
+    } // getPose( int, Matrix4X4 )
+
+    /**
+     * Returns whether the instances' back faces are culled.
+     *
+     * @return True if back faces are culled.
+     */
+    public boolean isCulling() {
+        return this.culling;
+    } // isCulling()
+
+    /**
+     * Sets whether the instances' back faces are culled. It is on by default.
+     *
+     * @param cull True to cull back faces.
+     */
+    public void setCulling(boolean cull) {
+        this.culling = cull;
+    } // setCulling( boolean )
+
+    /**
+     * Returns a mesh for a renderer to place instances into. Each renderer
+     * thread needs its own.
+     *
+     * @return A mesh with the geometry's faces.
+     */
+    public Mesh newInstanceMesh() {
+        return this.geometry.copy();
+    } // newInstanceMesh()
+
+    /**
+     * Sets a mesh from newInstanceMesh to the rest pose moved by an
+     * instance's pose.
+     *
+     * @param i The instance.
+     * @param target The mesh to set.
+     */
+    public void place(int i, Mesh target) {
+        target.transformFrom(this.geometry, this.poses, STRIDE * i);
+    } // place( int, Mesh )
+
+    /**
+     * Composes every instance's spin onto its orientation and rebuilds its
+     * pose. With PARALLEL_THRESHOLD or more instances the work is split over
+     * the common fork/join pool.
+     */
+    public void update() {
+        boolean normalise = ++this.steps == Motion.RENORMALISE_STEPS;
+        if (normalise) {
+            this.steps = 0;
+        }
+        if (this.count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < this.count; i++) {
+                step(i, normalise);
+            } // for
+        } // if
+        else {
+            IntStream.range(0, this.count).parallel()
+                    .forEach(i -> step(i, normalise));
+        } // else
+    } // update()
+
+    /**
+     * Sets every instance to where it would be after a number of updates, in
+     * constant time each: the spin raised to the frame times the orientation
+     * at frame 0.
+     *
+     * @param start The batch at frame 0, which this one was copied from.
+     * @param frame The number of updates.
+     */
+    public void setFrame(InstanceBatch start, long frame) {
+        Quaternion spin = new Quaternion();
+        Quaternion orientation = new Quaternion();
+        Quaternion first = new Quaternion();
+        for (int i = 0; i < this.count; i++) {
+            int q = QUATERNION * i;
+            unpack(start.spins, q, spin);
+            unpack(start.starts, q, first);
+            spin.powerInto(frame, orientation);
+            orientation.multiplyInto(first, orientation);
+            pack(orientation, this.orientations, q);
+            updatePose(i);
+        } // for
+        this.steps = 0;
+    } // setFrame( InstanceBatch, long )
+
+    /**
+     * Returns the z of an instance's centre, the centre of its rest pose moved
+     * by its pose.
+     *
+     * @param i The instance.
+     * @return The centre z.
+     */
+    public double getCentreZ(int i) {
+        int p = STRIDE * i;
+        return this.poses[p + 8] * this.restCentreX
+                + this.poses[p + 9] * this.restCentreY
+                + this.poses[p + 10] * this.restCentreZ + this.poses[p + 11];
+    } // getCentreZ( int )
+
+    /**
+     * Writes the axis-aligned bounding box of an instance, the rest pose's
+     * box moved by the instance's pose. Each side of the moved box is found
+     * from the pose's elements and the rest box's corners directly, so the
+     * box is as tight as one around the moved rest box can be.
+     *
+     * @param i The instance.
+     * @param box Filled with min x, y, z then max x, y, z.
+     */
+    public void getBounds(int i, double[] box) {
+        Mesh rest = this.geometry;
+        double restMinX = rest.getMinX();
+        double restMinY = rest.getMinY();
+        double restMinZ = rest.getMinZ();
+        double restMaxX = rest.getMaxX();
+        double restMaxY = rest.getMaxY();
+        double restMaxZ = rest.getMaxZ();
+        double[] p = this.poses;
+        for (int r = 0; r < 3; r++) {
+            int o = STRIDE * i + 4 * r;
+            double low = p[o + 3];
+            double high = p[o + 3];
+            double a = p[o] * restMinX;
+            double b = p[o] * restMaxX;
+            low += Math.min(a, b);
+            high += Math.max(a, b);
+            a = p[o + 1] * restMinY;
+            b = p[o + 1] * restMaxY;
+            low += Math.min(a, b);
+            high += Math.max(a, b);
+            a = p[o + 2] * restMinZ;
+            b = p[o + 2] * restMaxZ;
+            low += Math.min(a, b);
+            high += Math.max(a, b);
+            box[r] = low;
+            box[r + 3] = high;
+        } // for
+    } // getBounds( int, double [] )
+
+    /**
+     * Returns the instances in drawing order, from the highest centre z to
+     * the lowest. The returned array is reused by the next call.
+     *
+     * @return The instances, back to front. Only the first size() elements
+     * are meaningful.
+     */
+    public int[] depthOrder() {
+        if (this.depths.length < this.count) {
+            this.depths = new double[this.count];
+            this.order = new int[this.count];
+            this.sortScratch = new int[this.count];
+        } // if
+        for (int i = 0; i < this.count; i++) {
+            this.depths[i] = getCentreZ(i);
+        } // for
+        MergeSort.argsort(this.depths, this.count, this.order,
+                this.sortScratch, true);
+        return this.order;
+    } // depthOrder()
+
+    /**
+     * Returns some of the instances in drawing order, from the centre
+     * furthest from a camera to the nearest, keeping the order they are
+     * given in between equal depths. The returned array is reused by the
+     * next call.
+     *
+     * @param instances The instances to order.
+     * @param count The number of instances to order.
+     * @param camera The camera the instances are drawn from.
+     * @return The instances, back to front. Only the first count elements
+     * are meaningful.
+     */
+    public int[] depthOrder(int[] instances, int count, Camera camera) {
+        if (this.depths.length < count) {
+            this.depths = new double[count];
+            this.order = new int[count];
+            this.sortScratch = new int[count];
+        } // if
+        if (this.subsetOrder.length < count) {
+            this.subsetOrder = new int[count];
+        }
+        double[] p = this.poses;
+        for (int k = 0; k < count; k++) {
+            int o = STRIDE * instances[k];
+            double x = p[o] * this.restCentreX + p[o + 1] * this.restCentreY
+                    + p[o + 2] * this.restCentreZ + p[o + 3];
+            double y = p[o + 4] * this.restCentreX
+                    + p[o + 5] * this.restCentreY
+                    + p[o + 6] * this.restCentreZ + p[o + 7];
+            this.depths[k] = camera.getDepth(x, y, getCentreZ(instances[k]));
+        } // for
+        MergeSort.argsort(this.depths, count, this.order, this.sortScratch,
+                true);
+        for (int k = 0; k < count; k++) {
+            this.subsetOrder[k] = instances[this.order[k]];
+        } // for
+        return this.subsetOrder;
+    } // depthOrder( int [], int, Camera )
+
+    /**
+     * Composes one instance's spin onto its orientation, normalising it if
+     * asked, and rebuilds its pose.
+     */
+    private void step(int i, boolean normalise) {
+        int q = QUATERNION * i;
+        Quaternion.multiply(this.spins, q, this.orientations, q,
+                this.orientations, q);
+        if (normalise) {
+            Quaternion.normalise(this.orientations, q);
+        }
+        updatePose(i);
+    } // step( int, boolean )
+
+    /**
+     * Packs one instance's orientation and position into its pose.
+     */
+    private void updatePose(int i) {
+        double[] o = this.orientations;
+        int q = QUATERNION * i;
+        Quaternion.toRows(o[q], o[q + 1], o[q + 2], o[q + 3],
+                this.positions[3 * i], this.positions[3 * i + 1],
+                this.positions[3 * i + 2], this.poses, STRIDE * i);
+    } // updatePose( int )
+
+    /**
+     * Writes a quaternion into a packed array.
+     */
+    private static void pack(Quaternion q, double[] packed, int offset) {
+        packed[offset] = q.w();
+        packed[offset + 1] = q.x();
+        packed[offset + 2] = q.y();
+        packed[offset + 3] = q.z();
+    } // pack( Quaternion, double [], int )
+
+    /**
+     * Reads a packed quaternion back into a Quaternion.
+     */
+    private static void unpack(double[] packed, int offset, Quaternion q) {
+        q.set(packed[offset], packed[offset + 1], packed[offset + 2],
+                packed[offset + 3]);
+    } // unpack( double [], int, Quaternion )
+
+    /**
+     * Reads a packed matrix back into a Matrix4X4, with bottom row 0 0 0 1.
+     */
+    private static void unpack(double[] packed, int offset,
+            Matrix4X4 matrix) {
+        matrix.identity();
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                matrix.set(r, c, packed[offset + 4 * r + c]);
+            } // for
+        } // for
+    } // unpack( double [], int, Matrix4X4 )
+
+} // InstanceBatch
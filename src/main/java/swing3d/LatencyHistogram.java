@@ -0,0 +1,122 @@
+package swing3d;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds that any number of threads can
+ * record into without locks.
+ *
+ * Values are counted in log-linear buckets: each power of two is split into
+ * eight equal buckets, so a percentile is accurate to within 12.5% whatever
+ * its size, and the whole range of a long fits in under 500 counters.
+ * Recording is three atomic updates; nothing is allocated.
+ *
+ * @author marcus
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucket(value));
+        this.total.incrementAndGet();
+        long previous = this.max.get();
+        while (value > previous && !this.max.compareAndSet(previous, value)) {
+            previous = this.max.get();
+        }
+    } // record( long )
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return this.total.get();
+    } // getCount()
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return The maximum in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    } // getMax()
+
+    /**
+     * Returns an upper bound on a percentile of the recorded durations.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The top of the bucket holding the percentile, in nanoseconds, or
+     * 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = this.total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += this.counts.get(b);
+            if (seen >= target) {
+                return Math.min(lowestValue(b + 1) - 1, this.max.get());
+            }
+        } // for
+        return this.max.get();
+    } // getPercentile( double )
+
+    /**
+     * Clears the histogram. Values recorded while it is being cleared may or
+     * may not survive.
+     */
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            this.counts.set(b, 0);
+        } // for
+        this.total.set(0);
+        this.max.set(0);
+    } // reset()
+
+    /**
+     * Returns the bucket a value is counted in.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    } // bucket( long )
+
+    /**
+     * Returns the smallest value counted in a bucket.
+     */
+    private static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        if (exponent > 62) {
+            return Long.MAX_VALUE;
+        }
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    } // lowestValue( int )
+
+} // LatencyHistogram
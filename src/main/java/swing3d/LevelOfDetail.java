@@ -0,0 +1,142 @@
+package swing3d;
+
+/**
+ * The same shape at several levels of detail, finest first, each a rest pose
+ * with fewer faces than the one before, and the largest size on the panel
+ * each level may be drawn at.
+ *
+ * A level is chosen from the projected radius, in pixels, of the object's
+ * bounding sphere: the coarsest level whose largest radius is at least that.
+ * The finest level has no largest radius. To stop an object flickering
+ * between two levels as its size hovers near the radius that separates them,
+ * select only moves to a coarser level once the object is a fraction, the
+ * hysteresis, smaller than that level's largest radius; it moves to a finer
+ * level as soon as the current one is too coarse.
+ *
+ * Every level must be posed the same way, so that one Motion can place any of
+ * them. A Scene holds the level of detail of each object that has one, poses
+ * the finest level every update, and a DetailSelector picks the level to draw.
+ *
+ * @author marcus
+ */
+public final class LevelOfDetail {
+
+    /**
+     * The fewest sides polygon makes a level with.
+     */
+    public static final int MIN_SIDES = 8;
+
+    /**
+     * The longest, in pixels, polygon lets a side's edge be on the panel
+     * before it uses a finer level.
+     */
+    public static final double PIXELS_PER_SIDE = 4.0;
+
+    private final Mesh[] levels;
+    private final double[] maxRadii;
+
+    /**
+     * Creates a level of detail from its levels.
+     *
+     * @param levels The rest poses, finest first, at least one. They are
+     * kept, not copied.
+     * @param maxRadii The largest projected radius, in pixels, each level may
+     * be drawn at, decreasing. The first is ignored; the finest level can be
+     * drawn at any size.
+     */
+    public LevelOfDetail(Mesh[] levels, double[] maxRadii) {
+        this.levels = levels.clone();
+        this.maxRadii = maxRadii.clone();
+        this.maxRadii[0] = Double.POSITIVE_INFINITY;
+    } // LevelOfDetail( Mesh [], double [] )
+
+    /**
+     * Makes the levels of a prism or cone: the full number of sides, then
+     * half as many, and so on while there are at least MIN_SIDES. Each level
+     * may be drawn until the edge of one of its sides would be longer than
+     * PIXELS_PER_SIDE on the panel.
+     *
+     * @param numberOfSides The number of sides of the finest level.
+     * @param radius The distance from the axis to each corner.
+     * @param depth The distance between the top and the bottom.
+     * @param type "normal" or "cone", as for Polygon3D.create.
+     * @return The levels.
+     */
+    public static LevelOfDetail polygon(int numberOfSides, double radius,
+            double depth, String type) {
+        int count = 1;
+        for (int sides = numberOfSides / 2; sides >= MIN_SIDES; sides /= 2) {
+            count++;
+        }//for
+        Mesh[] levels = new Mesh[count];
+        double[] maxRadii = new double[count];
+        int sides = numberOfSides;
+        for (int l = 0; l < count; l++) {
+            levels[l] = Polygon3D.create(sides, radius, depth, type);
+            // A side's edge is a chord of about 2 pi radius / sides; the
+            // sphere is larger than the polygon, so scale the limit up.
+            maxRadii[l] = sides * PIXELS_PER_SIDE / (2 * Math.PI)
+                    * levels[l].getSphereRadius() / radius;
+            sides /= 2;
+        }//for
+        return new LevelOfDetail(levels, maxRadii);
+    } // polygon( int, double, double, String )
+
+    /**
+     * Returns the number of levels.
+     *
+     * @return The number of levels.
+     */
+    public int getLevelCount() {
+        return this.levels.length;
+    } // getLevelCount()
+
+    /**
+     * Returns the rest pose of a level.
+     *
+     * @param level The level, 0 being the finest.
+     * @return The rest pose. It must not be changed.
+     */
+    public Mesh getLevel(int level) {
+        return this.levels[level];
+    } // getLevel( int )
+
+    /**
+     * Returns the largest projected radius a level may be drawn at.
+     *
+     * @param level The level, 0 being the finest.
+     * @return The radius in pixels, infinite for the finest level.
+     */
+    public double getMaxRadius(int level) {
+        return this.maxRadii[level];
+    } // getMaxRadius( int )
+
+    /**
+     * Chooses the level to draw an object at.
+     *
+     * @param current The level it was drawn at last frame.
+     * @param radius The projected radius of its bounding sphere in pixels.
+     * @param hysteresis How much smaller than a coarser level's largest
+     * radius the object must be to move to it, as a fraction; 0 for none.
+     * @return The level to draw.
+     */
+    public int select(int current, double radius, double hysteresis) {
+        int last = this.levels.length - 1;
+        current = Math.min(current, last);
+        int needed = 0;
+        while (needed < last && this.maxRadii[needed + 1] >= radius) {
+            needed++;
+        }//while
+        if (needed <= current) {
+            //the current level is too coarse, or just right
+            return needed;
+        }
+        double shrunk = radius * (1.0 + hysteresis);
+        int level = current;
+        while (level < last && this.maxRadii[level + 1] >= shrunk) {
+            level++;
+        }//while
+        return level;
+    } // select( int, double, double )
+
+} // LevelOfDetail
@@ -0,0 +1,234 @@
+package swing3d;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The lights in a scene: any number of directional lights, shining the same
+ * way everywhere, and point lights, shining out from a position, plus an
+ * ambient level that lights every surface equally.
+ *
+ * The intensity at a surface is the ambient level plus, for each light, the
+ * light's intensity times the cosine between the surface normal and the
+ * direction to the light, or nothing if the surface faces away from it. Only
+ * the x, y and z of the normal are used. The sum is not clamped here; the
+ * ShadeTable clamps it to between 0 and 1 when it is turned into a colour.
+ *
+ * The lights are kept in parallel primitive arrays, and evaluate lights a
+ * whole array of normals at once: one light at a time, each in a single loop
+ * over the normals, so the loops are short, branch free and easy for the JIT
+ * to vectorise. Mesh.lightFaces and Mesh.lightVertices hand it a mesh's face
+ * or vertex normals. With PARALLEL_THRESHOLD or more normals, and parallel
+ * evaluation on, the arrays are split into chunks over the common fork/join
+ * pool.
+ *
+ * @author marcus
+ */
+public class Lighting {
+
+    /**
+     * The fewest normals evaluated in parallel, when that is on.
+     */
+    public static final int PARALLEL_THRESHOLD = 16384;
+
+    // The normals in each parallel chunk.
+    private static final int CHUNK = 4096;
+
+    private int lightCount = 0;
+    private boolean[] point = new boolean[0];
+    private double[] lightX = new double[0];
+    private double[] lightY = new double[0];
+    private double[] lightZ = new double[0];
+    private double[] intensity = new double[0];
+    private double ambient = 0.0;
+    private boolean parallel = true;
+
+    /**
+     * Creates lighting with no lights and no ambient light.
+     */
+    public Lighting() {
+    } // Lighting()
+
+    /**
+     * Adds a directional light.
+     *
+     * @param towardsX The x component of the direction towards the light.
+     * @param towardsY The y component of the direction towards the light.
+     * @param towardsZ The z component of the direction towards the light.
+     * @param intensity The intensity on a surface facing the light, 1 for
+     * the full colour.
+     */
+    public void addDirectional(double towardsX, double towardsY,
+            double towardsZ, double intensity) {
+        double length = Math.sqrt(towardsX * towardsX + towardsY * towardsY
+                + towardsZ * towardsZ);
+        add(false, towardsX / length, towardsY / length, towardsZ / length,
+                intensity);
+    } // addDirectional( double, double, double, double )
+
+    /**
+     * Adds a point light. Its light does not fall off with distance.
+     *
+     * @param x The x position of the light.
+     * @param y The y position of the light.
+     * @param z The z position of the light.
+     * @param intensity The intensity on a surface facing the light, 1 for
+     * the full colour.
+     */
+    public void addPoint(double x, double y, double z, double intensity) {
+        add(true, x, y, z, intensity);
+    } // addPoint( double, double, double, double )
+
+    /**
+     * Removes every light. The ambient level is kept.
+     */
+    public void clear() {
+        this.lightCount = 0;
+    } // clear()
+
+    /**
+     * Returns the number of lights.
+     *
+     * @return The number of lights.
+     */
+    public int getLightCount() {
+        return this.lightCount;
+    } // getLightCount()
+
+    /**
+     * Sets the intensity every surface gets whichever way it faces.
+     *
+     * @param ambient The ambient intensity.
+     */
+    public void setAmbient(double ambient) {
+        this.ambient = ambient;
+    } // setAmbient( double )
+
+    /**
+     * Returns the ambient intensity.
+     *
+     * @return The ambient intensity.
+     */
+    public double getAmbient() {
+        return this.ambient;
+    } // getAmbient()
+
+    /**
+     * Sets whether large batches are evaluated in parallel. It is on by
+     * default.
+     *
+     * @param parallel True to evaluate large batches in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    } // setParallel( boolean )
+
+    /**
+     * Returns the intensity at one surface point.
+     *
+     * @param nx The x component of the unit normal.
+     * @param ny The y component of the unit normal.
+     * @param nz The z component of the unit normal.
+     * @param px The x position of the point.
+     * @param py The y position of the point.
+     * @param pz The z position of the point.
+     * @return The intensity.
+     */
+    public double intensity(double nx, double ny, double nz, double px,
+            double py, double pz) {
+        double sum = this.ambient;
+        for (int l = 0; l < this.lightCount; l++) {
+            double dx = this.lightX[l];
+            double dy = this.lightY[l];
+            double dz = this.lightZ[l];
+            double cos;
+            if (this.point[l]) {
+                dx -= px;
+                dy -= py;
+                dz -= pz;
+                cos = (nx * dx + ny * dy + nz * dz)
+                        / Math.sqrt(dx * dx + dy * dy + dz * dz);
+            } else {
+                cos = nx * dx + ny * dy + nz * dz;
+            }
+            sum += Math.max(0.0, cos) * this.intensity[l];
+        } // for
+        return sum;
+    } // intensity( double, double, double, double, double, double )
+
+    /**
+     * Works out the intensity at many surface points at once.
+     *
+     * @param nx The x components of the unit normals.
+     * @param ny The y components of the unit normals.
+     * @param nz The z components of the unit normals.
+     * @param px The x positions of the points, only read for point lights.
+     * @param py The y positions of the points.
+     * @param pz The z positions of the points.
+     * @param count The number of points, from the start of the arrays.
+     * @param out Receives the intensities.
+     */
+    public void evaluate(double[] nx, double[] ny, double[] nz, double[] px,
+            double[] py, double[] pz, int count, float[] out) {
+        if (!this.parallel || count < PARALLEL_THRESHOLD) {
+            evaluate(nx, ny, nz, px, py, pz, 0, count, out);
+            return;
+        } // if
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(c -> evaluate(nx, ny,
+                nz, px, py, pz, c * CHUNK, Math.min(count, (c + 1) * CHUNK),
+                out));
+    } // evaluate( double [] ... , int, float [] )
+
+    /**
+     * Works out the intensities of the points from one index up to, but not
+     * including, another, one light at a time.
+     */
+    private void evaluate(double[] nx, double[] ny, double[] nz, double[] px,
+            double[] py, double[] pz, int from, int to, float[] out) {
+        Arrays.fill(out, from, to, (float) this.ambient);
+        for (int l = 0; l < this.lightCount; l++) {
+            double lx = this.lightX[l];
+            double ly = this.lightY[l];
+            double lz = this.lightZ[l];
+            double li = this.intensity[l];
+            if (this.point[l]) {
+                for (int i = from; i < to; i++) {
+                    double dx = lx - px[i];
+                    double dy = ly - py[i];
+                    double dz = lz - pz[i];
+                    double cos = (nx[i] * dx + ny[i] * dy + nz[i] * dz)
+                            / Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    out[i] += (float) (Math.max(0.0, cos) * li);
+                } // for
+            } else {
+                for (int i = from; i < to; i++) {
+                    double cos = nx[i] * lx + ny[i] * ly + nz[i] * lz;
+                    out[i] += (float) (Math.max(0.0, cos) * li);
+                } // for
+            }
+        } // for
+    } // evaluate( double [] ... , int, int, float [] )
+
+    /**
+     * Appends a light to the arrays, growing them if they are full.
+     */
+    private void add(boolean isPoint, double x, double y, double z,
+            double lightIntensity) {
+        if (this.lightCount == this.point.length) {
+            int capacity = Math.max(4, 2 * this.lightCount);
+            this.point = Arrays.copyOf(this.point, capacity);
+            this.lightX = Arrays.copyOf(this.lightX, capacity);
+            this.lightY = Arrays.copyOf(this.lightY, capacity);
+            this.lightZ = Arrays.copyOf(this.lightZ, capacity);
+            this.intensity = Arrays.copyOf(this.intensity, capacity);
+        } // if
+        int l = this.lightCount++;
+        this.point[l] = isPoint;
+        this.lightX[l] = x;
+        this.lightY[l] = y;
+        this.lightZ[l] = z;
+        this.intensity[l] = lightIntensity;
+    } // add( boolean, double, double, double, double )
+
+} // Lighting
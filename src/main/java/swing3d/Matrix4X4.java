@@ -11,13 +11,15 @@ package swing3d;
  */
 public final class Matrix4X4 {
 
-    private final double[][] elements;
+    // The elements are stored row by row: element (row, column) is at index
+    // 4 * row + column.
+    private final double[] elements;
 
     /**
      * The constructor creates a 4X4 identity matrix
      */
     public Matrix4X4() {
-        this.elements = new double[4][4];
+        this.elements = new double[16];
         this.identity();
     }
 
@@ -25,16 +27,11 @@ public final class Matrix4X4 {
      * The method sets this matrix to the identity matrix.
      */
     public final void identity() {
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                if (i == j) {
-                    this.set(i, j, 1.0);
-                }//if
-                else {
-                    this.set(i, j, 0.0);
-                }//else
-            }//for j
-        }//for i
+        double[] e = this.elements;
+        e[0] = 1.0;  e[1] = 0.0;  e[2] = 0.0;  e[3] = 0.0;
+        e[4] = 0.0;  e[5] = 1.0;  e[6] = 0.0;  e[7] = 0.0;
+        e[8] = 0.0;  e[9] = 0.0;  e[10] = 1.0; e[11] = 0.0;
+        e[12] = 0.0; e[13] = 0.0; e[14] = 0.0; e[15] = 1.0;
     }//identity
 
     /**
@@ -45,7 +42,16 @@ public final class Matrix4X4 {
      * @param value The value to set.
      */
     public void set(int row, int column, double value) {
-        this.elements[row][column] = value;
+        this.elements[4 * row + column] = value;
+    }
+
+    /**
+     * Copies every element of another matrix into this matrix.
+     *
+     * @param otherMatrix The matrix to copy from.
+     */
+    public void set(Matrix4X4 otherMatrix) {
+        System.arraycopy(otherMatrix.elements, 0, this.elements, 0, 16);
     }
 
     /**
@@ -56,7 +62,7 @@ public final class Matrix4X4 {
      * @return The value in the element
      */
     public double get(int row, int column) {
-        return this.elements[row][column];
+        return this.elements[4 * row + column];
     }
 
     /**
@@ -101,18 +107,62 @@ public final class Matrix4X4 {
      */
     public Matrix4X4 multiply(Matrix4X4 otherMatrix) {
         Matrix4X4 product = new Matrix4X4();
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                double sum = 0.0;
-                for (int k = 0; k < 4; k++) {
-                    sum += this.get(i, k) * otherMatrix.get(k, j);
-                }
-                product.set(i, j, sum);
-            }
-        }
+        this.multiplyInto(otherMatrix, product);
         return product;
     }
 
+    /**
+     * Multiplies this matrix by another matrix and writes the product into a
+     * destination matrix, without allocating. The destination may be this
+     * matrix or the other matrix.
+     *
+     * @param otherMatrix The other matrix to multiply with
+     * @param destination The matrix that receives the product.
+     */
+    public void multiplyInto(Matrix4X4 otherMatrix, Matrix4X4 destination) {
+        double[] b = otherMatrix.elements;
+        double b00 = b[0], b01 = b[1], b02 = b[2], b03 = b[3];
+        double b10 = b[4], b11 = b[5], b12 = b[6], b13 = b[7];
+        double b20 = b[8], b21 = b[9], b22 = b[10], b23 = b[11];
+        double b30 = b[12], b31 = b[13], b32 = b[14], b33 = b[15];
+        double[] a = this.elements;
+        double[] p = destination.elements;
+        for (int row = 0; row < 16; row += 4) {
+            double a0 = a[row];
+            double a1 = a[row + 1];
+            double a2 = a[row + 2];
+            double a3 = a[row + 3];
+            p[row] = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+            p[row + 1] = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+            p[row + 2] = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+            p[row + 3] = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        } // for row
+    } // multiplyInto( Matrix4X4, Matrix4X4 )
+
+    /**
+     * Raises this matrix to a whole power and writes the result into a
+     * destination matrix, by repeated squaring, so it takes about
+     * 2 log2(exponent) products rather than exponent of them. The destination
+     * may be this matrix.
+     *
+     * @param exponent The power, 0 or more. The 0th power is the identity.
+     * @param destination The matrix that receives the power.
+     */
+    public void powerInto(long exponent, Matrix4X4 destination) {
+        Matrix4X4 square = new Matrix4X4();
+        square.set(this);
+        destination.identity();
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                destination.multiplyInto(square, destination);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                square.multiplyInto(square, square);
+            }
+        } // while
+    } // powerInto( long, Matrix4X4 )
+
     /**
      * Multiplies the matrix with a vector.
      *
@@ -120,18 +170,31 @@ public final class Matrix4X4 {
      * @return The product vector.
      */
     public Vector multiply(Vector vector) {
-        double[] vectorValues = new double[4];
-        for (int i = 0; i < 4; i++) {
-            double sum = 0.0;
-            for (int k = 0; k < 4; k++) {
-                sum += this.get(i, k) * vector.get(k);
-            } // for k
-            vectorValues[i] = sum;
-        } // for i
-        return new Vector(vectorValues[0], vectorValues[1], vectorValues[2],
-                vectorValues[3]);
+        Vector product = new Vector();
+        this.transformInto(vector, product);
+        return product;
     } // multiply( Vector )
 
+    /**
+     * Multiplies the matrix with a vector and writes the product into a
+     * destination vector, without allocating. The destination may be the
+     * source vector.
+     *
+     * @param source The vector to multiply with
+     * @param destination The vector that receives the product.
+     */
+    public void transformInto(Vector source, Vector destination) {
+        double[] e = this.elements;
+        double u0 = source.x();
+        double u1 = source.y();
+        double u2 = source.z();
+        double u3 = source.w();
+        destination.set(e[0] * u0 + e[1] * u1 + e[2] * u2 + e[3] * u3,
+                e[4] * u0 + e[5] * u1 + e[6] * u2 + e[7] * u3,
+                e[8] * u0 + e[9] * u1 + e[10] * u2 + e[11] * u3,
+                e[12] * u0 + e[13] * u1 + e[14] * u2 + e[15] * u3);
+    } // transformInto( Vector, Vector )
+
     public static void main(String[] args) {
         Matrix4X4 identity = new Matrix4X4();
         System.out.println("identity = " + identity);
@@ -157,11 +220,13 @@ public final class Matrix4X4 {
      * @param angle The angle to rotate by.
      */
     public void rotationZ(double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
         this.identity();
-        this.set(0, 0, Math.cos(angle));
-        this.set(0, 1, -Math.sin(angle));
-        this.set(1, 0, Math.sin(angle));
-        this.set(1, 1, Math.cos(angle));
+        this.elements[0] = cos;
+        this.elements[1] = -sin;
+        this.elements[4] = sin;
+        this.elements[5] = cos;
     } // rotationZ( double )
 
     /**
@@ -170,11 +235,13 @@ public final class Matrix4X4 {
      * @param angle The angle to rotate by.
      */
     public void rotationX(double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
         this.identity();
-        this.set(1, 1, Math.cos(angle));
-        this.set(1, 2, -Math.sin(angle));
-        this.set(2, 1, Math.sin(angle));
-        this.set(2, 2, Math.cos(angle));
+        this.elements[5] = cos;
+        this.elements[6] = -sin;
+        this.elements[9] = sin;
+        this.elements[10] = cos;
     }
 
     /**
@@ -183,11 +250,13 @@ public final class Matrix4X4 {
      * @param angle The angle to rotate by.
      */
     public void rotationY(double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
         this.identity();
-        this.set(0, 0, Math.cos(angle));
-        this.set(0, 2, Math.sin(angle));
-        this.set(2, 0, -Math.sin(angle));
-        this.set(2, 2, Math.cos(angle));
+        this.elements[0] = cos;
+        this.elements[2] = sin;
+        this.elements[8] = -sin;
+        this.elements[10] = cos;
     }
 
     /**
@@ -199,9 +268,9 @@ public final class Matrix4X4 {
      */
     public void scale(double factorX, double factorY, double factorZ) {
         this.identity();
-        this.set(0, 0, factorX);
-        this.set(1, 1, factorY);
-        this.set(2, 2, factorZ);
+        this.elements[0] = factorX;
+        this.elements[5] = factorY;
+        this.elements[10] = factorZ;
     }
 
     /**
@@ -214,9 +283,9 @@ public final class Matrix4X4 {
     public void translate(double translateX, double translateY,
             double translateZ) {
         this.identity();
-        this.set(0, 3, translateX);
-        this.set(1, 3, translateY);
-        this.set(2, 3, translateZ);
+        this.elements[3] = translateX;
+        this.elements[7] = translateY;
+        this.elements[11] = translateZ;
     }
 
 }//class
@@ -8,10 +8,18 @@ package swing3d;
 import java.util.ArrayList;
 
 /**
+ * Merge sorting, both for lists of Doubles and, through argsort, for primitive
+ * keys. argsort is what the render loop uses: it sorts indices rather than
+ * values, so the caller never has to match sorted values back to their
+ * positions.
  *
  * @author marcus
  */
 public class MergeSort {
+
+    // Runs shorter than this are sorted by insertion before merging.
+    private static final int INSERTION_RUN = 16;
+
         /**
      * This is a helper method that handles the merging of two sorted sublists
      * in mergeSort. It loops from i to max, each time choosing the value at
@@ -31,7 +39,7 @@ public class MergeSort {
      */
     public static ArrayList<Double> merge(ArrayList<Double> unmergedList,
             int min, int mid, int max) {
-        ArrayList<Double> mergedList = (ArrayList<Double>) unmergedList.clone();
+        ArrayList<Double> mergedList = new ArrayList<>(unmergedList);
         int j = min;
         int k = mid;
         int i = min;
@@ -62,28 +70,133 @@ public class MergeSort {
     } //merge
 
     /**
-     * This method performs a merge sort on an ArrayList of Doubles, using
-     * recursion.
+     * This method performs a merge sort on an ArrayList of Doubles. The values
+     * from min to max are copied into a primitive array and sorted with
+     * argsort, so only one new list is made however long the input is.
      *
      * @param unsortedList the ArrayList of Doubles to be sorted.
      * @param min the minimum index to sort from. At the top level, this will
-     * usually be index 0. For recursion within the method, it could take any
-     * index in the unsorted list.
+     * usually be index 0.
      * @param max the maximum index to sort to. At the top level, this will
-     * usually the size of the ArrayList. For recursion within the method, it
-     * could take any index in the unsorted list.
+     * usually the size of the ArrayList.
      * @return a sorted ArrayList (for indices min to max).
      */
     public static ArrayList<Double> mergeSort(ArrayList<Double> unsortedList,
             int min, int max) {
-        if (min == max - 1) {
-            return unsortedList;
-        }
-        int mid = (max + min) / 2;
-        ArrayList<Double> sortedList = mergeSort(unsortedList, min, mid);
-        sortedList = mergeSort(sortedList, mid, max);
-        sortedList = merge(sortedList, min, mid, max);
+        int count = max - min;
+        double[] keys = new double[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = unsortedList.get(min + i);
+        } // for
+        int[] order = new int[count];
+        argsort(keys, count, order, new int[count], false);
+
+        ArrayList<Double> sortedList = new ArrayList<>(unsortedList);
+        for (int i = 0; i < count; i++) {
+            sortedList.set(min + i, keys[order[i]]);
+        } // for
         return sortedList;
-    }
-    
+    } // mergeSort( ArrayList<Double>, int, int )
+
+    /**
+     * Fills outOrder with the indices of keys in ascending order of key. This
+     * allocates a scratch array; use the five parameter form in loops.
+     *
+     * @param keys The keys to sort. They are not changed.
+     * @param outOrder Receives the sorted indices. It must be at least as long
+     * as keys.
+     */
+    public static void argsort(double[] keys, int[] outOrder) {
+        argsort(keys, keys.length, outOrder, new int[keys.length], false);
+    } // argsort( double [], int [] )
+
+    /**
+     * Fills the first count elements of outOrder with the indices 0 to
+     * count - 1, ordered by key. The sort is a stable merge sort, so equal keys
+     * keep their original order, and it does not allocate.
+     *
+     * @param keys The keys to sort. They are not changed.
+     * @param count The number of keys to sort, starting at index 0.
+     * @param outOrder Receives the sorted indices. It must hold count values.
+     * @param scratch Working space. It must hold count values.
+     * @param descending True to sort from the largest key to the smallest.
+     */
+    public static void argsort(double[] keys, int count, int[] outOrder,
+            int[] scratch, boolean descending) {
+        for (int i = 0; i < count; i++) {
+            outOrder[i] = i;
+        } // for
+
+        for (int start = 0; start < count; start += INSERTION_RUN) {
+            insertionSort(keys, outOrder, start,
+                    Math.min(start + INSERTION_RUN, count), descending);
+        } // for
+
+        int[] from = outOrder;
+        int[] to = scratch;
+        for (int width = INSERTION_RUN; width < count; width *= 2) {
+            for (int min = 0; min < count; min += 2 * width) {
+                int mid = Math.min(min + width, count);
+                int max = Math.min(min + 2 * width, count);
+                mergeIndices(keys, from, to, min, mid, max, descending);
+            } // for
+            int[] swap = from;
+            from = to;
+            to = swap;
+        } // for
+
+        if (from != outOrder) {
+            System.arraycopy(from, 0, outOrder, 0, count);
+        } // if
+    } // argsort( double [], int, int [], int [], boolean )
+
+    /**
+     * Returns true when key a must come after key b.
+     */
+    private static boolean after(double a, double b, boolean descending) {
+        return descending ? a < b : a > b;
+    } // after( double, double, boolean )
+
+    /**
+     * Sorts order[min] to order[max - 1] by key, by insertion.
+     */
+    private static void insertionSort(double[] keys, int[] order, int min,
+            int max, boolean descending) {
+        for (int i = min + 1; i < max; i++) {
+            int index = order[i];
+            double key = keys[index];
+            int j = i - 1;
+            while (j >= min && after(keys[order[j]], key, descending)) {
+                order[j + 1] = order[j];
+                j--;
+            } // while
+            order[j + 1] = index;
+        } // for
+    } // insertionSort( double [], int [], int, int, boolean )
+
+    /**
+     * Merges the sorted runs from[min..mid) and from[mid..max) into to. When
+     * two keys are equal the one from the first run is taken, which keeps the
+     * sort stable.
+     */
+    private static void mergeIndices(double[] keys, int[] from, int[] to,
+            int min, int mid, int max, boolean descending) {
+        int j = min;
+        int k = mid;
+        int i = min;
+        while (j < mid && k < max) {
+            if (after(keys[from[j]], keys[from[k]], descending)) {
+                to[i++] = from[k++];
+            } else {
+                to[i++] = from[j++];
+            } //if-else
+        } //while
+        while (j < mid) {
+            to[i++] = from[j++];
+        } //while
+        while (k < max) {
+            to[i++] = from[k++];
+        } //while
+    } // mergeIndices( double [], int [], int [], int, int, int, boolean )
+
 }
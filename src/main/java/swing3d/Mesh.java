@@ -0,0 +1,1016 @@
+package swing3d;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An indexed polygon mesh: a shared vertex buffer and a face index buffer.
+ *
+ * The vertices are kept in four parallel primitive arrays, one per homogeneous
+ * component, so transform moves each vertex exactly once however many faces
+ * share it. The faces are a single array of vertex indices: face f uses the
+ * indices from faceOffsets[f] up to, but not including, faceOffsets[f + 1], so
+ * faces can have any number of corners and any topology can be held. Copies of
+ * a mesh share the face arrays, which are never changed, and have their own
+ * vertices.
+ *
+ * Faces are wound so that the cross product of (third - second) and
+ * (first - second) of their corners points out of the mesh. The face normals
+ * are cached in the same way as the vertices, one slot per face, with the
+ * centre of each face beside them; transform marks the cache dirty and it is
+ * rebuilt, all at once, the next time a normal is read. Vertex normals, for
+ * smooth shading, are worked out from the face normals in the same lazy way.
+ * lightFaces and lightVertices hand either set to a Lighting to be lit in one
+ * batch.
+ *
+ * A mesh also keeps an axis-aligned bounding box and a bounding sphere.
+ * transform refits both in the same pass that moves the vertices: the box
+ * exactly, and the sphere by moving its centre with the vertices and taking
+ * the furthest vertex from it as the radius.
+ *
+ * Meshes with at least BULK_VERTICES vertices are moved by the BulkTransform
+ * that BulkTransform.detect picks, which may work on several vertices at once,
+ * and have their bounds refitted in a second pass. Smaller meshes stay on the
+ * single-pass loop, where setting up a bulk transform would cost more than it
+ * saves.
+ *
+ * @author marcus
+ */
+public class Mesh {
+
+    /**
+     * The fewest vertices a mesh must have to be moved by the bulk transform.
+     */
+    public static final int BULK_VERTICES = 256;
+
+    private static final BulkTransform BULK = BulkTransform.detect();
+
+    private final int vertexCount;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final double[] w;
+    private final int[] faceOffsets;
+    private final int[] faceIndices;
+    private final int maxFaceSize;
+    private final double[] nx;
+    private final double[] ny;
+    private final double[] nz;
+    private final double[] centreX;
+    private final double[] centreY;
+    private final double[] centreZ;
+    private boolean normalsDirty = true;
+    private double[] vertexNormalX;
+    private double[] vertexNormalY;
+    private double[] vertexNormalZ;
+    private boolean vertexNormalsDirty = true;
+    private boolean boundsDirty = true;
+    private double minX;
+    private double minY;
+    private double minZ;
+    private double maxX;
+    private double maxY;
+    private double maxZ;
+    private double sphereX;
+    private double sphereY;
+    private double sphereZ;
+    private double sphereRadius;
+    private final double[] faceDepths;
+    private final int[] sortOrder;
+    private final int[] sortScratch;
+
+    /**
+     * Creates a mesh over the given buffers, with every vertex's homogeneous
+     * component set to 1. The arrays are used as they are, not copied.
+     *
+     * @param x The x components of the vertices.
+     * @param y The y components of the vertices.
+     * @param z The z components of the vertices.
+     * @param faceOffsets Where each face starts in faceIndices, with one more
+     * entry at the end holding the total number of indices.
+     * @param faceIndices The vertex indices of every face, one after another.
+     * @throws IllegalArgumentException If a face has fewer than 3 corners.
+     */
+    public Mesh(double[] x, double[] y, double[] z, int[] faceOffsets,
+            int[] faceIndices) {
+        this(x.length, x, y, z, faceOffsets, faceIndices);
+    } // Mesh( double [], double [], double [], int [], int [] )
+
+    /**
+     * Creates a mesh whose vertices are all at the origin, for a subclass to
+     * place with setVertex.
+     *
+     * @param vertexCount The number of vertices.
+     * @param faceOffsets Where each face starts in faceIndices, with one more
+     * entry at the end.
+     * @param faceIndices The vertex indices of every face.
+     * @throws IllegalArgumentException If a face has fewer than 3 corners.
+     */
+    protected Mesh(int vertexCount, int[] faceOffsets, int[] faceIndices) {
+        this(vertexCount, new double[vertexCount], new double[vertexCount],
+                new double[vertexCount], faceOffsets, faceIndices);
+    } // Mesh( int, int [], int [] )
+
+    private Mesh(int vertexCount, double[] x, double[] y, double[] z,
+            int[] faceOffsets, int[] faceIndices) {
+        this.vertexCount = vertexCount;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = new double[vertexCount];
+        Arrays.fill(this.w, 1.0);
+        this.faceOffsets = faceOffsets;
+        this.faceIndices = faceIndices;
+        int faceCount = faceOffsets.length - 1;
+        int largest = 0;
+        for (int f = 0; f < faceCount; f++) {
+            int size = faceOffsets[f + 1] - faceOffsets[f];
+            if (size < 3) {
+                throw new IllegalArgumentException("face " + f + " has "
+                        + size + " corners; at least 3 are needed");
+            }
+            largest = Math.max(largest, size);
+        }//for
+        this.maxFaceSize = largest;
+        this.nx = new double[faceCount];
+        this.ny = new double[faceCount];
+        this.nz = new double[faceCount];
+        this.centreX = new double[faceCount];
+        this.centreY = new double[faceCount];
+        this.centreZ = new double[faceCount];
+        this.faceDepths = new double[faceCount];
+        this.sortOrder = new int[faceCount];
+        this.sortScratch = new int[faceCount];
+    } // Mesh( int, double [], double [], double [], int [], int [] )
+
+    /**
+     * Creates a copy of another mesh, with its own vertex arrays and sharing
+     * its faces.
+     *
+     * @param other The mesh to copy.
+     */
+    public Mesh(Mesh other) {
+        this.vertexCount = other.vertexCount;
+        this.x = other.x.clone();
+        this.y = other.y.clone();
+        this.z = other.z.clone();
+        this.w = other.w.clone();
+        this.faceOffsets = other.faceOffsets;
+        this.faceIndices = other.faceIndices;
+        this.maxFaceSize = other.maxFaceSize;
+        copyBounds(other);
+        int faceCount = this.faceOffsets.length - 1;
+        this.nx = new double[faceCount];
+        this.ny = new double[faceCount];
+        this.nz = new double[faceCount];
+        this.centreX = new double[faceCount];
+        this.centreY = new double[faceCount];
+        this.centreZ = new double[faceCount];
+        this.faceDepths = new double[faceCount];
+        this.sortOrder = new int[faceCount];
+        this.sortScratch = new int[faceCount];
+    } // Mesh( Mesh )
+
+    /**
+     * Returns a copy of this mesh, of the same class, as the copy constructor
+     * would make it.
+     *
+     * @return The copy.
+     */
+    public Mesh copy() {
+        return new Mesh(this);
+    } // copy()
+
+    /**
+     * Copies the vertices of another mesh with the same faces into this one,
+     * without allocating.
+     *
+     * @param other The mesh to copy from.
+     */
+    public void copyFrom(Mesh other) {
+        System.arraycopy(other.x, 0, this.x, 0, vertexCount);
+        System.arraycopy(other.y, 0, this.y, 0, vertexCount);
+        System.arraycopy(other.z, 0, this.z, 0, vertexCount);
+        System.arraycopy(other.w, 0, this.w, 0, vertexCount);
+        this.normalsDirty = true;
+        copyBounds(other);
+    } // copyFrom( Mesh )
+
+    /**
+     * Copies the bounds of another mesh.
+     */
+    private void copyBounds(Mesh other) {
+        this.boundsDirty = other.boundsDirty;
+        this.minX = other.minX;
+        this.minY = other.minY;
+        this.minZ = other.minZ;
+        this.maxX = other.maxX;
+        this.maxY = other.maxY;
+        this.maxZ = other.maxZ;
+        this.sphereX = other.sphereX;
+        this.sphereY = other.sphereY;
+        this.sphereZ = other.sphereZ;
+        this.sphereRadius = other.sphereRadius;
+    } // copyBounds( Mesh )
+
+    /**
+     * Sets a vertex to a point, with the homogeneous component set to 1.
+     *
+     * @param i The index of the vertex.
+     * @param vx The x component.
+     * @param vy The y component.
+     * @param vz The z component.
+     */
+    protected void setVertex(int i, double vx, double vy, double vz) {
+        this.x[i] = vx;
+        this.y[i] = vy;
+        this.z[i] = vz;
+        this.w[i] = 1.0;
+        this.normalsDirty = true;
+        this.boundsDirty = true;
+    } // setVertex( int, double, double, double )
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return The number of vertices.
+     */
+    public int getVertexCount() {
+        return this.vertexCount;
+    } // getVertexCount()
+
+    /**
+     * Returns the x component of a vertex.
+     *
+     * @param i The index of the vertex.
+     * @return The x component.
+     */
+    public double getX(int i) {
+        return this.x[i];
+    } // getX( int )
+
+    /**
+     * Returns the y component of a vertex.
+     *
+     * @param i The index of the vertex.
+     * @return The y component.
+     */
+    public double getY(int i) {
+        return this.y[i];
+    } // getY( int )
+
+    /**
+     * Returns the z component of a vertex.
+     *
+     * @param i The index of the vertex.
+     * @return The z component.
+     */
+    public double getZ(int i) {
+        return this.z[i];
+    } // getZ( int )
+
+    /**
+     * Returns a copy of a vertex as a Vector. Changing the returned Vector does
+     * not change the mesh.
+     *
+     * @param i The index of the vertex.
+     * @return A copy of the vertex.
+     */
+    public Vector getVertex(int i) {
+        return new Vector(this.x[i], this.y[i], this.z[i], this.w[i]);
+    } // getVertex( int )
+
+    /**
+     * Returns a read-only view of the vertices as Vectors. Each element is
+     * copied out of the primitive arrays when it is read.
+     *
+     * @return The vertices as a list of Vectors.
+     */
+    public List<Vector> getVertices() {
+        return new AbstractList<Vector>() {
+            @Override
+            public Vector get(int i) {
+                return getVertex(i);
+            }
+
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+        };
+    } // getVertices()
+
+    /**
+     * Returns the number of faces.
+     *
+     * @return The number of faces.
+     */
+    public int getFaceCount() {
+        return this.faceOffsets.length - 1;
+    } // getFaceCount()
+
+    /**
+     * Returns the number of corners of a face.
+     *
+     * @param face The face.
+     * @return The number of corners.
+     */
+    public int getFaceSize(int face) {
+        return this.faceOffsets[face + 1] - this.faceOffsets[face];
+    } // getFaceSize( int )
+
+    /**
+     * Returns the number of corners of the largest face, which is how long an
+     * array passed to getFaceVertices needs to be.
+     *
+     * @return The largest face size.
+     */
+    public int getMaxFaceSize() {
+        return this.maxFaceSize;
+    } // getMaxFaceSize()
+
+    /**
+     * Writes the vertex indices of a face into an array, in winding order.
+     *
+     * @param face The face.
+     * @param out The array to fill. It must hold getFaceSize(face) indices.
+     * @return The number of indices written.
+     */
+    public int getFaceVertices(int face, int[] out) {
+        int start = this.faceOffsets[face];
+        int count = this.faceOffsets[face + 1] - start;
+        System.arraycopy(this.faceIndices, start, out, 0, count);
+        return count;
+    } // getFaceVertices( int, int [] )
+
+    /**
+     * Multiplies every vertex by a matrix, in place. The matrix elements are
+     * read once and the vertex arrays are updated without allocating.
+     *
+     * @param m The matrix to transform by.
+     */
+    public void transform(Matrix4X4 m) {
+        double m00 = m.get(0, 0), m01 = m.get(0, 1), m02 = m.get(0, 2), m03 = m.get(0, 3);
+        double m10 = m.get(1, 0), m11 = m.get(1, 1), m12 = m.get(1, 2), m13 = m.get(1, 3);
+        double m20 = m.get(2, 0), m21 = m.get(2, 1), m22 = m.get(2, 2), m23 = m.get(2, 3);
+        double m30 = m.get(3, 0), m31 = m.get(3, 1), m32 = m.get(3, 2), m33 = m.get(3, 3);
+        if (vertexCount >= BULK_VERTICES
+                && m30 == 0.0 && m31 == 0.0 && m32 == 0.0 && m33 == 1.0) {
+            double[] rows = {m00, m01, m02, m03, m10, m11, m12, m13,
+                m20, m21, m22, m23};
+            BULK.transform(rows, 0, this.x, this.y, this.z, this.w,
+                    this.x, this.y, this.z, this.w, vertexCount);
+            this.normalsDirty = true;
+            if (this.boundsDirty) {
+                computeBounds();
+            } else {
+                refitBounds(m00 * sphereX + m01 * sphereY + m02 * sphereZ + m03,
+                        m10 * sphereX + m11 * sphereY + m12 * sphereZ + m13,
+                        m20 * sphereX + m21 * sphereY + m22 * sphereZ + m23);
+            }
+            return;
+        } // if
+        double[] xs = this.x;
+        double[] ys = this.y;
+        double[] zs = this.z;
+        double[] ws = this.w;
+        // The sphere's centre moves with the vertices; the box and the
+        // radius are refitted as they go.
+        double sx = m00 * sphereX + m01 * sphereY + m02 * sphereZ + m03;
+        double sy = m10 * sphereX + m11 * sphereY + m12 * sphereZ + m13;
+        double sz = m20 * sphereX + m21 * sphereY + m22 * sphereZ + m23;
+        double lowX = Double.POSITIVE_INFINITY, highX = Double.NEGATIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+        double lowZ = Double.POSITIVE_INFINITY, highZ = Double.NEGATIVE_INFINITY;
+        double radius2 = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            double vx = xs[i];
+            double vy = ys[i];
+            double vz = zs[i];
+            double vw = ws[i];
+            double tx = m00 * vx + m01 * vy + m02 * vz + m03 * vw;
+            double ty = m10 * vx + m11 * vy + m12 * vz + m13 * vw;
+            double tz = m20 * vx + m21 * vy + m22 * vz + m23 * vw;
+            xs[i] = tx;
+            ys[i] = ty;
+            zs[i] = tz;
+            ws[i] = m30 * vx + m31 * vy + m32 * vz + m33 * vw;
+            lowX = Math.min(lowX, tx);
+            highX = Math.max(highX, tx);
+            lowY = Math.min(lowY, ty);
+            highY = Math.max(highY, ty);
+            lowZ = Math.min(lowZ, tz);
+            highZ = Math.max(highZ, tz);
+            double dx = tx - sx;
+            double dy = ty - sy;
+            double dz = tz - sz;
+            radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+        } // for
+        this.normalsDirty = true;
+        if (this.boundsDirty) {
+            //the sphere had no centre to move, so fit it from scratch
+            computeBounds();
+        } else {
+            this.minX = lowX;
+            this.minY = lowY;
+            this.minZ = lowZ;
+            this.maxX = highX;
+            this.maxY = highY;
+            this.maxZ = highZ;
+            this.sphereX = sx;
+            this.sphereY = sy;
+            this.sphereZ = sz;
+            this.sphereRadius = Math.sqrt(radius2);
+        }
+    } // transform( Matrix4X4 )
+
+    /**
+     * Sets every vertex to the matching vertex of another mesh multiplied by
+     * an affine matrix, in one pass and without allocating. The matrix is
+     * packed as its top three rows, twelve doubles, with the bottom row taken
+     * to be 0 0 0 1.
+     *
+     * @param rest The mesh to read the vertices from. It must have as many
+     * vertices as this one.
+     * @param m The packed matrices.
+     * @param offset Where the matrix starts in m.
+     */
+    public void transformFrom(Mesh rest, double[] m, int offset) {
+        double m00 = m[offset], m01 = m[offset + 1], m02 = m[offset + 2], m03 = m[offset + 3];
+        double m10 = m[offset + 4], m11 = m[offset + 5], m12 = m[offset + 6], m13 = m[offset + 7];
+        double m20 = m[offset + 8], m21 = m[offset + 9], m22 = m[offset + 10], m23 = m[offset + 11];
+        double[] xs = rest.x;
+        double[] ys = rest.y;
+        double[] zs = rest.z;
+        double[] ws = rest.w;
+        if (vertexCount >= BULK_VERTICES) {
+            BULK.transform(m, offset, xs, ys, zs, ws,
+                    this.x, this.y, this.z, this.w, vertexCount);
+        } else {
+            for (int i = 0; i < vertexCount; i++) {
+                double vx = xs[i];
+                double vy = ys[i];
+                double vz = zs[i];
+                double vw = ws[i];
+                this.x[i] = m00 * vx + m01 * vy + m02 * vz + m03 * vw;
+                this.y[i] = m10 * vx + m11 * vy + m12 * vz + m13 * vw;
+                this.z[i] = m20 * vx + m21 * vy + m22 * vz + m23 * vw;
+                this.w[i] = vw;
+            } // for
+        }
+        this.normalsDirty = true;
+        this.boundsDirty = true;
+    } // transformFrom( Mesh, double [], int )
+
+    /**
+     * Fits the box to the vertices and the sphere's radius to a centre that
+     * has already been moved, as transform does in its single pass.
+     */
+    private void refitBounds(double sx, double sy, double sz) {
+        double lowX = Double.POSITIVE_INFINITY, highX = Double.NEGATIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+        double lowZ = Double.POSITIVE_INFINITY, highZ = Double.NEGATIVE_INFINITY;
+        double radius2 = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            double tx = this.x[i];
+            double ty = this.y[i];
+            double tz = this.z[i];
+            lowX = Math.min(lowX, tx);
+            highX = Math.max(highX, tx);
+            lowY = Math.min(lowY, ty);
+            highY = Math.max(highY, ty);
+            lowZ = Math.min(lowZ, tz);
+            highZ = Math.max(highZ, tz);
+            double dx = tx - sx;
+            double dy = ty - sy;
+            double dz = tz - sz;
+            radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+        } // for
+        this.minX = lowX;
+        this.minY = lowY;
+        this.minZ = lowZ;
+        this.maxX = highX;
+        this.maxY = highY;
+        this.maxZ = highZ;
+        this.sphereX = sx;
+        this.sphereY = sy;
+        this.sphereZ = sz;
+        this.sphereRadius = Math.sqrt(radius2);
+    } // refitBounds( double, double, double )
+
+    /**
+     * Fits the box and the sphere to the vertices from scratch. The sphere is
+     * centred on the middle of the box.
+     */
+    private void computeBounds() {
+        double lowX = Double.POSITIVE_INFINITY, highX = Double.NEGATIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+        double lowZ = Double.POSITIVE_INFINITY, highZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertexCount; i++) {
+            lowX = Math.min(lowX, this.x[i]);
+            highX = Math.max(highX, this.x[i]);
+            lowY = Math.min(lowY, this.y[i]);
+            highY = Math.max(highY, this.y[i]);
+            lowZ = Math.min(lowZ, this.z[i]);
+            highZ = Math.max(highZ, this.z[i]);
+        } // for
+        double sx = (lowX + highX) / 2;
+        double sy = (lowY + highY) / 2;
+        double sz = (lowZ + highZ) / 2;
+        double radius2 = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            double dx = this.x[i] - sx;
+            double dy = this.y[i] - sy;
+            double dz = this.z[i] - sz;
+            radius2 = Math.max(radius2, dx * dx + dy * dy + dz * dz);
+        } // for
+        this.minX = lowX;
+        this.minY = lowY;
+        this.minZ = lowZ;
+        this.maxX = highX;
+        this.maxY = highY;
+        this.maxZ = highZ;
+        this.sphereX = sx;
+        this.sphereY = sy;
+        this.sphereZ = sz;
+        this.sphereRadius = Math.sqrt(radius2);
+        this.boundsDirty = false;
+    } // computeBounds()
+
+    /**
+     * Fits the bounds if the vertices have been set since they were last
+     * fitted.
+     */
+    private void updateBounds() {
+        if (this.boundsDirty) {
+            computeBounds();
+        }
+    } // updateBounds()
+
+    /**
+     * Returns the smallest x of the bounding box.
+     *
+     * @return The smallest x of any vertex.
+     */
+    public double getMinX() {
+        updateBounds();
+        return this.minX;
+    } // getMinX()
+
+    /**
+     * Returns the smallest y of the bounding box.
+     *
+     * @return The smallest y of any vertex.
+     */
+    public double getMinY() {
+        updateBounds();
+        return this.minY;
+    } // getMinY()
+
+    /**
+     * Returns the smallest z of the bounding box.
+     *
+     * @return The smallest z of any vertex.
+     */
+    public double getMinZ() {
+        updateBounds();
+        return this.minZ;
+    } // getMinZ()
+
+    /**
+     * Returns the largest x of the bounding box.
+     *
+     * @return The largest x of any vertex.
+     */
+    public double getMaxX() {
+        updateBounds();
+        return this.maxX;
+    } // getMaxX()
+
+    /**
+     * Returns the largest y of the bounding box.
+     *
+     * @return The largest y of any vertex.
+     */
+    public double getMaxY() {
+        updateBounds();
+        return this.maxY;
+    } // getMaxY()
+
+    /**
+     * Returns the largest z of the bounding box.
+     *
+     * @return The largest z of any vertex.
+     */
+    public double getMaxZ() {
+        updateBounds();
+        return this.maxZ;
+    } // getMaxZ()
+
+    /**
+     * Returns the x of the bounding sphere's centre.
+     *
+     * @return The centre x.
+     */
+    public double getSphereX() {
+        updateBounds();
+        return this.sphereX;
+    } // getSphereX()
+
+    /**
+     * Returns the y of the bounding sphere's centre.
+     *
+     * @return The centre y.
+     */
+    public double getSphereY() {
+        updateBounds();
+        return this.sphereY;
+    } // getSphereY()
+
+    /**
+     * Returns the z of the bounding sphere's centre.
+     *
+     * @return The centre z.
+     */
+    public double getSphereZ() {
+        updateBounds();
+        return this.sphereZ;
+    } // getSphereZ()
+
+    /**
+     * Returns the radius of the bounding sphere. No vertex is further than
+     * this from the centre.
+     *
+     * @return The radius.
+     */
+    public double getSphereRadius() {
+        updateBounds();
+        return this.sphereRadius;
+    } // getSphereRadius()
+
+    /**
+     * Returns a face as a closed path through the x and y components of its
+     * corners.
+     *
+     * @param face The face.
+     * @return The outline of the face.
+     */
+    public Shape getFaceShape(int face) {
+        GeneralPath path = new GeneralPath();
+        int start = this.faceOffsets[face];
+        int end = this.faceOffsets[face + 1];
+        int v = this.faceIndices[start];
+        path.moveTo(this.x[v], this.y[v]);
+        for (int k = start + 1; k < end; k++) {
+            v = this.faceIndices[k];
+            path.lineTo(this.x[v], this.y[v]);
+        }//for
+        path.closePath();
+        return path;
+    } // getFaceShape( int )
+
+    /**
+     * Stores the normalised cross product of (c - b) and (a - b), where a, b
+     * and c are the first three corners of a face, in the face's slot of the
+     * normal cache, along with the mean of all its corners. The normal is a
+     * direction, so its homogeneous component is 0 and only x, y and z are
+     * normalised. If those three corners are in a line the normal is left at
+     * 0, so the face is unlit and adds nothing to its vertices' normals.
+     *
+     * @param face The face.
+     */
+    private void computeNormal(int face) {
+        int start = this.faceOffsets[face];
+        int end = this.faceOffsets[face + 1];
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumZ = 0.0;
+        for (int k = start; k < end; k++) {
+            int v = this.faceIndices[k];
+            sumX += this.x[v];
+            sumY += this.y[v];
+            sumZ += this.z[v];
+        }//for
+        this.centreX[face] = sumX / (end - start);
+        this.centreY[face] = sumY / (end - start);
+        this.centreZ[face] = sumZ / (end - start);
+
+        int a = this.faceIndices[start];
+        int b = this.faceIndices[start + 1];
+        int c = this.faceIndices[start + 2];
+        double ux = this.x[c] - this.x[b];
+        double uy = this.y[c] - this.y[b];
+        double uz = this.z[c] - this.z[b];
+        double vx = this.x[a] - this.x[b];
+        double vy = this.y[a] - this.y[b];
+        double vz = this.z[a] - this.z[b];
+        double cx = uy * vz - uz * vy;
+        double cy = uz * vx - ux * vz;
+        double cz = ux * vy - uy * vx;
+        double magnitude = Math.sqrt(cx * cx + cy * cy + cz * cz);
+        if (magnitude == 0.0) {
+            //the corners are in a line; give no normal rather than NaN
+            this.nx[face] = 0.0;
+            this.ny[face] = 0.0;
+            this.nz[face] = 0.0;
+            return;
+        }
+        this.nx[face] = cx / magnitude;
+        this.ny[face] = cy / magnitude;
+        this.nz[face] = cz / magnitude;
+    } // computeNormal( int )
+
+    /**
+     * Rebuilds the normal cache if the vertices have moved since it was last
+     * built. The normal getters call this themselves; renderers call it up
+     * front so the work can be timed on its own.
+     */
+    public void updateNormals() {
+        if (!this.normalsDirty) {
+            return;
+        }
+        int faceCount = getFaceCount();
+        for (int f = 0; f < faceCount; f++) {
+            computeNormal(f);
+        }//for
+        this.normalsDirty = false;
+        this.vertexNormalsDirty = true;
+    } // updateNormals()
+
+    /**
+     * Rebuilds the vertex normals if the vertices have moved since they were
+     * last built. A vertex normal is the mean of the normals of the faces
+     * that use the vertex, normalised, so shading interpolated between
+     * vertices runs smoothly across the edges between faces. The arrays are
+     * only made the first time they are needed.
+     */
+    public void updateVertexNormals() {
+        updateNormals();
+        if (!this.vertexNormalsDirty) {
+            return;
+        }
+        if (this.vertexNormalX == null) {
+            this.vertexNormalX = new double[vertexCount];
+            this.vertexNormalY = new double[vertexCount];
+            this.vertexNormalZ = new double[vertexCount];
+        }
+        double[] sumX = this.vertexNormalX;
+        double[] sumY = this.vertexNormalY;
+        double[] sumZ = this.vertexNormalZ;
+        Arrays.fill(sumX, 0.0);
+        Arrays.fill(sumY, 0.0);
+        Arrays.fill(sumZ, 0.0);
+        int faceCount = getFaceCount();
+        for (int f = 0; f < faceCount; f++) {
+            for (int k = this.faceOffsets[f]; k < this.faceOffsets[f + 1];
+                    k++) {
+                int v = this.faceIndices[k];
+                sumX[v] += this.nx[f];
+                sumY[v] += this.ny[f];
+                sumZ[v] += this.nz[f];
+            }//for
+        }//for
+        for (int v = 0; v < vertexCount; v++) {
+            double magnitude = Math.sqrt(sumX[v] * sumX[v]
+                    + sumY[v] * sumY[v] + sumZ[v] * sumZ[v]);
+            if (magnitude > 0.0) {
+                sumX[v] /= magnitude;
+                sumY[v] /= magnitude;
+                sumZ[v] /= magnitude;
+            }
+        }//for
+        this.vertexNormalsDirty = false;
+    } // updateVertexNormals()
+
+    /**
+     * Works out the light intensity on every face, at its centre, in one
+     * batch.
+     *
+     * @param lighting The lights.
+     * @param intensities Receives one intensity per face. It must hold
+     * getFaceCount() of them.
+     */
+    public void lightFaces(Lighting lighting, float[] intensities) {
+        updateNormals();
+        lighting.evaluate(this.nx, this.ny, this.nz, this.centreX,
+                this.centreY, this.centreZ, getFaceCount(), intensities);
+    } // lightFaces( Lighting, float [] )
+
+    /**
+     * Works out the light intensity at every vertex, from the vertex
+     * normals, in one batch.
+     *
+     * @param lighting The lights.
+     * @param intensities Receives one intensity per vertex. It must hold
+     * getVertexCount() of them.
+     */
+    public void lightVertices(Lighting lighting, float[] intensities) {
+        updateVertexNormals();
+        lighting.evaluate(this.vertexNormalX, this.vertexNormalY,
+                this.vertexNormalZ, this.x, this.y, this.z, vertexCount,
+                intensities);
+    } // lightVertices( Lighting, float [] )
+
+    /**
+     * Returns the light intensity on one face, at its centre.
+     *
+     * @param lighting The lights.
+     * @param face The face.
+     * @return The intensity.
+     */
+    public double lightFace(Lighting lighting, int face) {
+        updateNormals();
+        return lighting.intensity(this.nx[face], this.ny[face],
+                this.nz[face], this.centreX[face], this.centreY[face],
+                this.centreZ[face]);
+    } // lightFace( Lighting, int )
+
+    /**
+     * Writes the centre of a face, the mean of its corners, into a vector,
+     * without allocating.
+     *
+     * @param face The face.
+     * @param destination The vector that receives the centre.
+     */
+    public void getFaceCentre(int face, Vector destination) {
+        updateNormals();
+        destination.set(this.centreX[face], this.centreY[face],
+                this.centreZ[face], 1.0);
+    } // getFaceCentre( int, Vector )
+
+    /**
+     * Returns the normal of a face as a new Vector.
+     *
+     * @param face The face.
+     * @return The normal.
+     */
+    public Vector getNormal(int face) {
+        updateNormals();
+        return new Vector(this.nx[face], this.ny[face], this.nz[face], 0.0);
+    } // getNormal( int )
+
+    /**
+     * Writes the normal of a face into a vector, without allocating.
+     *
+     * @param face The face.
+     * @param destination The vector that receives the normal.
+     */
+    public void getNormal(int face, Vector destination) {
+        updateNormals();
+        destination.set(this.nx[face], this.ny[face], this.nz[face], 0.0);
+    } // getNormal( int, Vector )
+
+    /**
+     * Writes a vertex into a vector, without allocating.
+     *
+     * @param i The index of the vertex.
+     * @param destination The vector that receives the vertex.
+     */
+    public void getVertex(int i, Vector destination) {
+        destination.set(this.x[i], this.y[i], this.z[i], this.w[i]);
+    } // getVertex( int, Vector )
+
+    /**
+     * Returns the dot product of the x, y and z of a face normal with those
+     * of a vector, without allocating. The vector's homogeneous component is
+     * ignored.
+     *
+     * @param face The face.
+     * @param v The other vector, usually the light direction.
+     * @return getNormal(face).dot(v).
+     */
+    public double dotNormal(int face, Vector v) {
+        updateNormals();
+        return this.nx[face] * v.x() + this.ny[face] * v.y()
+                + this.nz[face] * v.z();
+    } // dotNormal( int, Vector )
+
+    /**
+     * Returns true if a face points towards a viewer looking in a given
+     * direction, that is, if the x, y and z components of its outward normal
+     * have a negative dot product with the direction.
+     *
+     * @param face The face.
+     * @param view The direction the viewer looks in.
+     * @return True if the face is front facing.
+     */
+    public boolean isFrontFacing(int face, Vector view) {
+        updateNormals();
+        return this.nx[face] * view.x() + this.ny[face] * view.y()
+                + this.nz[face] * view.z() < 0.0;
+    } // isFrontFacing( int, Vector )
+
+    /**
+     * Returns the highest z of a face's corners.
+     *
+     * @param face The face.
+     * @return The highest z.
+     */
+    public double getFaceHighestZ(int face) {
+        int end = this.faceOffsets[face + 1];
+        double highest = Double.NEGATIVE_INFINITY;
+        for (int k = this.faceOffsets[face]; k < end; k++) {
+            highest = Math.max(highest, this.z[this.faceIndices[k]]);
+        }//for
+        return highest;
+    } // getFaceHighestZ( int )
+
+    /**
+     * Returns the mean z of a face's corners.
+     *
+     * @param face The face.
+     * @return The mean z.
+     */
+    public double getFaceCentreZ(int face) {
+        int start = this.faceOffsets[face];
+        int end = this.faceOffsets[face + 1];
+        double sum = 0.0;
+        for (int k = start; k < end; k++) {
+            sum += this.z[this.faceIndices[k]];
+        }//for
+        return sum / (end - start);
+    } // getFaceCentreZ( int )
+
+    /**
+     * Returns the mean z of all the vertices, used to order whole objects.
+     *
+     * @return The mean z.
+     */
+    public double getCentreZ() {
+        double sum = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            sum += this.z[i];
+        }
+        return sum / vertexCount;
+    }//getCentreZ()
+
+    /**
+     * Sorts a list of faces into back-to-front order, in place, by the mean z
+     * of their corners, largest first. This is the order the painter's
+     * algorithm draws them in. Faces with equal z keep their order. Nothing
+     * is allocated.
+     *
+     * @param faces The faces to sort.
+     * @param count The number of faces in the list.
+     */
+    public void sortFaces(int[] faces, int count) {
+        for (int i = 0; i < count; i++) {
+            this.faceDepths[i] = getFaceCentreZ(faces[i]);
+        }//for
+        sortByDepth(faces, count);
+    } // sortFaces( int [], int )
+
+    /**
+     * Sorts a list of faces into back-to-front order, in place, by the mean
+     * of depths given for each vertex, such as those a Camera projects, so
+     * that the order suits the view rather than the world's z axis. Faces
+     * with equal depth keep their order. Nothing is allocated.
+     *
+     * @param faces The faces to sort.
+     * @param count The number of faces in the list.
+     * @param vertexDepths The depth of each vertex, larger being further.
+     */
+    public void sortFaces(int[] faces, int count, float[] vertexDepths) {
+        for (int i = 0; i < count; i++) {
+            int start = this.faceOffsets[faces[i]];
+            int end = this.faceOffsets[faces[i] + 1];
+            double sum = 0.0;
+            for (int k = start; k < end; k++) {
+                sum += vertexDepths[this.faceIndices[k]];
+            }//for
+            this.faceDepths[i] = sum / (end - start);
+        }//for
+        sortByDepth(faces, count);
+    } // sortFaces( int [], int, float [] )
+
+    /**
+     * Sorts a list of faces into back-to-front order, in place, by the
+     * highest z of their corners. Faces with equal z keep their order.
+     * Nothing is allocated.
+     *
+     * @param faces The faces to sort.
+     * @param count The number of faces in the list.
+     */
+    public void sortFacesByHighestZ(int[] faces, int count) {
+        for (int i = 0; i < count; i++) {
+            this.faceDepths[i] = getFaceHighestZ(faces[i]);
+        }//for
+        sortByDepth(faces, count);
+    } // sortFacesByHighestZ( int [], int )
+
+    /**
+     * Reorders faces by the depths already in faceDepths, largest first.
+     */
+    private void sortByDepth(int[] faces, int count) {
+        MergeSort.argsort(this.faceDepths, count, this.sortOrder,
+                this.sortScratch, true);
+        for (int i = 0; i < count; i++) {
+            this.sortScratch[i] = faces[this.sortOrder[i]];
+        }//for
+        System.arraycopy(this.sortScratch, 0, faces, 0, count);
+    } // sortByDepth( int [], int )
+
+} // Mesh
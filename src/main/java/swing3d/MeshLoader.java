@@ -0,0 +1,449 @@
+package swing3d;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Loads meshes from Wavefront OBJ and binary STL files.
+ *
+ * The file is memory-mapped and read a byte at a time straight out of the
+ * mapping, so no line or number is ever turned into a String. The mapping is
+ * cut into chunks that are parsed in parallel: an OBJ file is cut at line
+ * ends and read twice, once to count the vertices and faces in each chunk and
+ * once to parse them into place, and a binary STL file is cut at triangle
+ * records, whose positions are known from the header.
+ *
+ * Only vertex positions and faces are read from OBJ files. Texture and normal
+ * indices on faces ("f 1/2/3") are skipped, negative indices count back from
+ * the last vertex, and faces keep however many corners they have. STL files
+ * have no shared vertices, so each triangle gets three of its own.
+ *
+ * @author marcus
+ */
+public final class MeshLoader {
+
+    // The smallest chunk worth giving its own task.
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private static final int STL_HEADER = 84;
+    private static final int STL_RECORD = 50;
+
+    // Every power of ten that a double holds exactly.
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        } //for
+    }
+
+    private MeshLoader() {
+    } // MeshLoader()
+
+    /**
+     * Loads a mesh, choosing the format from the file's extension.
+     *
+     * @param file An .obj or .stl file.
+     * @return The mesh.
+     * @throws IOException If the file cannot be read or is not valid.
+     */
+    public static Mesh load(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".obj")) {
+            return loadObj(file);
+        } else if (name.endsWith(".stl")) {
+            return loadStl(file);
+        } //if
+        throw new IOException(file + ": unknown mesh format");
+    } // load( Path )
+
+    /**
+     * Loads a Wavefront OBJ file.
+     *
+     * @param file The file.
+     * @return The mesh.
+     * @throws IOException If the file cannot be read or is not valid.
+     */
+    public static Mesh loadObj(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        ObjChunk[] chunks = splitLines(buffer);
+        try {
+            IntStream.range(0, chunks.length).parallel()
+                    .forEach(i -> chunks[i].count());
+
+            int vertices = 0;
+            int faces = 0;
+            long indices = 0;
+            for (ObjChunk chunk : chunks) {
+                chunk.vertexBase = vertices;
+                chunk.faceBase = faces;
+                chunk.indexBase = (int) indices;
+                vertices += chunk.vertices;
+                faces += chunk.faces;
+                indices += chunk.indices;
+                if (indices > Integer.MAX_VALUE) {
+                    throw new IOException(file + ": too many face indices");
+                } //if
+            } //for
+
+            double[] x = new double[vertices];
+            double[] y = new double[vertices];
+            double[] z = new double[vertices];
+            int[] faceOffsets = new int[faces + 1];
+            int[] faceIndices = new int[(int) indices];
+            faceOffsets[faces] = (int) indices;
+            int total = vertices;
+            IntStream.range(0, chunks.length).parallel().forEach(
+                    i -> chunks[i].parse(x, y, z, faceOffsets, faceIndices,
+                            total));
+            return new Mesh(x, y, z, faceOffsets, faceIndices);
+        } catch (UncheckedIOException e) {
+            throw new IOException(file + ": " + e.getCause().getMessage(),
+                    e.getCause());
+        } //try
+    } // loadObj( Path )
+
+    /**
+     * Loads a binary STL file.
+     *
+     * @param file The file.
+     * @return The mesh.
+     * @throws IOException If the file cannot be read or is not a binary STL
+     * file.
+     */
+    public static Mesh loadStl(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.limit();
+        long triangles = size < STL_HEADER
+                ? -1 : Integer.toUnsignedLong(buffer.getInt(80));
+        if (triangles < 0 || STL_HEADER + STL_RECORD * triangles != size) {
+            throw new IOException(file + ": not a binary STL file");
+        } //if
+
+        int count = (int) triangles;
+        double[] x = new double[3 * count];
+        double[] y = new double[3 * count];
+        double[] z = new double[3 * count];
+        int[] faceOffsets = new int[count + 1];
+        int[] faceIndices = new int[3 * count];
+        faceOffsets[count] = 3 * count;
+        int tasks = taskCount(size);
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            int first = (int) ((long) count * task / tasks);
+            int last = (int) ((long) count * (task + 1) / tasks);
+            for (int t = first; t < last; t++) {
+                // Skip the facet normal; it is recomputed from the corners.
+                int offset = STL_HEADER + STL_RECORD * t + 12;
+                faceOffsets[t] = 3 * t;
+                for (int k = 0; k < 3; k++) {
+                    int v = 3 * t + k;
+                    x[v] = buffer.getFloat(offset);
+                    y[v] = buffer.getFloat(offset + 4);
+                    z[v] = buffer.getFloat(offset + 8);
+                    faceIndices[v] = v;
+                    offset += 12;
+                } //for
+            } //for
+        });
+        return new Mesh(x, y, z, faceOffsets, faceIndices);
+    } // loadStl( Path )
+
+    /**
+     * Maps a whole file read-only.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + ": too large to map");
+            } //if
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } //try
+    } // map( Path )
+
+    /**
+     * Returns how many tasks to split size bytes between.
+     */
+    private static int taskCount(int size) {
+        int most = 4 * Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(most, size / MIN_CHUNK));
+    } // taskCount( int )
+
+    /**
+     * Cuts an OBJ file into chunks that each start at the beginning of a line.
+     */
+    private static ObjChunk[] splitLines(MappedByteBuffer buffer) {
+        int size = buffer.limit();
+        int tasks = taskCount(size);
+        int[] bounds = new int[tasks + 1];
+        bounds[tasks] = size;
+        for (int i = 1; i < tasks; i++) {
+            int pos = Math.max(bounds[i - 1], (int) ((long) size * i / tasks));
+            while (pos < size && buffer.get(pos) != '\n') {
+                pos++;
+            } //while
+            bounds[i] = Math.min(size, pos + 1);
+        } //for
+
+        ObjChunk[] chunks = new ObjChunk[tasks];
+        for (int i = 0; i < tasks; i++) {
+            chunks[i] = new ObjChunk(buffer, bounds[i], bounds[i + 1]);
+        } //for
+        return chunks;
+    } // splitLines( MappedByteBuffer )
+
+    /**
+     * A run of whole lines of an OBJ file, with what it holds and where its
+     * vertices and faces go in the mesh.
+     */
+    private static final class ObjChunk {
+
+        private final MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private int pos;
+
+        private int vertices;
+        private int faces;
+        private int indices;
+
+        private int vertexBase;
+        private int faceBase;
+        private int indexBase;
+
+        private ObjChunk(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        } // ObjChunk( MappedByteBuffer, int, int )
+
+        /**
+         * Counts the vertices, faces and face indices in the chunk.
+         */
+        private void count() {
+            this.pos = this.start;
+            while (this.pos < this.end) {
+                skipBlanks();
+                int keyword = lineKeyword();
+                if (keyword == 'v') {
+                    this.vertices++;
+                } else if (keyword == 'f') {
+                    int corners = 0;
+                    while (!atLineEnd()) {
+                        corners++;
+                        skipToken();
+                        skipBlanks();
+                    } //while
+                    if (corners >= 3) {
+                        this.faces++;
+                        this.indices += corners;
+                    } //if
+                } //if
+                skipLine();
+            } //while
+        } // count()
+
+        /**
+         * Parses the chunk's vertices and faces into their place in the mesh.
+         */
+        private void parse(double[] x, double[] y, double[] z,
+                int[] faceOffsets, int[] faceIndices, int total) {
+            int vertex = this.vertexBase;
+            int face = this.faceBase;
+            int index = this.indexBase;
+            this.pos = this.start;
+            while (this.pos < this.end) {
+                skipBlanks();
+                int keyword = lineKeyword();
+                if (keyword == 'v') {
+                    x[vertex] = parseDouble();
+                    y[vertex] = parseDouble();
+                    z[vertex] = parseDouble();
+                    vertex++;
+                } else if (keyword == 'f') {
+                    int first = index;
+                    while (!atLineEnd()) {
+                        int i = parseInt();
+                        // OBJ counts from 1, or back from the last vertex.
+                        i = i > 0 ? i - 1 : vertex + i;
+                        if (i < 0 || i >= total) {
+                            throw error("face index out of range");
+                        } //if
+                        faceIndices[index++] = i;
+                        skipToken();
+                        skipBlanks();
+                    } //while
+                    if (index - first >= 3) {
+                        faceOffsets[face++] = first;
+                    } else {
+                        index = first;
+                    } //if
+                } //if
+                skipLine();
+            } //while
+        } // parse( double [], double [], double [], int [], int [], int )
+
+        /**
+         * Returns 'v' or 'f' and steps past the keyword if the line holds a
+         * vertex or a face, or 0 otherwise.
+         */
+        private int lineKeyword() {
+            if (this.pos + 1 < this.end
+                    && isBlank(this.buffer.get(this.pos + 1))) {
+                byte c = this.buffer.get(this.pos);
+                if (c == 'v' || c == 'f') {
+                    this.pos += 2;
+                    skipBlanks();
+                    return c;
+                } //if
+            } //if
+            return 0;
+        } // lineKeyword()
+
+        private double parseDouble() {
+            skipBlanks();
+            boolean negative = false;
+            if (this.pos < this.end) {
+                byte c = this.buffer.get(this.pos);
+                if (c == '-' || c == '+') {
+                    negative = c == '-';
+                    this.pos++;
+                } //if
+            } //if
+
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean fraction = false;
+            while (this.pos < this.end) {
+                byte c = this.buffer.get(this.pos);
+                if (c >= '0' && c <= '9') {
+                    if (mantissa < 100_000_000_000_000_000L) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (fraction) {
+                            exponent--;
+                        } //if
+                    } else if (!fraction) {
+                        exponent++;
+                    } //if
+                    digits++;
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                } //if
+                this.pos++;
+            } //while
+            if (digits == 0) {
+                throw error("number expected");
+            } //if
+
+            if (this.pos < this.end
+                    && (this.buffer.get(this.pos) | 0x20) == 'e') {
+                this.pos++;
+                exponent += parseInt();
+            } //if
+
+            double value = mantissa;
+            if (exponent > 0) {
+                value *= exponent < POWERS_OF_TEN.length
+                        ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+            } else if (exponent < 0) {
+                value /= -exponent < POWERS_OF_TEN.length
+                        ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+            } //if
+            return negative ? -value : value;
+        } // parseDouble()
+
+        private int parseInt() {
+            boolean negative = false;
+            if (this.pos < this.end) {
+                byte c = this.buffer.get(this.pos);
+                if (c == '-' || c == '+') {
+                    negative = c == '-';
+                    this.pos++;
+                } //if
+            } //if
+
+            long value = 0;
+            int digits = 0;
+            while (this.pos < this.end) {
+                byte c = this.buffer.get(this.pos);
+                if (c < '0' || c > '9') {
+                    break;
+                } //if
+                value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+                digits++;
+                this.pos++;
+            } //while
+            if (digits == 0) {
+                throw error("integer expected");
+            } //if
+            return (int) (negative ? -value : value);
+        } // parseInt()
+
+        private boolean atLineEnd() {
+            if (this.pos >= this.end) {
+                return true;
+            } //if
+            byte c = this.buffer.get(this.pos);
+            return c == '\n' || c == '\r' || c == '#';
+        } // atLineEnd()
+
+        private void skipBlanks() {
+            while (this.pos < this.end && isBlank(this.buffer.get(this.pos))) {
+                this.pos++;
+            } //while
+        } // skipBlanks()
+
+        private void skipToken() {
+            while (!atLineEnd() && !isBlank(this.buffer.get(this.pos))) {
+                this.pos++;
+            } //while
+        } // skipToken()
+
+        private void skipLine() {
+            while (this.pos < this.end && this.buffer.get(this.pos) != '\n') {
+                this.pos++;
+            } //while
+            this.pos++;
+        } // skipLine()
+
+        private UncheckedIOException error(String message) {
+            return new UncheckedIOException(new IOException(
+                    message + " at byte " + this.pos));
+        } // error( String )
+
+        private static boolean isBlank(byte c) {
+            return c == ' ' || c == '\t';
+        } // isBlank( byte )
+
+    } // ObjChunk
+
+    /**
+     * Loads each file named and prints its size and how long it took.
+     *
+     * @param args The files to load.
+     * @throws IOException If a file cannot be loaded.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            long start = System.nanoTime();
+            Mesh mesh = load(Path.of(arg));
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%s: %d vertices, %d faces in %.1f ms%n", arg,
+                    mesh.getVertexCount(), mesh.getFaceCount(), ms);
+        } //for
+    } // main( String [] )
+
+} // MeshLoader
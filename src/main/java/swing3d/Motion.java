@@ -0,0 +1,201 @@
+package swing3d;
+
+/**
+ * How an object in a Scene is posed over time: an orientation at frame 0, a
+ * spin that turns it once per update about its own origin, and a position
+ * that carries it from its rest pose to its place in the scene.
+ *
+ * The pose at any frame, or any time between frames, is the spin raised to
+ * that frame times the orientation at frame 0, found in constant time with
+ * Quaternion.powerInto, so a frame can be posed without running the updates
+ * before it. Stepping one update at a time composes the spin onto the
+ * current orientation instead, which is cheaper still; the orientation is
+ * normalised every RENORMALISE_STEPS steps so rounding cannot grow it or
+ * shrink it.
+ *
+ * The current pose is kept packed as the top three rows of its matrix, and
+ * place applies it to the rest pose in one pass. Placing always starts from
+ * the rest pose, so rounding never builds up in the vertices however many
+ * updates are run.
+ *
+ * @author marcus
+ */
+public final class Motion {
+
+    /**
+     * The number of steps between normalisations of the orientation.
+     */
+    public static final int RENORMALISE_STEPS = 64;
+
+    private final Quaternion start = new Quaternion();
+    private final Quaternion spin = new Quaternion();
+    private final Quaternion orientation = new Quaternion();
+    private final double[] pose = new double[12];
+    private double positionX;
+    private double positionY;
+    private double positionZ;
+    private double time = 0.0;
+    private int steps = 0;
+
+    /**
+     * Creates a motion at frame 0.
+     *
+     * @param orientation The orientation at frame 0. It is copied.
+     * @param spin The rotation every update adds. It is copied.
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     */
+    public Motion(Quaternion orientation, Quaternion spin, double x, double y,
+            double z) {
+        this.start.set(orientation);
+        this.spin.set(spin);
+        this.orientation.set(orientation);
+        this.positionX = x;
+        this.positionY = y;
+        this.positionZ = z;
+        this.updatePose();
+    } // Motion( Quaternion, Quaternion, double, double, double )
+
+    /**
+     * Creates a motion that spins by a rotation matrix every update, starting
+     * unrotated at a position.
+     *
+     * @param spinner The rotation to apply every update. Only its top left
+     * 3X3 is used.
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     */
+    public Motion(Matrix4X4 spinner, double x, double y, double z) {
+        this(new Quaternion(), spinOf(spinner), x, y, z);
+    } // Motion( Matrix4X4, double, double, double )
+
+    /**
+     * Creates a copy of another motion, at the same time.
+     *
+     * @param other The motion to copy.
+     */
+    public Motion(Motion other) {
+        this.copyFrom(other);
+    } // Motion( Motion )
+
+    /**
+     * Copies the state of another motion into this one, without allocating.
+     *
+     * @param other The motion to copy from.
+     */
+    public void copyFrom(Motion other) {
+        this.start.set(other.start);
+        this.spin.set(other.spin);
+        this.orientation.set(other.orientation);
+        System.arraycopy(other.pose, 0, this.pose, 0, 12);
+        this.positionX = other.positionX;
+        this.positionY = other.positionY;
+        this.positionZ = other.positionZ;
+        this.time = other.time;
+        this.steps = other.steps;
+    } // copyFrom( Motion )
+
+    /**
+     * Moves on by one update.
+     */
+    public void step() {
+        this.spin.multiplyInto(this.orientation, this.orientation);
+        this.time += 1.0;
+        if (++this.steps == RENORMALISE_STEPS) {
+            this.orientation.normaliseInPlace();
+            this.steps = 0;
+        } // if
+        this.updatePose();
+    } // step()
+
+    /**
+     * Sets the motion to where it is after a number of updates, in constant
+     * time. The time need not be a whole number, to pose between updates.
+     *
+     * @param time The number of updates since frame 0.
+     */
+    public void setTime(double time) {
+        this.spin.powerInto(time, this.orientation);
+        this.orientation.multiplyInto(this.start, this.orientation);
+        this.time = time;
+        this.steps = 0;
+        this.updatePose();
+    } // setTime( double )
+
+    /**
+     * Returns the number of updates since frame 0.
+     *
+     * @return The time.
+     */
+    public double getTime() {
+        return this.time;
+    } // getTime()
+
+    /**
+     * Returns the current orientation. It must not be changed.
+     *
+     * @return The orientation.
+     */
+    public Quaternion getOrientation() {
+        return this.orientation;
+    } // getOrientation()
+
+    /**
+     * Moves the position.
+     *
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     */
+    public void setPosition(double x, double y, double z) {
+        this.positionX = x;
+        this.positionY = y;
+        this.positionZ = z;
+        this.updatePose();
+    } // setPosition( double, double, double )
+
+    /**
+     * Writes the current pose into a matrix.
+     *
+     * @param matrix The matrix to fill.
+     */
+    public void getPose(Matrix4X4 matrix) {
+        matrix.identity();
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                matrix.set(r, c, this.pose[4 * r + c]);
+            } // for
+        } // for
+    } // getPose( Matrix4X4 )
+
+    /**
+     * Sets a mesh to a rest pose moved by the current pose.
+     *
+     * @param rest The rest pose.
+     * @param target The mesh to set. It must have as many vertices as the
+     * rest pose, and may not be the rest pose.
+     */
+    public void place(Mesh rest, Mesh target) {
+        target.transformFrom(rest, this.pose, 0);
+    } // place( Mesh, Mesh )
+
+    /**
+     * Packs the orientation and position into the pose.
+     */
+    private void updatePose() {
+        this.orientation.toRows(this.positionX, this.positionY,
+                this.positionZ, this.pose, 0);
+    } // updatePose()
+
+    /**
+     * Returns the rotation in a matrix as a quaternion.
+     */
+    private static Quaternion spinOf(Matrix4X4 spinner) {
+        Quaternion spin = new Quaternion();
+        spin.fromMatrix(spinner);
+        return spin;
+    } // spinOf( Matrix4X4 )
+
+} // Motion
@@ -3,23 +3,78 @@ package swing3d;
 import java.awt.Shape;
 import java.awt.geom.GeneralPath;
 import java.util.ArrayList;
-import java.util.List;
 
-public class Polygon3D {
-
-    private final List<Vector> vertices = new ArrayList<>();
-    private final int layers = 2;
+/**
+ * A prism (or "cone") made of two layers of vertices, as a Mesh.
+ *
+ * The prism and cone factories place the vertices; the faces are the same for
+ * both, one per side followed by the top and the bottom, and are built once
+ * per number of sides as index lists. Everything that works on faces (the
+ * transform, normals, shapes, depths and sorting) comes from Mesh, so the
+ * methods here only name the faces a prism has.
+ *
+ * @author marcus
+ */
+public class Polygon3D extends Mesh {
+
+    private static final int LAYERS = 2;
+    private final String type;
+    private final int sides;
+
+    /**
+     * Makes a prism with flat, equal top and bottom.
+     *
+     * @param numberOfSides The number of sides.
+     * @param radius The distance from the axis to each corner.
+     * @param depth The distance between the top and the bottom.
+     * @return The prism.
+     */
+    public static Polygon3D prism(int numberOfSides, double radius,
+            double depth) {
+        return new Polygon3D(numberOfSides, radius, depth, "normal");
+    } // prism( int, double, double )
+
+    /**
+     * Makes a cone: a prism whose bottom has shrunk almost to a point.
+     *
+     * @param numberOfSides The number of sides.
+     * @param radius The distance from the axis to each corner of the top.
+     * @param depth The distance between the top and the tip.
+     * @return The cone.
+     */
+    public static Polygon3D cone(int numberOfSides, double radius,
+            double depth) {
+        return new Polygon3D(numberOfSides, radius, depth, "cone");
+    } // cone( int, double, double )
+
+    /**
+     * Makes a prism for type "normal" or a cone for any other type.
+     *
+     * @param numberOfSides The number of sides.
+     * @param radius The distance from the axis to each corner.
+     * @param depth The distance between the top and the bottom.
+     * @param type "normal" or "cone".
+     * @return The prism or cone.
+     */
+    public static Polygon3D create(int numberOfSides, double radius,
+            double depth, String type) {
+        return type.equals("normal") ? prism(numberOfSides, radius, depth)
+                : cone(numberOfSides, radius, depth);
+    } // create( int, double, double, String )
 
     public Polygon3D(int numberOfSides, double radius, double depth, String type) {
+        super(numberOfSides * LAYERS, faceOffsets(numberOfSides),
+                faceIndices(numberOfSides));
+        this.type = type;
+        this.sides = numberOfSides;
         if (type.equals("normal")) {
-            for (int j = 0; j < layers; j++) {
+            for (int j = 0; j < LAYERS; j++) {
                 for (int i = 0; i < numberOfSides; i++) {
                     double fraction = ((double) i) / numberOfSides;
                     double angle = fraction * 2.0 * Math.PI;
-                    double x = radius * Math.cos(angle);
-                    double y = radius * Math.sin(angle);
-                    Vector v = new Vector(x, y, (j * depth) - (depth / 2));
-                    this.vertices.add(v);
+                    this.setVertex(i + j * numberOfSides,
+                            radius * Math.cos(angle), radius * Math.sin(angle),
+                            (j * depth) - (depth / 2));
                 } // for
             }//for
         }//if
@@ -27,44 +82,131 @@ public class Polygon3D {
             for (int i = 0; i < numberOfSides; i++) {
                 double fraction = ((double) i) / numberOfSides;
                 double angle = fraction * 2.0 * Math.PI;
-                double x = radius * Math.cos(angle);
-                double y = radius * Math.sin(angle);
-                Vector v = new Vector(x, y, - (depth / 2));
-                this.vertices.add(v);
+                this.setVertex(i, radius * Math.cos(angle),
+                        radius * Math.sin(angle), - (depth / 2));
             }
             for (int i = 0; i < numberOfSides; i++) {
                 double fraction = ((double) i) / numberOfSides;
                 double angle = fraction * 2.0 * Math.PI;
-                double x = 0.00001 * Math.cos(angle);
-                double y = 0.00001 * Math.sin(angle);
-                Vector v = new Vector(x, y, (depth / 2));
-                this.vertices.add(v);
+                this.setVertex(i + numberOfSides, 0.00001 * Math.cos(angle),
+                        0.00001 * Math.sin(angle), (depth / 2));
             }
 
         }//else
     } // Polygon3D( int, double )
 
-    public void transform(Matrix4X4 m) {
-        for (Vector u : this.vertices) {
-            u.set(m.multiply(u));
-        } // for 
-    } // transform( Matrix4X4 )
+    /**
+     * Creates a copy of another polygon, with its own vertex arrays.
+     *
+     * @param other The polygon to copy.
+     */
+    public Polygon3D(Polygon3D other) {
+        super(other);
+        this.type = other.type;
+        this.sides = other.sides;
+    } // Polygon3D( Polygon3D )
+
+    @Override
+    public Polygon3D copy() {
+        return new Polygon3D(this);
+    } // copy()
+
+    /**
+     * Returns where each face starts in the index list: four corners for each
+     * side, then the top and the bottom with one per side.
+     */
+    private static int[] faceOffsets(int size) {
+        int[] offsets = new int[size + 3];
+        for (int f = 0; f <= size; f++) {
+            offsets[f] = 4 * f;
+        }//for
+        offsets[size + 1] = 5 * size;
+        offsets[size + 2] = 6 * size;
+        return offsets;
+    } // faceOffsets( int )
+
+    /**
+     * Returns the corners of every face. Side f runs down from the bottom
+     * layer, along the top layer and back; the top is listed backwards from
+     * vertex 2 and the bottom forwards, which winds every face outwards.
+     */
+    private static int[] faceIndices(int size) {
+        int[] indices = new int[6 * size];
+        int k = 0;
+        for (int f = 0; f < size; f++) {
+            int next = (f + 1) % size;
+            indices[k++] = f + size;
+            indices[k++] = f;
+            indices[k++] = next;
+            indices[k++] = next + size;
+        }//for
+        for (int i = 0; i < size; i++) {
+            indices[k++] = (2 - i + 2 * size) % size;
+        }//for
+        for (int i = 0; i < size; i++) {
+            indices[k++] = size + i;
+        }//for
+        return indices;
+    } // faceIndices( int )
+
+    /**
+     * Returns the type the polygon was made with, "normal" or "cone".
+     *
+     * @return The type.
+     */
+    public String getType() {
+        return this.type;
+    } // getType()
+
+    /**
+     * Returns the number of sides. Faces 0 to getSides() - 1 are the sides,
+     * face getSides() is the top and face getSides() + 1 is the bottom.
+     *
+     * @return The number of sides.
+     */
+    public int getSides() {
+        return this.sides;
+    } // getSides()
+
+    /**
+     * Returns the dot product of the top normal with a vector.
+     *
+     * @param v The other vector, usually the light direction.
+     * @return getNormalTop().dot(v), without allocating.
+     */
+    public double dotNormalTop(Vector v) {
+        return dotNormal(this.sides, v);
+    } // dotNormalTop( Vector )
+
+    /**
+     * Returns the dot product of the bottom normal with a vector.
+     *
+     * @param v The other vector, usually the light direction.
+     * @return getNormalBottom().dot(v), without allocating.
+     */
+    public double dotNormalBottom(Vector v) {
+        return dotNormal(this.sides + 1, v);
+    } // dotNormalBottom( Vector )
+
+    /**
+     * Returns the dot product of a side normal with a vector.
+     *
+     * @param firstSide The side.
+     * @param v The other vector, usually the light direction.
+     * @return getNormalSide(firstSide).dot(v), without allocating.
+     */
+    public double dotNormalSide(int firstSide, Vector v) {
+        return dotNormal(firstSide, v);
+    } // dotNormalSide( int, Vector )
 
     public Shape getShape() {
         GeneralPath path = new GeneralPath();
-        int size = this.vertices.size() / layers;
-
-        for (int j = 0; j < layers; j++) {
-            Vector v = this.vertices.get(0 + j * size);
-            double x = v.get(0);
-            double y = v.get(1);
-            path.moveTo(x, y);
+        int size = this.sides;
 
+        for (int j = 0; j < LAYERS; j++) {
+            path.moveTo(getX(j * size), getY(j * size));
             for (int i = 1; i < size; i++) {
-                v = this.vertices.get(i + j * size);
-                x = v.get(0);
-                y = v.get(1);
-                path.lineTo(x, y);
+                path.lineTo(getX(i + j * size), getY(i + j * size));
             } // for
         }//for
         path.closePath();
@@ -72,178 +214,81 @@ public class Polygon3D {
     } // getShape()
 
     public Shape getShapeBottom() {
-        GeneralPath path = new GeneralPath();
-        int size = this.vertices.size() / layers;
-
-        Vector v = this.vertices.get(size);
-        double x = v.get(0);
-        double y = v.get(1);
-        path.moveTo(x, y);
-
-        for (int i = size; i < size * layers; i++) {
-            v = this.vertices.get(i);
-            x = v.get(0);
-            y = v.get(1);
-            path.lineTo(x, y);
-        }
-        path.closePath();
-        return path;
+        return getFaceShape(this.sides + 1);
     }
 
     public Vector getNormalBottom() {
-        List<Vector> vectors = new ArrayList<>();
-        int size = this.vertices.size() / layers;
-        vectors.add(this.vertices.get(size));
-        vectors.add(this.vertices.get(size + 1));
-        vectors.add(this.vertices.get(size + 2));
-        vectors.add(vectors.get(0).subtract(vectors.get(1)));
-        vectors.add(vectors.get(2).subtract(vectors.get(1)));
-        vectors.add(vectors.get(3).cross(vectors.get(4)).normalise());
-        return vectors.get(5);
+        return getNormal(this.sides + 1);
     }
 
     public Shape getShapeTop() {
-        GeneralPath path = new GeneralPath();
-        int size = this.vertices.size() / layers;
-
-        Vector v = this.vertices.get(0);
-        double x = v.get(0);
-        double y = v.get(1);
-        path.moveTo(x, y);
-
-        for (int i = 1; i < size; i++) {
-            v = this.vertices.get(i);
-            x = v.get(0);
-            y = v.get(1);
-            path.lineTo(x, y);
-        }
-        path.closePath();
-        return path;
+        return getFaceShape(this.sides);
     }
 
     public Vector getNormalTop() {
-        List<Vector> vectors = new ArrayList<>();
-        vectors.add(this.vertices.get(0));
-        vectors.add(this.vertices.get(1));
-        vectors.add(this.vertices.get(2));
-        vectors.add(vectors.get(0).subtract(vectors.get(1)));
-        vectors.add(vectors.get(2).subtract(vectors.get(1)));
-        vectors.add(vectors.get(3).cross(vectors.get(4)).normalise());
-        return vectors.get(5);
+        return getNormal(this.sides);
     }
 
     public Shape getShapeSide(int firstSide) {
-        GeneralPath path = new GeneralPath();
-        int size = this.vertices.size() / layers;
-
-        if (firstSide < size - 1) {
-
-            Vector v = this.vertices.get(firstSide + size);
-            double x = v.get(0);
-            double y = v.get(1);
-            path.moveTo(x, y);
-
-            v = this.vertices.get(firstSide);
-            x = v.get(0);
-            y = v.get(1);
-            path.lineTo(x, y);
-
-            v = this.vertices.get(firstSide + 1);
-            x = v.get(0);
-            y = v.get(1);
-            path.lineTo(x, y);
-
-            v = this.vertices.get(firstSide + size + 1);
-            x = v.get(0);
-            y = v.get(1);
-            path.lineTo(x, y);
-
-            path.closePath();
-            return path;
-        } else {
-            return getShapeFinalSide();
-        }
+        return getFaceShape(firstSide);
     }
 
     public Vector getNormalSide(int firstSide) {
-        int size = this.vertices.size() / layers;
-        List<Vector> vectors = new ArrayList<>();
-        vectors.add(this.vertices.get(firstSide + 1));
-        vectors.add(this.vertices.get(firstSide));
-        vectors.add(this.vertices.get(firstSide + size));
-        vectors.add(vectors.get(0).subtract(vectors.get(1)));
-        vectors.add(vectors.get(2).subtract(vectors.get(1)));
-        vectors.add(vectors.get(3).cross(vectors.get(4)).normalise());
-        return vectors.get(5);
+        return getNormal(firstSide);
     }
 
     public Shape getShapeFinalSide() {
-        GeneralPath path = new GeneralPath();
-        int size = this.vertices.size() / layers;
-
-        Vector v = this.vertices.get(2 * size - 1);
-        double x = v.get(0);
-        double y = v.get(1);
-        path.moveTo(x, y);
-
-        v = this.vertices.get(size - 1);
-        x = v.get(0);
-        y = v.get(1);
-        path.lineTo(x, y);
-
-        v = this.vertices.get(0);
-        x = v.get(0);
-        y = v.get(1);
-        path.lineTo(x, y);
-
-        v = this.vertices.get(size);
-        x = v.get(0);
-        y = v.get(1);
-        path.lineTo(x, y);
-
-        path.closePath();
-        System.out.println("done");
-        return path;
+        return getFaceShape(this.sides - 1);
     }
 
+    /**
+     * Returns the normal of the final side computed from its corners in the
+     * opposite winding to getNormalSide, so it points the other way. It is not
+     * cached; getNormalSide(size - 1) is the cached normal of the same face.
+     *
+     * @return The reversed normal of the final side.
+     */
     public Vector getNormalFinalSide() {
-        int size = this.vertices.size() / layers;
-        List<Vector> vectors = new ArrayList<>();
-        vectors.add(this.vertices.get(2 * size - 1));
-        vectors.add(this.vertices.get(size - 1));
-        vectors.add(this.vertices.get(0));
-        vectors.add(vectors.get(0).subtract(vectors.get(1)));
-        vectors.add(vectors.get(2).subtract(vectors.get(1)));
-        vectors.add(vectors.get(3).cross(vectors.get(4)).normalise());
-        return vectors.get(5);
+        Vector normal = new Vector();
+        getNormalFinalSide(normal);
+        return normal;
     }
 
-    public double getTopZ() {
-        int size = this.vertices.size() / layers;
-        Vector v = this.vertices.get(0);
-        double currentZ = v.get(2);
+    /**
+     * Writes the reversed normal of the final side into a vector, as
+     * getNormalFinalSide returns it, without allocating.
+     *
+     * @param destination The vector that receives the normal.
+     */
+    public void getNormalFinalSide(Vector destination) {
+        int size = this.sides;
+        VectorPool pool = VectorPool.get();
+        int mark = pool.mark();
+        Vector a = pool.take();
+        Vector b = pool.take();
+        Vector c = pool.take();
+        getVertex(2 * size - 1, a);
+        getVertex(size - 1, b);
+        getVertex(0, c);
+        a.subtractInto(b, a);
+        c.subtractInto(b, c);
+        a.crossInto(c, destination);
+        destination.normaliseInPlace();
+        pool.release(mark);
+    } // getNormalFinalSide( Vector )
 
-        for (int i = 1; i < size; i++) {
-            v = this.vertices.get(i);
-            double z = v.get(2);
-            if (z > currentZ) {
-                currentZ = z;
-            }
-        }
-        return currentZ;
+    public double getTopZ() {
+        return getZ(getTopTopVertex());
     }//getTop()
 
     public int getTopTopVertex() {
-        int size = this.vertices.size() / layers;
-        Vector v = this.vertices.get(0);
-        double currentZ = v.get(2);
+        int size = this.sides;
+        double currentZ = getZ(0);
         int currentVertex = 0;
 
         for (int i = 1; i < size; i++) {
-            v = this.vertices.get(i);
-            double z = v.get(2);
-            if (z > currentZ) {
-                currentZ = z;
+            if (getZ(i) > currentZ) {
+                currentZ = getZ(i);
                 currentVertex = i;
             }
         }
@@ -251,31 +296,17 @@ public class Polygon3D {
     }//getTopTopVertex()
 
     public double getBottomZ() {
-        int size = this.vertices.size() / layers;
-        Vector v = this.vertices.get(size);
-        double currentZ = v.get(2);
-
-        for (int i = size; i < size * layers; i++) {
-            v = this.vertices.get(i);
-            double z = v.get(2);
-            if (z > currentZ) {
-                currentZ = z;
-            }
-        }
-        return currentZ;
+        return getZ(getBottomTopVertex() + this.sides);
     }//getTop()
 
     public int getBottomTopVertex() {
-        int size = this.vertices.size() / layers;
-        Vector v = this.vertices.get(size);
-        double currentZ = v.get(2);
+        int size = this.sides;
+        double currentZ = getZ(size);
         int currentVertex = size;
 
-        for (int i = size; i < size * layers; i++) {
-            v = this.vertices.get(i);
-            double z = v.get(2);
-            if (z > currentZ) {
-                currentZ = z;
+        for (int i = size; i < size * LAYERS; i++) {
+            if (getZ(i) > currentZ) {
+                currentZ = getZ(i);
                 currentVertex = i;
             }
         }
@@ -283,58 +314,57 @@ public class Polygon3D {
     }//getBottomTopVertex()
 
     public double getSideHighestZ(int firstSide) {
-        int size = this.vertices.size() / layers;
-
-        if (firstSide < size - 1) {
-            Vector v = this.vertices.get(firstSide + size);
-            double highestZ = v.get(2);
-
-            int list[] = {firstSide, firstSide + 1, firstSide + size + 1};
-            for (int i : list) {
-                v = this.vertices.get(i);
-                if (v.get(2) > highestZ) {
-                    highestZ = v.get(2);
-                }
-            }
-            return highestZ;
-        }//if
-        else {
-            Vector v = this.vertices.get(2 * size - 1);
-            double highestZ = v.get(2);
-
-            int list[] = {size - 1, 0, size};
-            for (int i : list) {
-                v = this.vertices.get(i);
-                if (v.get(2) > highestZ) {
-                    highestZ = v.get(2);
-                }
-            }
-            return highestZ;
-        }//else
+        return getFaceHighestZ(firstSide);
     }
 
+    /**
+     * Returns the sides in back-to-front order, that is, from the highest z to
+     * the lowest.
+     *
+     * @return The side indices in drawing order.
+     */
     public ArrayList<Integer> sortSides() {
-        int size = this.vertices.size() / layers;
-        ArrayList<Double> verticesZ = new ArrayList<>();
-        ArrayList<Integer> sortedSides = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            verticesZ.add(getSideHighestZ(i));
+        int[] order = this.sortSides(null);
+        ArrayList<Integer> sortedSides = new ArrayList<>(order.length);
+        for (int i : order) {
             sortedSides.add(i);
         }//for
-        MergeSort merger = new MergeSort();
-        ArrayList<Double> verticesZSorted = merger.mergeSort(verticesZ, 0, size);
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (verticesZSorted.get(i) == verticesZ.get(j)) {
-                    sortedSides.set(size - 1 - i, j);
-                }
-            }
-        }
         return sortedSides;
     }
 
+    /**
+     * Writes the sides in back-to-front order into an array. Sides are ordered
+     * by their highest z, largest first, and sides with equal z keep their
+     * index order. Nothing is allocated when the array is long enough.
+     *
+     * @param order The array to fill, or null.
+     * @return order, or a new array if order was null or too short.
+     */
+    public int[] sortSides(int[] order) {
+        int size = this.sides;
+        if (order == null || order.length < size) {
+            order = new int[size];
+        }//if
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }//for
+        sortFacesByHighestZ(order, size);
+        return order;
+    }
+
+    /**
+     * Sorts a list of sides into back-to-front order, in place, by their
+     * highest z. Sides with equal z keep their order. Nothing is allocated.
+     *
+     * @param sides The sides to sort.
+     * @param count The number of sides in the list.
+     */
+    public void sortSides(int[] sides, int count) {
+        sortFacesByHighestZ(sides, count);
+    }
+
     public static void main(String[] args) {
-        Polygon3D shape = new Polygon3D(5, 0.3, 0.5, "normal");
+        Polygon3D shape = prism(5, 0.3, 0.5);
         System.out.println(shape.sortSides());
 
     } // main( String [] )
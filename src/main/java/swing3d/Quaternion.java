@@ -0,0 +1,327 @@
+package swing3d;
+
+/**
+ * A quaternion w + xi + yj + zk, used as a compact orientation. A unit
+ * quaternion is a rotation in four numbers instead of a matrix's nine, two
+ * rotations compose in 16 multiplies instead of a 4X4 product's 64, and a
+ * rotation can be raised to any power, whole or not, in constant time, which
+ * Matrix4X4 can only do for whole powers by repeated squaring.
+ *
+ * Rotations compose the same way as matrices: p.multiplyInto(q, r) makes r
+ * rotate by q first and then by p. Products of unit quaternions drift away
+ * from unit length with rounding, so a quaternion that is composed over and
+ * over should be normalised every so often.
+ *
+ * @author marcus
+ */
+public final class Quaternion {
+
+    private double w;
+    private double x;
+    private double y;
+    private double z;
+
+    /**
+     * Creates the identity quaternion, no rotation.
+     */
+    public Quaternion() {
+        this.identity();
+    } // Quaternion()
+
+    /**
+     * Creates a quaternion from its components.
+     *
+     * @param w The real part.
+     * @param x The i part.
+     * @param y The j part.
+     * @param z The k part.
+     */
+    public Quaternion(double w, double x, double y, double z) {
+        this.set(w, x, y, z);
+    } // Quaternion( double, double, double, double )
+
+    /**
+     * Sets this quaternion to the identity, no rotation.
+     */
+    public void identity() {
+        this.set(1.0, 0.0, 0.0, 0.0);
+    } // identity()
+
+    /**
+     * Sets the components.
+     *
+     * @param w The real part.
+     * @param x The i part.
+     * @param y The j part.
+     * @param z The k part.
+     */
+    public void set(double w, double x, double y, double z) {
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    } // set( double, double, double, double )
+
+    /**
+     * Copies another quaternion into this one.
+     *
+     * @param other The quaternion to copy.
+     */
+    public void set(Quaternion other) {
+        this.set(other.w, other.x, other.y, other.z);
+    } // set( Quaternion )
+
+    /**
+     * Returns the real part.
+     *
+     * @return The real part.
+     */
+    public double w() {
+        return this.w;
+    } // w()
+
+    /**
+     * Returns the i part.
+     *
+     * @return The i part.
+     */
+    public double x() {
+        return this.x;
+    } // x()
+
+    /**
+     * Returns the j part.
+     *
+     * @return The j part.
+     */
+    public double y() {
+        return this.y;
+    } // y()
+
+    /**
+     * Returns the k part.
+     *
+     * @return The k part.
+     */
+    public double z() {
+        return this.z;
+    } // z()
+
+    /**
+     * Sets this quaternion to a rotation about an axis, turning the same way
+     * as Matrix4X4's rotationX, rotationY and rotationZ do about theirs.
+     *
+     * @param axisX The x component of the axis.
+     * @param axisY The y component of the axis.
+     * @param axisZ The z component of the axis.
+     * @param angle The angle to rotate by.
+     */
+    public void axisAngle(double axisX, double axisY, double axisZ,
+            double angle) {
+        double length = Math.sqrt(axisX * axisX + axisY * axisY
+                + axisZ * axisZ);
+        double sin = Math.sin(angle / 2) / length;
+        this.set(Math.cos(angle / 2), axisX * sin, axisY * sin, axisZ * sin);
+    } // axisAngle( double, double, double, double )
+
+    /**
+     * Sets this quaternion to the rotation in the top left 3X3 of a matrix.
+     * The rest of the matrix is ignored, and the 3X3 must be a rotation,
+     * without scaling. Of the two quaternions for the rotation, the one with
+     * w of 0 or more is chosen.
+     *
+     * @param m The matrix.
+     */
+    public void fromMatrix(Matrix4X4 m) {
+        double m00 = m.get(0, 0), m01 = m.get(0, 1), m02 = m.get(0, 2);
+        double m10 = m.get(1, 0), m11 = m.get(1, 1), m12 = m.get(1, 2);
+        double m20 = m.get(2, 0), m21 = m.get(2, 1), m22 = m.get(2, 2);
+        double trace = m00 + m11 + m22;
+        // Work from the largest of w, x, y and z, so the square root and
+        // the division by it are never of something close to 0.
+        if (trace > 0.0) {
+            double s = 2.0 * Math.sqrt(1.0 + trace);
+            this.set(s / 4, (m21 - m12) / s, (m02 - m20) / s, (m10 - m01) / s);
+        } else if (m00 > m11 && m00 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m00 - m11 - m22);
+            this.set((m21 - m12) / s, s / 4, (m01 + m10) / s, (m02 + m20) / s);
+        } else if (m11 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m11 - m00 - m22);
+            this.set((m02 - m20) / s, (m01 + m10) / s, s / 4, (m12 + m21) / s);
+        } else {
+            double s = 2.0 * Math.sqrt(1.0 + m22 - m00 - m11);
+            this.set((m10 - m01) / s, (m02 + m20) / s, (m12 + m21) / s, s / 4);
+        }
+        if (this.w < 0.0) {
+            this.set(-this.w, -this.x, -this.y, -this.z);
+        } // if
+    } // fromMatrix( Matrix4X4 )
+
+    /**
+     * Multiplies this quaternion by another and writes the product into a
+     * destination, which may be either of them. As rotations, the product
+     * rotates by the other quaternion first and then by this one.
+     *
+     * @param other The quaternion on the right.
+     * @param destination The quaternion that receives the product.
+     */
+    public void multiplyInto(Quaternion other, Quaternion destination) {
+        double aw = this.w, ax = this.x, ay = this.y, az = this.z;
+        double bw = other.w, bx = other.x, by = other.y, bz = other.z;
+        destination.set(aw * bw - ax * bx - ay * by - az * bz,
+                aw * bx + ax * bw + ay * bz - az * by,
+                aw * by - ax * bz + ay * bw + az * bx,
+                aw * bz + ax * by - ay * bx + az * bw);
+    } // multiplyInto( Quaternion, Quaternion )
+
+    /**
+     * Raises this unit quaternion to a power and writes the result into a
+     * destination, which may be this quaternion. As a rotation, the power
+     * turns about the same axis through exponent times the angle, so a
+     * rotation applied once per update gives the rotation after any number
+     * of updates, or part of one, in constant time.
+     *
+     * @param exponent The power. The 0th power is the identity.
+     * @param destination The quaternion that receives the power.
+     */
+    public void powerInto(double exponent, Quaternion destination) {
+        double sin = Math.sqrt(this.x * this.x + this.y * this.y
+                + this.z * this.z);
+        double halfAngle = Math.atan2(sin, this.w) * exponent;
+        if (sin == 0.0) {
+            //no axis to turn about: a whole number of turns
+            destination.set(Math.cos(halfAngle), Math.sin(halfAngle), 0.0,
+                    0.0);
+            return;
+        } // if
+        double scale = Math.sin(halfAngle) / sin;
+        destination.set(Math.cos(halfAngle), this.x * scale, this.y * scale,
+                this.z * scale);
+    } // powerInto( double, Quaternion )
+
+    /**
+     * Returns the length of this quaternion, 1 for a rotation.
+     *
+     * @return The length.
+     */
+    public double length() {
+        return Math.sqrt(this.w * this.w + this.x * this.x + this.y * this.y
+                + this.z * this.z);
+    } // length()
+
+    /**
+     * Scales this quaternion back to unit length, in place.
+     */
+    public void normaliseInPlace() {
+        double length = this.length();
+        this.set(this.w / length, this.x / length, this.y / length,
+                this.z / length);
+    } // normaliseInPlace()
+
+    /**
+     * Writes this unit quaternion's rotation followed by a translation as the
+     * top three rows of a 4X4 matrix, twelve doubles in row order, the way
+     * InstanceBatch and Mesh.transformFrom pack affine matrices.
+     *
+     * @param translateX Translation in the x direction.
+     * @param translateY Translation in the y direction.
+     * @param translateZ Translation in the z direction.
+     * @param packed The array to fill.
+     * @param offset Where the rows start in packed.
+     */
+    public void toRows(double translateX, double translateY,
+            double translateZ, double[] packed, int offset) {
+        toRows(this.w, this.x, this.y, this.z, translateX, translateY,
+                translateZ, packed, offset);
+    } // toRows( double, double, double, double [], int )
+
+    /**
+     * Multiplies two quaternions kept as w, x, y and z in arrays, as
+     * multiplyInto does, for InstanceBatch, which keeps one per instance
+     * packed in an array rather than as objects. The product may be written
+     * over either of them.
+     *
+     * @param a The array holding the quaternion on the left.
+     * @param aOffset Where it starts in a.
+     * @param b The array holding the quaternion on the right.
+     * @param bOffset Where it starts in b.
+     * @param destination The array that receives the product.
+     * @param offset Where the product starts in destination.
+     */
+    static void multiply(double[] a, int aOffset, double[] b, int bOffset,
+            double[] destination, int offset) {
+        double aw = a[aOffset], ax = a[aOffset + 1];
+        double ay = a[aOffset + 2], az = a[aOffset + 3];
+        double bw = b[bOffset], bx = b[bOffset + 1];
+        double by = b[bOffset + 2], bz = b[bOffset + 3];
+        destination[offset] = aw * bw - ax * bx - ay * by - az * bz;
+        destination[offset + 1] = aw * bx + ax * bw + ay * bz - az * by;
+        destination[offset + 2] = aw * by - ax * bz + ay * bw + az * bx;
+        destination[offset + 3] = aw * bz + ax * by - ay * bx + az * bw;
+    } // multiply( double [], int, double [], int, double [], int )
+
+    /**
+     * Scales a quaternion kept as w, x, y and z in an array back to unit
+     * length, as normaliseInPlace does.
+     *
+     * @param q The array holding the quaternion.
+     * @param offset Where it starts in q.
+     */
+    static void normalise(double[] q, int offset) {
+        double length = Math.sqrt(q[offset] * q[offset]
+                + q[offset + 1] * q[offset + 1]
+                + q[offset + 2] * q[offset + 2]
+                + q[offset + 3] * q[offset + 3]);
+        q[offset] /= length;
+        q[offset + 1] /= length;
+        q[offset + 2] /= length;
+        q[offset + 3] /= length;
+    } // normalise( double [], int )
+
+    /**
+     * Writes a unit quaternion's rotation followed by a translation as
+     * toRows does, from its components.
+     */
+    static void toRows(double w, double x, double y, double z,
+            double translateX, double translateY, double translateZ,
+            double[] packed, int offset) {
+        double xx = x * x, yy = y * y, zz = z * z;
+        double xy = x * y, xz = x * z, yz = y * z;
+        double wx = w * x, wy = w * y, wz = w * z;
+        packed[offset] = 1.0 - 2.0 * (yy + zz);
+        packed[offset + 1] = 2.0 * (xy - wz);
+        packed[offset + 2] = 2.0 * (xz + wy);
+        packed[offset + 3] = translateX;
+        packed[offset + 4] = 2.0 * (xy + wz);
+        packed[offset + 5] = 1.0 - 2.0 * (xx + zz);
+        packed[offset + 6] = 2.0 * (yz - wx);
+        packed[offset + 7] = translateY;
+        packed[offset + 8] = 2.0 * (xz - wy);
+        packed[offset + 9] = 2.0 * (yz + wx);
+        packed[offset + 10] = 1.0 - 2.0 * (xx + yy);
+        packed[offset + 11] = translateZ;
+    } // toRows( double, double, double, double, double, double, double, double [], int )
+
+    /**
+     * Writes this unit quaternion's rotation into a matrix.
+     *
+     * @param destination The matrix to fill.
+     */
+    public void toMatrix(Matrix4X4 destination) {
+        double[] rows = new double[12];
+        this.toRows(0.0, 0.0, 0.0, rows, 0);
+        destination.identity();
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                destination.set(r, c, rows[4 * r + c]);
+            } // for
+        } // for
+    } // toMatrix( Matrix4X4 )
+
+    @Override
+    public String toString() {
+        return "(" + this.w + ", " + this.x + ", " + this.y + ", " + this.z
+                + ")";
+    } // toString()
+
+} // Quaternion
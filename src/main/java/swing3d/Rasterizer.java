@@ -0,0 +1,446 @@
+package swing3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The parts of a frame ZBufferRenderer and TiledRenderer share: a
+ * TYPE_INT_RGB image with a float depth buffer beside it, the per-mesh pass
+ * that culls, lights and projects a mesh's faces, and the edge-function
+ * triangle fill. Each renderer calls these with its own bounds, the clip for
+ * one and a tile of the clip for the other.
+ *
+ * shade culls and lights a mesh in one batch and projects each vertex once.
+ * The renderer then walks the visible faces with corners, which gives the
+ * vertices of each face in turn, and fills or stores their triangle fans.
+ * Everything but fillTriangle must be called on one thread; fillTriangle
+ * only writes the pixels inside the bounds it is given, so calls with bounds
+ * that do not overlap can run at once.
+ *
+ * @author marcus
+ */
+final class Rasterizer {
+
+    /**
+     * The number of floats a triangle takes in the arrays fillTriangle reads:
+     * the x, y and z of each corner.
+     */
+    static final int STRIDE = 9;
+
+    // The steps of the grid triangle corners are snapped to, per pixel.
+    private static final double SUBPIXELS = 16.0;
+
+    private final Illumination illumination;
+    private final BackFaceCuller culler;
+    private final FrameMetrics metrics;
+    private BufferedImage image;
+    private int[] pixels;
+    private float[] depth;
+    private int width;
+    private int height;
+    private boolean gouraud;
+    private int colour;
+
+    private int[] visible = new int[0];
+    private int[] rgb = new int[0];
+    private float[] intensity = new float[0];
+    private float[] shade = new float[0];
+    private int[] face = new int[0];
+    private float[] screenX = new float[0];
+    private float[] screenY = new float[0];
+    private float[] screenZ = new float[0];
+    private final float[] corners = new float[STRIDE];
+    private final float[] cornerShades = new float[3];
+    private final Map<Mesh, Mesh> instanceMeshes = new IdentityHashMap<>();
+
+    /**
+     * Creates a rasterizer.
+     *
+     * @param illumination The light and shape colour.
+     * @param culler The back-face culler.
+     * @param metrics Where to add the timings of each mesh.
+     */
+    Rasterizer(Illumination illumination, BackFaceCuller culler,
+            FrameMetrics metrics) {
+        this.illumination = illumination;
+        this.culler = culler;
+        this.metrics = metrics;
+    } // Rasterizer( Illumination, BackFaceCuller, FrameMetrics )
+
+    /**
+     * Makes a new image and depth buffer if the size has changed.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return True if they were made anew.
+     */
+    boolean resize(int width, int height) {
+        if (this.image != null && this.width == width
+                && this.height == height) {
+            return false;
+        }
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer())
+                .getData();
+        this.depth = new float[width * height];
+        return true;
+    } // resize( int, int )
+
+    /**
+     * Returns the image.
+     *
+     * @return The image, or null before the first resize.
+     */
+    BufferedImage getImage() {
+        return this.image;
+    } // getImage()
+
+    /**
+     * Starts the culler on a new frame and reads the shading to use for it.
+     *
+     * @param camera The camera the frame is drawn from.
+     */
+    void beginFrame(Camera camera) {
+        this.culler.beginFrame(camera);
+        this.gouraud = this.illumination.getShading()
+                == Illumination.Shading.GOURAUD;
+    } // beginFrame( Camera )
+
+    /**
+     * Returns whether this frame is Gouraud shaded.
+     *
+     * @return True for Gouraud shading, false for flat.
+     */
+    boolean isGouraud() {
+        return this.gouraud;
+    } // isGouraud()
+
+    /**
+     * Fills a rectangle of the image with a colour and sets its depth to
+     * infinity.
+     *
+     * @param left The first column.
+     * @param top The first row.
+     * @param right The last column.
+     * @param bottom The last row.
+     * @param background The colour.
+     */
+    void clear(int left, int top, int right, int bottom, int background) {
+        for (int y = top; y <= bottom; y++) {
+            int row = y * this.width;
+            Arrays.fill(this.pixels, row + left, row + right + 1, background);
+            Arrays.fill(this.depth, row + left, row + right + 1,
+                    Float.POSITIVE_INFINITY);
+        } // for
+    } // clear( int, int, int, int, int )
+
+    /**
+     * Returns this rasterizer's mesh for placing a batch's instances into. It
+     * is kept by the batch's geometry, which every copy of the batch shares,
+     * so a new copy of the scene each frame reuses the same mesh.
+     *
+     * @param batch The batch.
+     * @return The mesh.
+     */
+    Mesh instanceMesh(InstanceBatch batch) {
+        return this.instanceMeshes.computeIfAbsent(batch.getGeometry(),
+                key -> batch.newInstanceMesh());
+    } // instanceMesh( InstanceBatch )
+
+    /**
+     * Finds the faces of a mesh to draw, skipping back faces when culling,
+     * lights the whole mesh, every face or every vertex, in one batch, and
+     * projects every vertex. Normals and culling, shading and projecting
+     * are timed separately, projecting as part of filling.
+     *
+     * @param camera Where the mesh is seen from.
+     * @param poly The mesh.
+     * @param cull True to skip back faces.
+     * @param colour The colour of the mesh.
+     * @return The number of faces to draw.
+     */
+    int shade(Camera camera, Mesh poly, boolean cull, int colour) {
+        long start = System.nanoTime();
+        int faceCount = poly.getFaceCount();
+        int vertexCount = poly.getVertexCount();
+        if (this.visible.length < faceCount) {
+            this.visible = new int[faceCount];
+            this.rgb = new int[faceCount];
+        }
+        if (this.face.length < poly.getMaxFaceSize()) {
+            this.face = new int[poly.getMaxFaceSize()];
+        }
+        if (this.screenX.length < vertexCount) {
+            this.screenX = new float[vertexCount];
+            this.screenY = new float[vertexCount];
+            this.screenZ = new float[vertexCount];
+            this.shade = new float[vertexCount];
+        }
+        if (this.intensity.length < Math.max(faceCount, vertexCount)) {
+            this.intensity = new float[Math.max(faceCount, vertexCount)];
+        }
+        this.colour = colour;
+
+        poly.updateNormals();
+        int count = 0;
+        for (int f = 0; f < faceCount; f++) {
+            if (!cull || !this.culler.isCulled(poly, f)) {
+                this.visible[count++] = f;
+            }
+        } // for
+        long normalsDone = System.nanoTime();
+
+        Lighting lighting = this.illumination.getLighting();
+        if (this.gouraud) {
+            poly.lightVertices(lighting, this.intensity);
+            for (int v = 0; v < vertexCount; v++) {
+                this.shade[v] = ShadeTable.index(this.intensity[v]);
+            } // for
+        } else {
+            poly.lightFaces(lighting, this.intensity);
+            for (int k = 0; k < count; k++) {
+                this.rgb[k] = this.illumination.getShadeARGB(
+                        this.intensity[this.visible[k]], colour);
+            } // for
+        }
+        long shadeDone = System.nanoTime();
+
+        camera.project(poly, this.screenX, this.screenY, this.screenZ);
+        this.metrics.add(FrameMetrics.Phase.NORMALS, normalsDone - start);
+        this.metrics.add(FrameMetrics.Phase.SHADE, shadeDone - normalsDone);
+        this.metrics.add(FrameMetrics.Phase.FILL,
+                System.nanoTime() - shadeDone);
+        return count;
+    } // shade( Camera, Mesh, boolean, int )
+
+    /**
+     * Returns the number of corners of one of the faces shade found, and
+     * makes them the ones corner gives.
+     *
+     * @param poly The mesh last shaded.
+     * @param j The face, from 0 up to the count shade returned.
+     * @return The number of corners, or 0 if any corner is nearer than the
+     * camera's near plane and the face is not to be drawn.
+     */
+    int corners(Mesh poly, int j) {
+        int n = poly.getFaceVertices(this.visible[j], this.face);
+        for (int c = 0; c < n; c++) {
+            if (this.screenZ[this.face[c]] < -1f) {
+                return 0;
+            }
+        } // for
+        return n;
+    } // corners( Mesh, int )
+
+    /**
+     * Returns a corner of the face corners last gave.
+     *
+     * @param c The corner.
+     * @return The vertex at that corner.
+     */
+    int corner(int c) {
+        return this.face[c];
+    } // corner( int )
+
+    /**
+     * Returns the colour to fill one of the faces shade found with: its flat
+     * shade, or with Gouraud shading the mesh's colour, to be shaded.
+     *
+     * @param j The face, from 0 up to the count shade returned.
+     * @return The colour.
+     */
+    int colour(int j) {
+        return this.gouraud ? this.colour : this.rgb[j];
+    } // colour( int )
+
+    /**
+     * Returns the projected x of a vertex of the mesh last shaded.
+     *
+     * @param v The vertex.
+     * @return The column, in pixels.
+     */
+    float getScreenX(int v) {
+        return this.screenX[v];
+    } // getScreenX( int )
+
+    /**
+     * Returns the projected y of a vertex of the mesh last shaded.
+     *
+     * @param v The vertex.
+     * @return The row, in pixels.
+     */
+    float getScreenY(int v) {
+        return this.screenY[v];
+    } // getScreenY( int )
+
+    /**
+     * Returns the projected depth of a vertex of the mesh last shaded.
+     *
+     * @param v The vertex.
+     * @return The depth, smaller being nearer.
+     */
+    float getScreenZ(int v) {
+        return this.screenZ[v];
+    } // getScreenZ( int )
+
+    /**
+     * Returns the shade index of a vertex of the mesh last shaded, with
+     * Gouraud shading.
+     *
+     * @param v The vertex.
+     * @return The shade index.
+     */
+    float getShade(int v) {
+        return this.shade[v];
+    } // getShade( int )
+
+    /**
+     * Fills a triangle of vertices of the mesh last shaded.
+     *
+     * @param a The vertex at the first corner.
+     * @param b The vertex at the second corner.
+     * @param c The vertex at the third corner.
+     * @param rgb The colour to fill with, or with Gouraud shading the
+     * colour to shade.
+     * @param left The first column to fill.
+     * @param top The first row to fill.
+     * @param right The last column to fill.
+     * @param bottom The last row to fill.
+     */
+    void fillTriangle(int a, int b, int c, int rgb, int left, int top,
+            int right, int bottom) {
+        gather(0, a);
+        gather(1, b);
+        gather(2, c);
+        fillTriangle(this.corners, 0, this.cornerShades, 0, rgb, left, top,
+                right, bottom);
+    } // fillTriangle( int, int, int, int, int, int, int, int )
+
+    /**
+     * Copies a projected vertex into a corner of the triangle fillTriangle
+     * is given.
+     */
+    private void gather(int k, int v) {
+        this.corners[3 * k] = this.screenX[v];
+        this.corners[3 * k + 1] = this.screenY[v];
+        this.corners[3 * k + 2] = this.screenZ[v];
+        this.cornerShades[k] = this.shade[v];
+    } // gather( int, int )
+
+    /**
+     * Fills the part of a triangle of projected points inside some bounds,
+     * depth testing each pixel whose centre lies inside it. With Gouraud
+     * shading the shade indices of the corners are blended the same way as
+     * the depth. Edge-on triangles are skipped.
+     *
+     * @param triangles The x, y and z of the corners.
+     * @param base Where the triangle starts in triangles.
+     * @param shades The shade indices of the corners, read only with
+     * Gouraud shading.
+     * @param shadeBase Where the triangle starts in shades.
+     * @param rgb The colour to fill with, or with Gouraud shading the
+     * colour to shade.
+     * @param left The first column to fill.
+     * @param top The first row to fill.
+     * @param right The last column to fill.
+     * @param bottom The last row to fill.
+     */
+    void fillTriangle(float[] triangles, int base, float[] shades,
+            int shadeBase, int rgb, int left, int top, int right,
+            int bottom) {
+        // Snap the corners to the sub-pixel grid. Every edge function value
+        // below is then a multiple of 1 / SUBPIXELS squared that a double
+        // holds exactly, for corners within millions of pixels of the panel,
+        // so stepping adds no rounding and a pixel gets the same depth, shade
+        // and coverage whatever tile or clip it is drawn in.
+        double x0 = snap(triangles[base]), y0 = snap(triangles[base + 1]);
+        float z0 = triangles[base + 2];
+        double x1 = snap(triangles[base + 3]), y1 = snap(triangles[base + 4]);
+        float z1 = triangles[base + 5];
+        double x2 = snap(triangles[base + 6]), y2 = snap(triangles[base + 7]);
+        float z2 = triangles[base + 8];
+        boolean smooth = this.gouraud;
+        float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f;
+        if (smooth) {
+            s0 = shades[shadeBase];
+            s1 = shades[shadeBase + 1];
+            s2 = shades[shadeBase + 2];
+        }
+
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0.0) {
+            return;
+        }
+        // Make the edge functions positive inside whatever the winding.
+        double sign = area > 0.0 ? 1.0 : -1.0;
+        double inverseArea = 1.0 / (area * sign);
+
+        int minX = Math.max(left,
+                (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(right,
+                (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(top,
+                (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(bottom,
+                (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Each edge function e(p) = (b - a) x (p - a) steps by a constant in
+        // x and in y.
+        double stepX0 = -(y2 - y1) * sign, stepY0 = (x2 - x1) * sign;
+        double stepX1 = -(y0 - y2) * sign, stepY1 = (x0 - x2) * sign;
+        double stepX2 = -(y1 - y0) * sign, stepY2 = (x1 - x0) * sign;
+        double px = minX + 0.5;
+        double py = minY + 0.5;
+        double row0 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * sign;
+        double row1 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * sign;
+        double row2 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * sign;
+
+        for (int y = minY; y <= maxY; y++) {
+            double e0 = row0;
+            double e1 = row1;
+            double e2 = row2;
+            int index = y * this.width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if (e0 >= 0.0 && e1 >= 0.0 && e2 >= 0.0) {
+                    float z = (float) ((e0 * z0 + e1 * z1 + e2 * z2)
+                            * inverseArea);
+                    if (z < this.depth[index]) {
+                        this.depth[index] = z;
+                        if (smooth) {
+                            int level = (int) ((e0 * s0 + e1 * s1 + e2 * s2)
+                                    * inverseArea + 0.5);
+                            this.pixels[index] = ShadeTable.shade(rgb,
+                                    Math.min(ShadeTable.SHADES - 1, level));
+                        } else {
+                            this.pixels[index] = rgb;
+                        }
+                    }
+                }
+                e0 += stepX0;
+                e1 += stepX1;
+                e2 += stepX2;
+            } // for x
+            row0 += stepY0;
+            row1 += stepY1;
+            row2 += stepY2;
+        } // for y
+    } // fillTriangle( float [], int, float [], int, int, int, int, int, int )
+
+    /**
+     * Rounds a projected coordinate to the nearest step of the sub-pixel
+     * grid.
+     */
+    private static double snap(float coordinate) {
+        return Math.rint(coordinate * SUBPIXELS) / SUBPIXELS;
+    } // snap( float )
+
+} // Rasterizer
@@ -0,0 +1,46 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * A way of drawing a Scene onto a Graphics2D. SwingPanel holds one renderer
+ * at a time and can be switched between them.
+ *
+ * Only the part of the area inside the Graphics2D's clip need be drawn, and
+ * when SwingPanel repaints just the regions that changed, renderers cull,
+ * clear and fill only there, so a small shape on a large panel costs little.
+ *
+ * @author marcus
+ */
+public interface Renderer {
+
+    /**
+     * Draws every object in a scene.
+     *
+     * @param g2D The graphics to draw on.
+     * @param camera Where the scene is seen from and how it is projected.
+     * @param scene The objects to draw.
+     * @param background The colour behind the objects.
+     * @param width The width of the area to draw, in pixels.
+     * @param height The height of the area to draw, in pixels.
+     */
+    void render(Graphics2D g2D, Camera camera, Scene scene,
+            Color background, int width, int height);
+
+    /**
+     * Returns the part of the area to draw that is inside a graphics' clip.
+     *
+     * @param g2D The graphics to draw on.
+     * @param width The width of the area to draw, in pixels.
+     * @param height The height of the area to draw, in pixels.
+     * @return The clipped area, empty if nothing in it is drawn.
+     */
+    static Rectangle clipBounds(Graphics2D g2D, int width, int height) {
+        Rectangle area = new Rectangle(0, 0, width, height);
+        Rectangle clip = g2D.getClipBounds();
+        return clip == null ? area : area.intersection(clip);
+    } // clipBounds( Graphics2D, int, int )
+
+} // Renderer
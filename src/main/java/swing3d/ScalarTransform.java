@@ -0,0 +1,77 @@
+package swing3d;
+
+/**
+ * The BulkTransform that runs on any JVM: one vertex at a time, the same
+ * loop Mesh.transform uses. VectorTransform also uses it for the vertices
+ * left over after its last full vector.
+ *
+ * @author marcus
+ */
+public class ScalarTransform implements BulkTransform {
+
+    @Override
+    public void transform(double[] m, int offset,
+            double[] x, double[] y, double[] z, double[] w,
+            double[] toX, double[] toY, double[] toZ, double[] toW, int count) {
+        transform(m, offset, x, y, z, w, toX, toY, toZ, toW, 0, count);
+    } // transform( double [], int, double [] ... , int )
+
+    @Override
+    public void transform(float[] m, int offset,
+            float[] x, float[] y, float[] z, float[] w,
+            float[] toX, float[] toY, float[] toZ, float[] toW, int count) {
+        transform(m, offset, x, y, z, w, toX, toY, toZ, toW, 0, count);
+    } // transform( float [], int, float [] ... , int )
+
+    @Override
+    public String getName() {
+        return "scalar";
+    } // getName()
+
+    /**
+     * Transforms the double precision vertices from one index up to, but not
+     * including, another.
+     */
+    static void transform(double[] m, int offset,
+            double[] x, double[] y, double[] z, double[] w,
+            double[] toX, double[] toY, double[] toZ, double[] toW,
+            int from, int to) {
+        double m00 = m[offset], m01 = m[offset + 1], m02 = m[offset + 2], m03 = m[offset + 3];
+        double m10 = m[offset + 4], m11 = m[offset + 5], m12 = m[offset + 6], m13 = m[offset + 7];
+        double m20 = m[offset + 8], m21 = m[offset + 9], m22 = m[offset + 10], m23 = m[offset + 11];
+        for (int i = from; i < to; i++) {
+            double vx = x[i];
+            double vy = y[i];
+            double vz = z[i];
+            double vw = w[i];
+            toX[i] = m00 * vx + m01 * vy + m02 * vz + m03 * vw;
+            toY[i] = m10 * vx + m11 * vy + m12 * vz + m13 * vw;
+            toZ[i] = m20 * vx + m21 * vy + m22 * vz + m23 * vw;
+            toW[i] = vw;
+        } // for
+    } // transform( double [], int, double [] ... , int, int )
+
+    /**
+     * Transforms the single precision vertices from one index up to, but not
+     * including, another.
+     */
+    static void transform(float[] m, int offset,
+            float[] x, float[] y, float[] z, float[] w,
+            float[] toX, float[] toY, float[] toZ, float[] toW,
+            int from, int to) {
+        float m00 = m[offset], m01 = m[offset + 1], m02 = m[offset + 2], m03 = m[offset + 3];
+        float m10 = m[offset + 4], m11 = m[offset + 5], m12 = m[offset + 6], m13 = m[offset + 7];
+        float m20 = m[offset + 8], m21 = m[offset + 9], m22 = m[offset + 10], m23 = m[offset + 11];
+        for (int i = from; i < to; i++) {
+            float vx = x[i];
+            float vy = y[i];
+            float vz = z[i];
+            float vw = w[i];
+            toX[i] = m00 * vx + m01 * vy + m02 * vz + m03 * vw;
+            toY[i] = m10 * vx + m11 * vy + m12 * vz + m13 * vw;
+            toZ[i] = m20 * vx + m21 * vy + m22 * vz + m23 * vw;
+            toW[i] = vw;
+        } // for
+    } // transform( float [], int, float [] ... , int, int )
+
+} // ScalarTransform
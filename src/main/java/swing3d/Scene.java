@@ -0,0 +1,526 @@
+package swing3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A collection of Mesh objects, each a rest pose that is never changed and a
+ * Motion that says where the rest pose is at any frame.
+ *
+ * The per-frame update steps every object's motion and places its rest pose
+ * by it, so rounding does not build up in the vertices from frame to frame,
+ * and setFrame poses any frame directly in constant time per object. Objects
+ * are independent of each other, so once there are enough of them the update
+ * is spread across cores with a parallel stream. After updating, depthOrder
+ * gives the order to draw the objects in, back to front from a camera.
+ *
+ * Each object also carries a flag saying whether renderers should cull its
+ * back faces. It is on by default.
+ *
+ * An object may be added as a LevelOfDetail, several rest poses of the same
+ * shape with fewer and fewer faces. The scene poses only the finest, and
+ * renderers ask a DetailSelector which level to draw it at.
+ *
+ * A scene can also hold instance batches, many copies of one mesh that are
+ * each just a pose and a colour. They are updated, copied and posed along
+ * with the objects, and renderers draw them after the objects.
+ *
+ * Before drawing, renderers call cullToView, which finds the objects and
+ * instances whose bounding boxes are in a camera's view. Every object and
+ * every instance is a leaf of a bounding volume hierarchy that is refit each
+ * frame, so whole groups of them outside the view are rejected with one box
+ * test and no face of them is ever looked at. Renderers then draw only the
+ * visible ones, in index order.
+ *
+ * @author marcus
+ */
+public class Scene {
+
+    // Below this many objects the update runs on the calling thread, since
+    // splitting the work costs more than it saves.
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    private final List<Mesh> objects = new ArrayList<>();
+    private final List<Mesh> rests = new ArrayList<>();
+    private final List<Motion> motions = new ArrayList<>();
+    private final List<Boolean> culling = new ArrayList<>();
+    private final List<LevelOfDetail> details = new ArrayList<>();
+    private final List<InstanceBatch> batches = new ArrayList<>();
+    private double[] depths = new double[0];
+    private int[] order = new int[0];
+    private int[] sortScratch = new int[0];
+    private final BoundingVolumeHierarchy hierarchy
+            = new BoundingVolumeHierarchy();
+    private final double[] box = new double[6];
+    private final double[] planes = new double[24];
+    private int[] hits = new int[0];
+    private int[] visible = new int[0];
+    private int visibleCount = 0;
+    private int[][] visibleInstances = new int[0][];
+    private int[] visibleInstanceCounts = new int[0];
+    private int culledCount = 0;
+
+    /**
+     * Creates an empty scene.
+     */
+    public Scene() {
+    } // Scene()
+
+    /**
+     * Creates a copy of another scene. Every object and motion is copied and
+     * the rest poses are shared, so the two scenes can be updated
+     * independently.
+     *
+     * @param other The scene to copy.
+     */
+    public Scene(Scene other) {
+        for (int i = 0; i < other.size(); i++) {
+            this.add(other.getRest(i), new Motion(other.getMotion(i)));
+            this.culling.set(i, other.isCulling(i));
+            this.details.set(i, other.getLevelOfDetail(i));
+        } // for
+        for (int b = 0; b < other.getBatchCount(); b++) {
+            this.add(new InstanceBatch(other.getBatch(b)));
+        } // for
+    } // Scene( Scene )
+
+    /**
+     * Copies the state of another scene with the same objects into this one,
+     * without allocating.
+     *
+     * @param other The scene to copy from.
+     */
+    public void copyFrom(Scene other) {
+        for (int i = 0; i < this.objects.size(); i++) {
+            this.objects.get(i).copyFrom(other.get(i));
+            this.motions.get(i).copyFrom(other.getMotion(i));
+            this.culling.set(i, other.isCulling(i));
+        } // for
+        for (int b = 0; b < this.batches.size(); b++) {
+            this.batches.get(b).copyFrom(other.getBatch(b));
+        } // for
+    } // copyFrom( Scene )
+
+    /**
+     * Adds an object, posed by its motion's current pose.
+     *
+     * @param rest The object's rest pose. It is kept, not copied, and must
+     * not be changed while the scene is in use.
+     * @param motion How the object moves. It is kept, not copied.
+     */
+    public void add(Mesh rest, Motion motion) {
+        Mesh poly = rest.copy();
+        motion.place(rest, poly);
+        this.objects.add(poly);
+        this.rests.add(rest);
+        this.motions.add(motion);
+        this.culling.add(true);
+        this.details.add(null);
+        showAll();
+    } // add( Mesh, Motion )
+
+    /**
+     * Adds an object with several levels of detail, posed by its motion's
+     * current pose. get returns its finest level.
+     *
+     * @param lod The object's levels of detail. They are kept, not copied,
+     * and must not be changed while the scene is in use.
+     * @param motion How the object moves. It is kept, not copied.
+     */
+    public void add(LevelOfDetail lod, Motion motion) {
+        this.add(lod.getLevel(0), motion);
+        this.details.set(this.details.size() - 1, lod);
+    } // add( LevelOfDetail, Motion )
+
+    /**
+     * Adds an object at a position that spins about that position rather
+     * than about the origin.
+     *
+     * @param poly The object's rest pose, centred on the origin. It is kept,
+     * not copied.
+     * @param spinner The rotation to apply every frame.
+     * @param x The x position of the object.
+     * @param y The y position of the object.
+     * @param z The z position of the object.
+     */
+    public void add(Mesh poly, Matrix4X4 spinner, double x, double y,
+            double z) {
+        this.add(poly, new Motion(spinner, x, y, z));
+    } // add( Mesh, Matrix4X4, double, double, double )
+
+    /**
+     * Adds a batch of instances.
+     *
+     * @param batch The batch to add.
+     */
+    public void add(InstanceBatch batch) {
+        this.batches.add(batch);
+        showAll();
+    } // add( InstanceBatch )
+
+    /**
+     * Returns the number of instance batches in the scene.
+     *
+     * @return The number of batches.
+     */
+    public int getBatchCount() {
+        return this.batches.size();
+    } // getBatchCount()
+
+    /**
+     * Returns an instance batch.
+     *
+     * @param b The index of the batch.
+     * @return The batch.
+     */
+    public InstanceBatch getBatch(int b) {
+        return this.batches.get(b);
+    } // getBatch( int )
+
+    /**
+     * Returns the number of objects in the scene.
+     *
+     * @return The number of objects.
+     */
+    public int size() {
+        return this.objects.size();
+    } // size()
+
+    /**
+     * Returns an object in the scene.
+     *
+     * @param i The index of the object.
+     * @return The object.
+     */
+    public Mesh get(int i) {
+        return this.objects.get(i);
+    } // get( int )
+
+    /**
+     * Returns the rest pose of an object.
+     *
+     * @param i The index of the object.
+     * @return The object's rest pose.
+     */
+    public Mesh getRest(int i) {
+        return this.rests.get(i);
+    } // getRest( int )
+
+    /**
+     * Returns the motion of an object.
+     *
+     * @param i The index of the object.
+     * @return The object's motion.
+     */
+    public Motion getMotion(int i) {
+        return this.motions.get(i);
+    } // getMotion( int )
+
+    /**
+     * Returns the levels of detail of an object.
+     *
+     * @param i The index of the object.
+     * @return The object's levels of detail, or null if it only has one.
+     */
+    public LevelOfDetail getLevelOfDetail(int i) {
+        return this.details.get(i);
+    } // getLevelOfDetail( int )
+
+    /**
+     * Returns whether an object's back faces are culled.
+     *
+     * @param i The index of the object.
+     * @return True if its back faces are culled.
+     */
+    public boolean isCulling(int i) {
+        return this.culling.get(i);
+    } // isCulling( int )
+
+    /**
+     * Sets whether an object's back faces are culled.
+     *
+     * @param i The index of the object.
+     * @param cull True to cull its back faces.
+     */
+    public void setCulling(int i, boolean cull) {
+        this.culling.set(i, cull);
+    } // setCulling( int, boolean )
+
+    /**
+     * Sets this scene to where a scene would be after a number of updates,
+     * without running them one by one. Each object's motion is set straight
+     * to the frame, in constant time, and its rest pose placed once. This
+     * scene must have been copied from the starting scene.
+     *
+     * @param start The scene at frame 0.
+     * @param frame The number of updates.
+     */
+    public void setFrame(Scene start, long frame) {
+        for (int i = 0; i < this.objects.size(); i++) {
+            Motion motion = this.motions.get(i);
+            motion.copyFrom(start.getMotion(i));
+            motion.setTime(frame);
+            motion.place(this.rests.get(i), this.objects.get(i));
+        } // for
+        for (int b = 0; b < this.batches.size(); b++) {
+            this.batches.get(b).setFrame(start.getBatch(b), frame);
+        } // for
+    } // setFrame( Scene, long )
+
+    /**
+     * Steps every object's motion and places it, and moves every instance by
+     * its motion. With PARALLEL_THRESHOLD or more objects the work is split
+     * over the common fork/join pool.
+     */
+    public void update() {
+        int n = this.objects.size();
+        if (n < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < n; i++) {
+                step(i);
+            } // for
+        } // if
+        else {
+            IntStream.range(0, n).parallel().forEach(this::step);
+        } // else
+        for (InstanceBatch batch : this.batches) {
+            batch.update();
+        } // for
+    } // update()
+
+    /**
+     * Steps one object's motion and places its rest pose by it.
+     */
+    private void step(int i) {
+        Motion motion = this.motions.get(i);
+        motion.step();
+        motion.place(this.rests.get(i), this.objects.get(i));
+    } // step( int )
+
+    /**
+     * Finds the objects and instances a camera can see on a panel, those
+     * whose bounding boxes are not wholly outside the camera's frustum. The
+     * results are read with getVisible and getVisibleInstance until the next
+     * call.
+     *
+     * @param camera The camera the scene is drawn from.
+     * @param width The width of the panel.
+     * @param height The height of the panel.
+     */
+    public void cullToView(Camera camera, int width, int height) {
+        cullToView(camera, 0, 0, width, height);
+    } // cullToView( Camera, int, int )
+
+    /**
+     * Finds the objects and instances a camera can see in a rectangle of a
+     * panel, such as the part being repainted, as cullToView does for the
+     * whole panel.
+     *
+     * @param camera The camera the scene is drawn from.
+     * @param minX The left edge of the rectangle in pixels.
+     * @param minY The top edge of the rectangle in pixels.
+     * @param maxX The right edge of the rectangle in pixels.
+     * @param maxY The bottom edge of the rectangle in pixels.
+     */
+    public void cullToView(Camera camera, double minX, double minY,
+            double maxX, double maxY) {
+        camera.getFrustumPlanes(minX, minY, maxX, maxY, this.planes);
+
+        int n = this.objects.size();
+        int leaves = n;
+        for (InstanceBatch batch : this.batches) {
+            leaves += batch.size();
+        } // for
+        this.hierarchy.setLeafCount(leaves);
+        for (int i = 0; i < n; i++) {
+            Mesh poly = this.objects.get(i);
+            this.hierarchy.setLeaf(i, poly.getMinX(), poly.getMinY(),
+                    poly.getMinZ(), poly.getMaxX(), poly.getMaxY(),
+                    poly.getMaxZ());
+        } // for
+        int leaf = n;
+        for (InstanceBatch batch : this.batches) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.getBounds(i, this.box);
+                this.hierarchy.setLeaf(leaf++, this.box[0], this.box[1],
+                        this.box[2], this.box[3], this.box[4], this.box[5]);
+            } // for
+        } // for
+        this.hierarchy.refit();
+
+        if (this.hits.length < leaves) {
+            this.hits = new int[leaves];
+        }
+        int found = this.hierarchy.query(this.planes, 6, this.hits);
+        // Leaves come out in tree order; put them back in index order so
+        // what is drawn does not depend on the shape of the tree.
+        Arrays.sort(this.hits, 0, found);
+
+        ensureVisible();
+        int k = 0;
+        this.visibleCount = 0;
+        while (k < found && this.hits[k] < n) {
+            this.visible[this.visibleCount++] = this.hits[k++];
+        } // while
+        int first = n;
+        for (int b = 0; b < this.batches.size(); b++) {
+            int end = first + this.batches.get(b).size();
+            int count = 0;
+            while (k < found && this.hits[k] < end) {
+                this.visibleInstances[b][count++] = this.hits[k++] - first;
+            } // while
+            this.visibleInstanceCounts[b] = count;
+            first = end;
+        } // for
+        this.culledCount = leaves - found;
+    } // cullToView( Camera, double, double, double, double )
+
+    /**
+     * Marks every object and instance visible, as they are until cullToView
+     * is first called.
+     */
+    private void showAll() {
+        ensureVisible();
+        this.visibleCount = this.objects.size();
+        for (int i = 0; i < this.visibleCount; i++) {
+            this.visible[i] = i;
+        } // for
+        for (int b = 0; b < this.batches.size(); b++) {
+            int count = this.batches.get(b).size();
+            for (int i = 0; i < count; i++) {
+                this.visibleInstances[b][i] = i;
+            } // for
+            this.visibleInstanceCounts[b] = count;
+        } // for
+        this.culledCount = 0;
+    } // showAll()
+
+    /**
+     * Makes sure the visible lists can hold every object and instance.
+     */
+    private void ensureVisible() {
+        if (this.visible.length < this.objects.size()) {
+            this.visible = new int[this.objects.size()];
+        }
+        int batchCount = this.batches.size();
+        if (this.visibleInstances.length < batchCount) {
+            this.visibleInstances = Arrays.copyOf(this.visibleInstances,
+                    batchCount);
+            this.visibleInstanceCounts = Arrays.copyOf(
+                    this.visibleInstanceCounts, batchCount);
+        } // if
+        for (int b = 0; b < batchCount; b++) {
+            int size = this.batches.get(b).size();
+            if (this.visibleInstances[b] == null
+                    || this.visibleInstances[b].length < size) {
+                this.visibleInstances[b] = new int[size];
+            }
+        } // for
+    } // ensureVisible()
+
+    /**
+     * Returns the number of objects found in view by the last cullToView.
+     *
+     * @return The number of visible objects.
+     */
+    public int getVisibleCount() {
+        return this.visibleCount;
+    } // getVisibleCount()
+
+    /**
+     * Returns a visible object. The visible objects are in index order.
+     *
+     * @param k Which visible object, from 0 to getVisibleCount() - 1.
+     * @return The index of the object.
+     */
+    public int getVisible(int k) {
+        return this.visible[k];
+    } // getVisible( int )
+
+    /**
+     * Returns the number of a batch's instances found in view by the last
+     * cullToView.
+     *
+     * @param b The index of the batch.
+     * @return The number of visible instances.
+     */
+    public int getVisibleInstanceCount(int b) {
+        return this.visibleInstanceCounts[b];
+    } // getVisibleInstanceCount( int )
+
+    /**
+     * Returns the visible instances of a batch, in index order. The array is
+     * reused by the next cullToView.
+     *
+     * @param b The index of the batch.
+     * @return The instances. Only the first getVisibleInstanceCount(b)
+     * elements are meaningful.
+     */
+    public int[] getVisibleInstances(int b) {
+        return this.visibleInstances[b];
+    } // getVisibleInstances( int )
+
+    /**
+     * Returns a visible instance of a batch.
+     *
+     * @param b The index of the batch.
+     * @param k Which visible instance, from 0 to
+     * getVisibleInstanceCount(b) - 1.
+     * @return The index of the instance in its batch.
+     */
+    public int getVisibleInstance(int b, int k) {
+        return this.visibleInstances[b][k];
+    } // getVisibleInstance( int, int )
+
+    /**
+     * Returns how many objects and instances the last cullToView left out.
+     *
+     * @return The number culled.
+     */
+    public int getCulledCount() {
+        return this.culledCount;
+    } // getCulledCount()
+
+    /**
+     * Returns how many objects and instances the scene holds.
+     *
+     * @return The number of objects plus the number of instances.
+     */
+    public int getTotalCount() {
+        int total = this.objects.size();
+        for (InstanceBatch batch : this.batches) {
+            total += batch.size();
+        } // for
+        return total;
+    } // getTotalCount()
+
+    /**
+     * Returns the indices of the visible objects in drawing order, from the
+     * centre furthest from a camera to the nearest. The returned array is
+     * reused by the next call.
+     *
+     * @param camera The camera the scene is drawn from.
+     * @return The object indices, back to front. Only the first
+     * getVisibleCount() elements are meaningful.
+     */
+    public int[] depthOrder(Camera camera) {
+        int n = this.visibleCount;
+        if (this.depths.length < n) {
+            this.depths = new double[n];
+            this.order = new int[n];
+            this.sortScratch = new int[n];
+        } // if
+        for (int k = 0; k < n; k++) {
+            Mesh poly = this.objects.get(this.visible[k]);
+            this.depths[k] = camera.getDepth(poly.getSphereX(),
+                    poly.getSphereY(), poly.getSphereZ());
+        } // for
+        MergeSort.argsort(this.depths, n, this.order, this.sortScratch, true);
+        for (int k = 0; k < n; k++) {
+            this.order[k] = this.visible[this.order[k]];
+        } // for
+        return this.order;
+    } // depthOrder( Camera )
+
+} // Scene
@@ -0,0 +1,190 @@
+package swing3d;
+
+import java.awt.Color;
+
+/**
+ * The shades of one material colour, from black up to the full colour, worked
+ * out once so shading a face is a table lookup instead of three multiplies
+ * and, for Graphics2D, a new Color.
+ *
+ * A light intensity between 0 and 1 is mapped to one of SHADES indices by
+ * index, and the shade at that index is the colour with each channel scaled
+ * by index / (SHADES - 1). The shades are kept both as packed ARGB ints,
+ * opaque, for renderers that write pixels directly, and as Colors for
+ * Graphics2D.
+ *
+ * The table is only rebuilt when setColour is given a different colour. A
+ * rebuild fills new arrays and then publishes them, with the colour, through
+ * one volatile reference, and the arrays are never changed once published,
+ * so renderers on several threads can share the table while another thread
+ * changes its colour. Each call sees either the old colour's shades or the
+ * new one's, never a mixture.
+ *
+ * @author marcus
+ */
+public final class ShadeTable {
+
+    /**
+     * The number of shades in a table.
+     */
+    public static final int SHADES = 256;
+
+    private volatile Shades current;
+
+    /**
+     * Creates the table for a colour.
+     *
+     * @param colour The full colour, lit head on.
+     */
+    public ShadeTable(Color colour) {
+        this.rebuild(colour);
+    } // ShadeTable( Color )
+
+    /**
+     * Returns the full colour.
+     *
+     * @return The colour.
+     */
+    public Color getColour() {
+        return this.current.colour;
+    } // getColour()
+
+    /**
+     * Returns the full colour as packed RGB.
+     *
+     * @return The colour, as 0xRRGGBB.
+     */
+    public int getRGB() {
+        return this.current.rgb;
+    } // getRGB()
+
+    /**
+     * Changes the colour, rebuilding the table if it is different.
+     *
+     * @param colour The new full colour.
+     */
+    public void setColour(Color colour) {
+        Shades old = this.current;
+        if ((colour.getRGB() & 0xFFFFFF) != old.rgb) {
+            this.rebuild(colour);
+        } else {
+            this.current = new Shades(colour, old.rgb, old.shades,
+                    old.colours);
+        }
+    } // setColour( Color )
+
+    /**
+     * Returns a shade as packed ARGB.
+     *
+     * @param index The index of the shade, from index.
+     * @return The shade, as 0xFFRRGGBB.
+     */
+    public int getShade(int index) {
+        return this.current.shades[index];
+    } // getShade( int )
+
+    /**
+     * Returns a shade of a colour as packed ARGB: from the table if the
+     * colour is the table's, otherwise worked out as shade does. The
+     * table's colour is only read once, so the shade is of the colour asked
+     * for even while another thread changes it.
+     *
+     * @param rgb The full colour, as 0xRRGGBB.
+     * @param index The index of the shade, from index.
+     * @return The shade, as 0xFFRRGGBB.
+     */
+    public int getShade(int rgb, int index) {
+        Shades table = this.current;
+        return rgb == table.rgb ? table.shades[index] : shade(rgb, index);
+    } // getShade( int, int )
+
+    /**
+     * Returns a shade as a Color. The same Color is returned every time for
+     * the same index, until the colour changes.
+     *
+     * @param index The index of the shade, from index.
+     * @return The shade.
+     */
+    public Color getShadeColour(int index) {
+        return this.current.colours[index];
+    } // getShadeColour( int )
+
+    /**
+     * Returns a shade of a colour as a Color if the colour is the table's,
+     * reading the table's colour only once, as getShade( int, int ) does.
+     *
+     * @param rgb The full colour, as 0xRRGGBB.
+     * @param index The index of the shade, from index.
+     * @return The shade, or null if the colour is not the table's.
+     */
+    public Color getShadeColour(int rgb, int index) {
+        Shades table = this.current;
+        return rgb == table.rgb ? table.colours[index] : null;
+    } // getShadeColour( int, int )
+
+    /**
+     * Maps a light intensity to the index of its shade. Intensities below 0
+     * are taken as 0 and those above 1 as 1.
+     *
+     * @param intensity The light intensity.
+     * @return The index, from 0 to SHADES - 1.
+     */
+    public static int index(double intensity) {
+        if (intensity <= 0.0) {
+            return 0;
+        } else if (intensity >= 1.0) {
+            return SHADES - 1;
+        }
+        return (int) (intensity * (SHADES - 1) + 0.5);
+    } // index( double )
+
+    /**
+     * Works out a shade of any colour without a table, the same as a table
+     * of that colour would hold, for when there are too many colours to keep
+     * a table for each, as with one per instance.
+     *
+     * @param rgb The full colour, as 0xRRGGBB.
+     * @param index The index of the shade, from index.
+     * @return The shade, as 0xFFRRGGBB.
+     */
+    public static int shade(int rgb, int index) {
+        return 0xFF000000
+                | (((rgb >> 16) & 0xFF) * index / (SHADES - 1)) << 16
+                | (((rgb >> 8) & 0xFF) * index / (SHADES - 1)) << 8
+                | (rgb & 0xFF) * index / (SHADES - 1);
+    } // shade( int, int )
+
+    /**
+     * Works out the shades of a colour into new arrays and publishes them.
+     */
+    private void rebuild(Color colour) {
+        int rgb = colour.getRGB() & 0xFFFFFF;
+        int[] shades = new int[SHADES];
+        Color[] colours = new Color[SHADES];
+        for (int i = 0; i < SHADES; i++) {
+            shades[i] = shade(rgb, i);
+            colours[i] = new Color(shades[i]);
+        } // for
+        this.current = new Shades(colour, rgb, shades, colours);
+    } // rebuild( Color )
+
+    /**
+     * One colour's shades. Never changed once made.
+     */
+    private static final class Shades {
+
+        private final Color colour;
+        private final int rgb;
+        private final int[] shades;
+        private final Color[] colours;
+
+        private Shades(Color colour, int rgb, int[] shades, Color[] colours) {
+            this.colour = colour;
+            this.rgb = rgb;
+            this.shades = shades;
+            this.colours = colours;
+        } // Shades( Color, int, int [], Color [] )
+
+    } // Shades
+
+} // ShadeTable
@@ -0,0 +1,134 @@
+package swing3d;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the per-frame update of a Scene on its own thread, off the Swing Event
+ * Dispatch Thread, at a fixed tick rate.
+ *
+ * The loop measures real time and runs as many fixed-length ticks as have
+ * fallen due, so the scene moves at the same speed however fast it is drawn.
+ * After each batch of ticks the scene's vertices are copied into a triple
+ * buffer, and the drawing side reads the latest copy with latest(), without
+ * locks. The simulation's own scene is never touched by any other thread.
+ *
+ * @author marcus
+ */
+public class Simulation implements Runnable {
+
+    // If the loop falls this many ticks behind it drops the backlog rather
+    // than trying to catch up forever.
+    private static final int MAX_TICKS_PER_STEP = 5;
+
+    private final Scene scene;
+    private final TripleBuffer<Scene> snapshots;
+    private final FrameMetrics metrics;
+    private volatile long tickNanos;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Creates a simulation of a scene. The scene belongs to the simulation
+     * from now on; draw the scenes returned by latest() instead.
+     *
+     * @param scene The scene to update.
+     * @param tickRate The number of updates per second.
+     * @param metrics Where to record how long each update takes.
+     */
+    public Simulation(Scene scene, double tickRate, FrameMetrics metrics) {
+        this.scene = scene;
+        this.metrics = metrics;
+        this.snapshots = new TripleBuffer<>(new Scene(scene), new Scene(scene),
+                new Scene(scene));
+        this.setTickRate(tickRate);
+    } // Simulation( Scene, double, FrameMetrics )
+
+    /**
+     * Sets the number of updates per second.
+     *
+     * @param tickRate The number of updates per second.
+     */
+    public void setTickRate(double tickRate) {
+        this.tickNanos = (long) (1e9 / tickRate);
+    } // setTickRate( double )
+
+    /**
+     * Returns the number of updates per second.
+     *
+     * @return The number of updates per second.
+     */
+    public double getTickRate() {
+        return 1e9 / this.tickNanos;
+    } // getTickRate()
+
+    /**
+     * Returns a copy of the scene as of the most recent tick. It must only be
+     * called from one thread, normally the Event Dispatch Thread, and the copy
+     * stays unchanged until the next call.
+     *
+     * @return The latest published scene.
+     */
+    public Scene latest() {
+        return this.snapshots.acquire();
+    } // latest()
+
+    /**
+     * Starts the simulation thread.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        this.thread = new Thread(this, "Simulation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    } // start()
+
+    /**
+     * Stops the simulation thread and waits for it to finish.
+     */
+    public synchronized void stop() {
+        this.running = false;
+        if (this.thread != null) {
+            LockSupport.unpark(this.thread);
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+    } // stop()
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long behind = 0;
+        while (this.running) {
+            long now = System.nanoTime();
+            behind += now - previous;
+            previous = now;
+
+            long tick = this.tickNanos;
+            int ticks = 0;
+            while (behind >= tick && ticks < MAX_TICKS_PER_STEP) {
+                long start = System.nanoTime();
+                this.scene.update();
+                this.metrics.record(FrameMetrics.Phase.TRANSFORM,
+                        System.nanoTime() - start);
+                behind -= tick;
+                ticks++;
+            } // while
+            if (ticks == MAX_TICKS_PER_STEP) {
+                behind = 0;
+            }
+            if (ticks > 0) {
+                this.snapshots.getBack().copyFrom(this.scene);
+                this.snapshots.publish();
+            }
+            LockSupport.parkNanos(tick - behind);
+        } // while
+    } // run()
+
+} // Simulation
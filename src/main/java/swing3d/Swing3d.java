@@ -4,6 +4,9 @@ import java.awt.Color;
 import java.awt.Container;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -11,6 +14,7 @@ import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
 public class Swing3d extends JFrame implements ActionListener {
@@ -21,6 +25,7 @@ public class Swing3d extends JFrame implements ActionListener {
     private final int NUMBER_OF_COLOURS = 5;
     private final List<Color> palette = new ArrayList<>();
     private final List<Color> foregroundPalette = new ArrayList<>();
+    private final int RECORD_BUFFERS = 8;
     private final SwingPanel panel;
 
     public Swing3d() {
@@ -65,6 +70,47 @@ public class Swing3d extends JFrame implements ActionListener {
             foregroundColour.add(item);
         } // for
 
+        //A menu for choosing how the shapes are drawn.
+        String[] renderers = {SwingPanel.GRAPHICS2D, SwingPanel.ZBUFFER,
+            SwingPanel.TILED};
+        JMenu rendererMenu = new JMenu("Renderer");
+        menuBar.add(rendererMenu);
+        for (String name : renderers) {
+            JMenuItem item = new JMenuItem(name);
+            item.addActionListener(this);
+            item.setActionCommand("Renderer " + name);
+            rendererMenu.add(item);
+        } // for
+        for (Illumination.Shading shading : Illumination.Shading.values()) {
+            JMenuItem item = new JMenuItem(shading == Illumination.Shading.FLAT
+                    ? "Flat shading" : "Gouraud shading");
+            item.addActionListener(this);
+            item.setActionCommand("Shading " + shading);
+            rendererMenu.add(item);
+        } // for
+        JMenuItem detailItem = new JMenuItem("Level of detail");
+        detailItem.addActionListener(this);
+        detailItem.setActionCommand("Detail");
+        rendererMenu.add(detailItem);
+        JMenuItem coalesceItem = new JMenuItem("Coalesce repaints");
+        coalesceItem.addActionListener(this);
+        coalesceItem.setActionCommand("Coalesce");
+        rendererMenu.add(coalesceItem);
+        JMenuItem overlayItem = new JMenuItem("Timing overlay");
+        overlayItem.addActionListener(this);
+        overlayItem.setActionCommand("Overlay");
+        rendererMenu.add(overlayItem);
+
+        //A menu for recording the frames to a raw RGB file.
+        JMenu record = new JMenu("Record");
+        menuBar.add(record);
+        for (String label : new String[]{"Start recording", "Stop recording"}) {
+            JMenuItem item = new JMenuItem(label);
+            item.addActionListener(this);
+            item.setActionCommand(label);
+            record.add(item);
+        } // for
+
         
         this.setVisible(true);
     } // Swing3d()
@@ -97,10 +143,69 @@ public class Swing3d extends JFrame implements ActionListener {
             int index = Integer.parseInt(suffix);
             this.panel.setColour(foregroundPalette.get(index));
         } // if
+        else if (cmd.indexOf("Renderer") >= 0) {
+            String suffix = cmd.substring(8).trim();
+            this.panel.setRenderer(suffix);
+        } // if
+        else if (cmd.startsWith("Shading")) {
+            String suffix = cmd.substring(7).trim();
+            this.panel.setShading(Illumination.Shading.valueOf(suffix));
+        } // if
+        else if (cmd.equals("Detail")) {
+            this.panel.setLevelOfDetail(
+                    !this.panel.getDetailSelector().isEnabled());
+        } // if
+        else if (cmd.equals("Coalesce")) {
+            this.panel.setCoalescing(!this.panel.isCoalescing());
+        } // if
+        else if (cmd.equals("Overlay")) {
+            this.panel.setOverlay(!this.panel.isOverlay());
+        } // if
+        else if (cmd.equals("Start recording")) {
+            startRecording();
+        } // if
+        else if (cmd.equals("Stop recording")) {
+            stopRecording();
+        } // if
         
 
     } // actionPerformed( ActionEvent )
 
+    /**
+     * Starts recording the panel to swing3d-WIDTHxHEIGHT-TIME.rgb in the
+     * working directory.
+     */
+    private void startRecording() {
+        stopRecording();
+        int w = this.panel.getWidth();
+        int h = this.panel.getHeight();
+        Path file = Paths.get("swing3d-" + w + "x" + h + "-"
+                + System.currentTimeMillis() + ".rgb");
+        try {
+            this.panel.startExport(new FrameExporter(file,
+                    FrameExporter.Format.RAW_RGB, w, h, RECORD_BUFFERS));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Cannot record: "
+                    + e.getMessage());
+        }
+    } // startRecording()
+
+    /**
+     * Stops recording, if recording, and finishes writing the file.
+     */
+    private void stopRecording() {
+        FrameExporter exporter = this.panel.stopExport();
+        if (exporter == null) {
+            return;
+        }
+        try {
+            exporter.close();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Recording failed: "
+                    + e.getMessage());
+        }
+    } // stopRecording()
+
     public static void main(String[] args) {
         Swing3d swing = new Swing3d();
     } // main( String [] )
@@ -1,13 +1,13 @@
 package swing3d;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Shape;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.JPanel;
@@ -22,24 +22,141 @@ public class SwingPanel extends JPanel implements ActionListener {
     private double deltaY = Math.random() / 20;
     private double deltaAngle = 2 * Math.PI / 180;
     private double phase = 0.0;
-    private Shape shape;
 
-    private Color color = Color.red;
-    private List<Polygon3D> poly = new ArrayList<>();
+    private final Illumination illumination = new Illumination();
+    private final Scene scene;
+    private final Simulation simulation;
+    private final Timer timer;
+    //updates and repaints per second, one every 30 milliseconds
+    private final double TICK_RATE = 1000.0 / 30;
+    private final double RENDER_RATE = 1000.0 / 30;
     private int NUM_POLYGON = 1;
     private int NUM_SIDES = 6;
     private String TYPE = "normal";
-    private List<Matrix4X4> spinner = new ArrayList<>();
-
-    private Vector ILLUMINATION_VECTOR = new Vector(-1, -1, 0).normalise();
-    
-    int triggeredCounter = 0;
+    private boolean INSTANCED = false;
+
+    public static final String GRAPHICS2D = "Graphics2D";
+    public static final String ZBUFFER = "Z-buffer";
+    public static final String TILED = "Tiled";
+    private final BackFaceCuller culler = new BackFaceCuller();
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final String metricsName;
+    private final DetailSelector detail = new DetailSelector();
+    private final Graphics2DRenderer graphics2DRenderer
+            = new Graphics2DRenderer(illumination, culler, metrics, detail);
+    private final ZBufferRenderer zBufferRenderer
+            = new ZBufferRenderer(illumination, culler, metrics, detail);
+    private final TiledRenderer tiledRenderer
+            = new TiledRenderer(illumination, culler, metrics, detail);
+    private boolean overlay = false;
+    private Rectangle overlayBounds;
+    private final DirtyRegions dirtyRegions = new DirtyRegions();
+    private Scene current;
+    private boolean paintingRegions = false;
+    private int facesTested = 0;
+    private int facesCulled = 0;
+    private int objectsTested = 0;
+    private int objectsCulled = 0;
+    private int facesSaved = 0;
+    private List<String> frameCounts = new ArrayList<>();
+    private static final Font OVERLAY_FONT
+            = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+    private Renderer renderer = graphics2DRenderer;
+    private volatile FrameExporter exporter;
+    private BufferedImage exportImage;
+    private final Camera camera = new Camera();
+    private final Matrix4X4 rotation = new Matrix4X4();
+    private final Matrix4X4 view = new Matrix4X4();
 
     public SwingPanel() {
-        Timer timer = new Timer(30, this);
-        timer.start();
+        this.scene = INSTANCED
+                ? createInstancedScene(NUM_POLYGON, NUM_SIDES, TYPE)
+                : createScene(NUM_POLYGON, NUM_SIDES, TYPE);
+
+        //the scene is updated on its own thread; the timer only repaints
+        String name = "swing3d:type=FrameMetrics,name=SwingPanel"
+                + System.identityHashCode(this);
+        this.metricsName = this.metrics.register(name) ? name : null;
+        this.simulation = new Simulation(this.scene, TICK_RATE, this.metrics);
+        this.simulation.start();
+        this.timer = new Timer(delay(RENDER_RATE), this);
+        this.timer.start();
+    } // SwingPanel()
 
-        //create a spinner matrix
+    /**
+     * Stops the timer and the simulation thread and unregisters the frame
+     * metrics MBean. The panel no longer changes afterwards and should not
+     * be shown again.
+     */
+    public void dispose() {
+        this.timer.stop();
+        this.simulation.stop();
+        this.metrics.unregister();
+    } // dispose()
+
+    /**
+     * Builds the scene the panel shows: a number of polygons laid out on a
+     * square grid that fills the panel, each spinning about its own centre.
+     * The polygons share one set of levels of detail, so those with many
+     * sides are drawn with fewer when they are small on the panel.
+     *
+     * @param numPolygon The number of polygons.
+     * @param numSides The number of sides of each polygon.
+     * @param type The type of polygon, "normal" or "cone".
+     * @return The scene.
+     */
+    public static Scene createScene(int numPolygon, int numSides,
+            String type) {
+        Scene scene = new Scene();
+        Matrix4X4 spin = createSpinner();
+
+        //lay the objects out on a square grid that fills the panel
+        int columns = (int) Math.ceil(Math.sqrt(numPolygon));
+        double cell = 2.0 / columns;
+        LevelOfDetail lod = LevelOfDetail.polygon(numSides, 0.6 / columns,
+                1.0 / columns, type);
+        for (int i = 0; i < numPolygon; i++) {
+            double x = -1.0 + cell * (i % columns + 0.5);
+            double y = -1.0 + cell * (i / columns + 0.5);
+            scene.add(lod, new Motion(spin, x, y, 0.0));
+        }//for
+        return scene;
+    } // createScene( int, int, String )
+
+    /**
+     * Builds the same grid as createScene as one batch of instances of a
+     * single polygon, so the polygon's vertices are stored once however many
+     * copies there are. Each instance gets its own hue.
+     *
+     * @param numPolygon The number of polygons.
+     * @param numSides The number of sides of each polygon.
+     * @param type The type of polygon, "normal" or "cone".
+     * @return The scene.
+     */
+    public static Scene createInstancedScene(int numPolygon, int numSides,
+            String type) {
+        Matrix4X4 spin = createSpinner();
+        int columns = (int) Math.ceil(Math.sqrt(numPolygon));
+        double cell = 2.0 / columns;
+        InstanceBatch batch = new InstanceBatch(Polygon3D.create(numSides,
+                0.6 / columns, 1.0 / columns, type));
+        for (int i = 0; i < numPolygon; i++) {
+            double x = -1.0 + cell * (i % columns + 0.5);
+            double y = -1.0 + cell * (i / columns + 0.5);
+            Color colour = Color.getHSBColor((float) i / numPolygon, 0.8f,
+                    1.0f);
+            batch.add(spin, x, y, 0.0, colour);
+        }//for
+
+        Scene scene = new Scene();
+        scene.add(batch);
+        return scene;
+    } // createInstancedScene( int, int, String )
+
+    /**
+     * Returns the rotation every polygon is given each update.
+     */
+    private static Matrix4X4 createSpinner() {
         Matrix4X4 a = new Matrix4X4();
         a.rotationX(-0.01);
         Matrix4X4 b = new Matrix4X4();
@@ -47,156 +164,379 @@ public class SwingPanel extends JPanel implements ActionListener {
         Matrix4X4 c = new Matrix4X4();
         c.rotationZ(0.025);
 
-        for (int i = 0; i < NUM_POLYGON; i++) {
-            this.poly.add(new Polygon3D(NUM_SIDES, 0.6, 1, TYPE));
-            this.spinner.add(a.multiply(b).multiply(c));
-        }//for
-
-//        Matrix4X4 translate = new Matrix4X4();
-//        translate.set(1, 3, 0);
-//        for (int i = 0; i < NUM_POLYGON; i++) {
-//            translate.set(1, 3, translate.get(1, 3));
-//            this.poly.get(i).transform(translate);
-//        }//for
-    } // SwingPanel()
+        Matrix4X4 spin = new Matrix4X4();
+        a.multiplyInto(b, spin);
+        spin.multiplyInto(c, spin);
+        return spin;
+    } // createSpinner()
 
     public Color getColour() {
-        return this.color;
+        return this.illumination.getColour();
     } // getColor()
 
     public void setColour(Color c) {
-        this.color = c;
+        this.illumination.setColour(c);
     } // setColor( Color )
 
+    /**
+     * Sets how faces are shaded by the z-buffer renderers. Graphics2D always
+     * shades flat.
+     *
+     * @param shading The shading.
+     */
+    public void setShading(Illumination.Shading shading) {
+        this.illumination.setShading(shading);
+        this.repaint();
+    } // setShading( Illumination.Shading )
+
+    /**
+     * Returns the lights, to add to or change.
+     *
+     * @return The lighting.
+     */
+    public Lighting getLighting() {
+        return this.illumination.getLighting();
+    } // getLighting()
+
+    /**
+     * Returns the back-face culler, whose counters give the number of faces
+     * tested and culled in the last frame drawn.
+     *
+     * @return The culler.
+     */
+    public BackFaceCuller getCuller() {
+        return this.culler;
+    } // getCuller()
+
+    /**
+     * Returns the level-of-detail selector, whose count gives the number of
+     * faces saved in the last frame drawn.
+     *
+     * @return The selector.
+     */
+    public DetailSelector getDetailSelector() {
+        return this.detail;
+    } // getDetailSelector()
+
+    /**
+     * Turns level-of-detail selection on or off. When off every polygon is
+     * drawn with all its sides.
+     *
+     * @param enabled True to draw small polygons with fewer sides.
+     */
+    public void setLevelOfDetail(boolean enabled) {
+        this.detail.setEnabled(enabled);
+        this.repaint();
+    } // setLevelOfDetail( boolean )
+
+    /**
+     * Sets whether each frame repaints up to DirtyRegions.MAX_REGIONS
+     * separate regions, each painted straight away, rather than the one
+     * rectangle round everything that changed. The regions of one tick are
+     * timed and counted together as one frame.
+     *
+     * @param coalescing True to repaint separate regions.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.dirtyRegions.setCoalescing(coalescing);
+        this.repaint();
+    } // setCoalescing( boolean )
+
+    /**
+     * Returns whether each frame repaints separate regions.
+     *
+     * @return True if separate regions are repainted.
+     */
+    public boolean isCoalescing() {
+        return this.dirtyRegions.isCoalescing();
+    } // isCoalescing()
+
+    /**
+     * Returns the frame timings. They are also registered as an MBean, named
+     * as getMetricsName gives, until the panel is disposed.
+     *
+     * @return The frame metrics.
+     */
+    public FrameMetrics getMetrics() {
+        return this.metrics;
+    } // getMetrics()
+
+    /**
+     * Returns the name the frame timings are registered under as an MBean,
+     * swing3d:type=FrameMetrics,name=SwingPanel followed by the panel's
+     * identity hash code.
+     *
+     * @return The object name, or null if they could not be registered.
+     */
+    public String getMetricsName() {
+        return this.metricsName;
+    } // getMetricsName()
+
+    /**
+     * Turns the on-panel timing overlay on or off.
+     *
+     * @param overlay True to show the overlay.
+     */
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+        this.overlayBounds = null;
+        this.repaint();
+    } // setOverlay( boolean )
+
+    /**
+     * Returns whether the timing overlay is shown.
+     *
+     * @return True if the overlay is shown.
+     */
+    public boolean isOverlay() {
+        return this.overlay;
+    } // isOverlay()
+
+    /**
+     * Starts sending every frame painted to an exporter. The exporter's size
+     * should match the panel; frames of another size are dropped. Frames are
+     * also dropped, rather than slowing the panel, when the exporter's queue
+     * is full.
+     *
+     * @param exporter The exporter to send frames to.
+     */
+    public void startExport(FrameExporter exporter) {
+        this.exporter = exporter;
+    } // startExport( FrameExporter )
+
+    /**
+     * Stops sending frames to the exporter and returns it, so the caller can
+     * close it.
+     *
+     * @return The exporter, or null if none was set.
+     */
+    public FrameExporter stopExport() {
+        FrameExporter previous = this.exporter;
+        this.exporter = null;
+        return previous;
+    } // stopExport()
+
+    /**
+     * Sets how many times a second the scene is updated.
+     *
+     * @param tickRate Updates per second.
+     */
+    public void setTickRate(double tickRate) {
+        this.simulation.setTickRate(tickRate);
+    } // setTickRate( double )
+
+    /**
+     * Sets how many times a second the panel is repainted. This is independent
+     * of the tick rate.
+     *
+     * @param renderRate Repaints per second.
+     */
+    public void setRenderRate(double renderRate) {
+        this.timer.setDelay(delay(renderRate));
+    } // setRenderRate( double )
+
+    /**
+     * Returns the timer delay for a repaint rate.
+     *
+     * @param renderRate Repaints per second.
+     * @return Milliseconds between repaints, at least one.
+     */
+    private static int delay(double renderRate) {
+        return (int) Math.max(1, 1000 / renderRate);
+    } // delay( double )
+
+    /**
+     * Chooses how the scene is drawn: GRAPHICS2D fills each face as a Shape
+     * in painter's order, ZBUFFER rasterizes into an image with a depth
+     * buffer and TILED does the same with the image split into tiles that
+     * are rasterized in parallel. Any other name is ignored.
+     *
+     * @param name GRAPHICS2D, ZBUFFER or TILED.
+     */
+    public void setRenderer(String name) {
+        if (name.equals(GRAPHICS2D)) {
+            this.renderer = this.graphics2DRenderer;
+        } else if (name.equals(ZBUFFER)) {
+            this.renderer = this.zBufferRenderer;
+        } else if (name.equals(TILED)) {
+            this.renderer = this.tiledRenderer;
+        }
+        this.repaint();
+    } // setRenderer( String )
+
     @Override
     public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2D = (Graphics2D) g;
 
         int w = this.getWidth();
         int h = this.getHeight();
+        updateCamera(w, h);
 
-        AffineTransform transform = new AffineTransform();
-
-        AffineTransform rotation = new AffineTransform();
-        rotation.setToRotation(this.phase);
-
-        AffineTransform scaling = new AffineTransform();
-        scaling.setToScale(w / 2, h / 2);
-
-        AffineTransform translation = new AffineTransform();
-        double cx = 1.0 + this.centerX;
-        double cy = 1.0 + this.centerY;
-        translation.setToTranslation(cx, cy);
-
-        transform.concatenate(scaling);
-        transform.concatenate(translation);
-        transform.concatenate(rotation);
+        //draw the scene the last tick measured, so it fits what was repainted
+        if (this.current == null) {
+            this.current = this.simulation.latest();
+        }
+        Scene scene = this.current;
+        FrameExporter exporter = this.exporter;
+        if (exporter != null && w > 0 && h > 0) {
+            //draw into an image that is both exported and shown
+            if (this.exportImage == null || this.exportImage.getWidth() != w
+                    || this.exportImage.getHeight() != h) {
+                this.exportImage = new BufferedImage(w, h,
+                        BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D imageG2D = this.exportImage.createGraphics();
+            imageG2D.setColor(this.getBackground());
+            imageG2D.fillRect(0, 0, w, h);
+            this.renderer.render(imageG2D, this.camera, scene,
+                    this.getBackground(), w, h);
+            imageG2D.dispose();
+            g2D.drawImage(this.exportImage, 0, 0, null);
+            exporter.trySubmit(this.exportImage);
+        } else {
+            this.renderer.render(g2D, this.camera, scene,
+                    this.getBackground(), w, h);
+        }
+        this.metrics.add(FrameMetrics.Phase.FRAME, System.nanoTime() - start);
+        this.facesTested += this.culler.getFacesTested();
+        this.facesCulled += this.culler.getFacesCulled();
+        this.objectsTested += scene.getTotalCount();
+        this.objectsCulled += scene.getCulledCount();
+        this.facesSaved += this.detail.getFacesSaved();
+        if (!this.paintingRegions) {
+            endFrame();
+        }
 
-        draw3DShape(transform, g2D, poly.get(0));
+        if (this.overlay) {
+            drawOverlay(g2D);
+        }
 
     } // paintComponent( Graphics )
 
+    /**
+     * Records the timings and counts added up since the last frame ended as
+     * one frame, keeping the counts for the overlay.
+     */
+    private void endFrame() {
+        this.metrics.endFrame();
+        List<String> counts = new ArrayList<>();
+        counts.add("culled " + this.facesCulled + " of " + this.facesTested
+                + " faces");
+        counts.add("out of view " + this.objectsCulled + " of "
+                + this.objectsTested + " objects");
+        counts.add("detail saved " + this.facesSaved + " faces");
+        this.frameCounts = counts;
+        this.facesTested = 0;
+        this.facesCulled = 0;
+        this.objectsTested = 0;
+        this.objectsCulled = 0;
+        this.facesSaved = 0;
+    } // endFrame()
+
+    /**
+     * Points the camera at the scene and fits it to the panel.
+     *
+     * @param w The width of the panel.
+     * @param h The height of the panel.
+     */
+    private void updateCamera(int w, int h) {
+        //the view turns the scene by the phase, then moves it by the centre
+        this.rotation.rotationZ(this.phase);
+        this.view.translate(this.centerX, this.centerY, 0.0);
+        this.view.multiplyInto(this.rotation, this.view);
+        this.camera.setView(this.view);
+        this.camera.setViewport(0, 0, w, h);
+    } // updateCamera( int, int )
+
+    /**
+     * Draws the frame timings, cull counts and faces saved by levels of
+     * detail in the top left corner, and remembers the area they cover. The
+     * counts are those of the last whole frame, which while separate regions
+     * are being painted is the previous tick's.
+     *
+     * @param g2D The graphics to draw on.
+     */
+    private void drawOverlay(Graphics2D g2D) {
+        g2D.setFont(OVERLAY_FONT);
+        g2D.setColor(Color.white);
+        List<String> lines = this.metrics.summary();
+        lines.addAll(this.frameCounts);
+        int lineHeight = g2D.getFontMetrics().getHeight();
+        int y = lineHeight;
+        int width = 0;
+        for (String line : lines) {
+            g2D.drawString(line, 4, y);
+            width = Math.max(width, 8 + g2D.getFontMetrics().stringWidth(line));
+            y += lineHeight;
+        }//for
+        //only ever grow, so a line that gets longer is not cut off again
+        Rectangle bounds = new Rectangle(0, 0, width, y);
+        if (this.overlayBounds != null) {
+            bounds.add(this.overlayBounds);
+        }
+        this.overlayBounds = bounds;
+    } // drawOverlay( Graphics2D )
+
+    /**
+     * Takes the newest scene from the simulation and repaints only where it
+     * or the frame on screen draws anything. When exporting, every frame is
+     * repainted whole, but the regions are still measured, so that once
+     * exporting stops they know what the last exported frame drew.
+     *
+     * @param event The timer tick.
+     */
     @Override
     public void actionPerformed(ActionEvent event) {
-
-        for (int i = 0; i < NUM_POLYGON; i++) {
-            this.poly.get(i).transform(spinner.get(i));
-        }//for
-        this.repaint();
-    } // actionPerformed( ActionEvent )
-
-    public void draw3DShape(AffineTransform transform, Graphics2D g2D,
-            Polygon3D poly) {
-        System.out.println("counter"+triggeredCounter);
-        List<Shape> s = new ArrayList<>();
-        Boolean TopZ = poly.getTopZ() < poly.getBottomZ();
-        if (TopZ) {
-            if(TYPE.equals("cone")){
-                this.shape = poly.getShapeTop();
-            }
-            else{this.shape = poly.getShapeBottom();}
-            g2D.setColor(getIlluminationBottom(poly));
-        } else {
-            this.shape = poly.getShapeTop();
-            g2D.setColor(getIlluminationTop(poly));
+        this.current = this.simulation.latest();
+        int w = this.getWidth();
+        int h = this.getHeight();
+        updateCamera(w, h);
+        List<Rectangle> dirty = this.dirtyRegions.update(this.current,
+                this.camera, w, h, this.overlay ? this.overlayBounds : null);
+        if (this.exporter != null) {
+            this.repaint();
+            return;
         }
-        s.add(transform.createTransformedShape(this.shape));
-        g2D.fill(s.get(0));
-        
-        ArrayList<Integer> order = poly.sortSides();
-
-        int fillCounter = 1;
-        for (int i : order) {
-            this.shape = poly.getShapeSide(i);
-            s.add(transform.createTransformedShape(this.shape));
-            g2D.setColor(getIlluminationSide(poly, i));
-            g2D.fill(s.get(fillCounter));
-            fillCounter++;
-        }//for
-
-        if (TopZ != true) {
-            this.shape = poly.getShapeBottom();
-            g2D.setColor(getIlluminationBottom(poly));
-            s.add(transform.createTransformedShape(this.shape));
-            g2D.fill(s.get(NUM_SIDES + 1));
-
-        } else {
-            this.shape = poly.getShapeTop();
-            g2D.setColor(getIlluminationTop(poly));
-            s.add(transform.createTransformedShape(this.shape));
-            g2D.fill(s.get(NUM_SIDES + 1));
+        if (!this.dirtyRegions.isCoalescing()) {
+            for (Rectangle region : dirty) {
+                this.repaint(region);
+            } // for
+            return;
         }
+        //the repaint manager would unite them, so paint each now, as one frame
+        this.paintingRegions = true;
+        try {
+            for (Rectangle region : dirty) {
+                this.paintImmediately(region);
+            } // for
+        } finally {
+            this.paintingRegions = false;
+        }
+        if (!dirty.isEmpty()) {
+            endFrame();
+        }
+    } // actionPerformed( ActionEvent )
 
-
+    public void draw3DShape(Camera camera, Graphics2D g2D, Mesh poly) {
+        this.graphics2DRenderer.draw3DShape(camera, g2D, poly);
     }
 
     public Color getIlluminationTop(Polygon3D poly) {
-        double illFactor = poly.getNormalTop().dot(ILLUMINATION_VECTOR);
-        if (illFactor < 0.0) {
-            illFactor = 0.0;
-        } else if (illFactor > 1) {
-            illFactor = 1;
-        }
-        return new Color((int) (this.getColour().getRed() * illFactor),
-                (int) (this.getColour().getGreen() * illFactor),
-                (int) (this.getColour().getBlue() * illFactor));
+        return this.illumination.getIlluminationTop(poly);
     }
 
     public Color getIlluminationBottom(Polygon3D poly) {
-        double illFactor = poly.getNormalBottom().dot(ILLUMINATION_VECTOR);
-        if (illFactor < 0.0) {
-            illFactor = 0.0;
-        } else if (illFactor > 1) {
-            illFactor = 1;
-        }
-        return new Color((int) (this.getColour().getRed() * illFactor),
-                (int) (this.getColour().getGreen() * illFactor),
-                (int) (this.getColour().getBlue() * illFactor));
+        return this.illumination.getIlluminationBottom(poly);
     }
 
     public Color getIlluminationSide(Polygon3D poly, int firstSide) {
-        double illFactor = poly.getNormalSide(firstSide).dot(ILLUMINATION_VECTOR);
-        if (illFactor < 0.0) {
-            illFactor = 0.0;
-        } else if (illFactor > 1) {
-            illFactor = 1;
-        }
-        return new Color((int) (this.getColour().getRed() * illFactor),
-                (int) (this.getColour().getGreen() * illFactor),
-                (int) (this.getColour().getBlue() * illFactor));
+        return this.illumination.getIlluminationSide(poly, firstSide);
     }
 
     public Color getIlluminationFinalSide(Polygon3D poly) {
-        double illFactor = poly.getNormalFinalSide().dot(ILLUMINATION_VECTOR);
-        if (illFactor < 0.0) {
-            illFactor = 0.0;
-        } else if (illFactor > 1) {
-            illFactor = 1;
-        }
-        return new Color((int) (this.getColour().getRed() * illFactor),
-                (int) (this.getColour().getGreen() * illFactor),
-                (int) (this.getColour().getBlue() * illFactor));
+        return this.illumination.getIlluminationFinalSide(poly);
     }
 
 } // SwingPanel
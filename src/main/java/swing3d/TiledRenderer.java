@@ -0,0 +1,330 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Draws a scene like ZBufferRenderer, but rasterizes on every core. The image
+ * is cut into TILE_SIZE square tiles, and each tile is cleared and filled by
+ * its own task on the common fork/join pool, straight into the shared int[]
+ * pixels and float depth buffer of one TYPE_INT_RGB image. Tiles never share
+ * a pixel, so the tasks need no locking. The finished image is drawn onto the
+ * Graphics2D with a single drawImage.
+ *
+ * A frame runs in three steps. On the calling thread, every mesh in view is
+ * culled, shaded and projected, and its faces are split into triangles in
+ * one list for the whole frame. Each triangle is then binned into every tile its
+ * bounding box touches, using a counting sort so the bins are two flat
+ * arrays. Last, the tiles are rasterized in parallel, each depth testing only
+ * the triangles in its own bin. Within a bin the triangles keep the order
+ * they were added in, so the output matches ZBufferRenderer. Levels of
+ * detail are chosen, and instances placed and added one at a time, and
+ * shaded flat or with Gouraud shading, as there. Only triangles and tiles
+ * inside the Graphics2D's clip are binned, cleared and filled. Shading and
+ * the triangle fill are done by the same Rasterizer code ZBufferRenderer
+ * uses, with each tile's bounds in place of the clip.
+ *
+ * @author marcus
+ */
+public class TiledRenderer implements Renderer {
+
+    // The width and height of a tile, in pixels.
+    private static final int TILE_SIZE = 64;
+
+    // Each triangle is stored as the x, y and z of its three corners.
+    private static final int STRIDE = Rasterizer.STRIDE;
+
+    private final Illumination illumination;
+    private final FrameMetrics metrics;
+    private final DetailSelector detail;
+    private final Rasterizer rasterizer;
+    // The clipped area of this frame, right and bottom included.
+    private int clipLeft;
+    private int clipTop;
+    private int clipRight;
+    private int clipBottom;
+    private int tilesX;
+    private int tilesY;
+    private int background;
+
+    // The triangles of the frame, their colours and the tiles they touch
+    // (first and last column, first and last row). With Gouraud shading the
+    // colour is the one to shade and the shade indices of the corners are
+    // kept as well.
+    private float[] triangles = new float[0];
+    private int[] colours = new int[0];
+    private float[] triangleShades = new float[0];
+    private int[] tileBounds = new int[0];
+    private int triangleCount;
+
+    // The bins: tile t holds binTriangles[binOffsets[t]] up to, but not
+    // including, binTriangles[binOffsets[t + 1]].
+    private int[] binOffsets = new int[1];
+    private int[] binTriangles = new int[0];
+    private int[] binFill = new int[0];
+
+    public TiledRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics) {
+        this(illumination, culler, metrics, new DetailSelector());
+    } // TiledRenderer( Illumination, BackFaceCuller, FrameMetrics )
+
+    /**
+     * Creates a renderer that chooses levels of detail with a given
+     * selector, so its count of faces saved can be read.
+     *
+     * @param illumination The light and shape colour.
+     * @param culler The back-face culler.
+     * @param metrics Where to add the frame timings.
+     * @param detail The level-of-detail selector.
+     */
+    public TiledRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics,
+            DetailSelector detail) {
+        this.illumination = illumination;
+        this.metrics = metrics;
+        this.detail = detail;
+        this.rasterizer = new Rasterizer(illumination, culler, metrics);
+    } // TiledRenderer( Illumination, BackFaceCuller, FrameMetrics, DetailSelector )
+
+    @Override
+    public void render(Graphics2D g2D, Camera camera, Scene scene,
+            Color background, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Rectangle clip = Renderer.clipBounds(g2D, width, height);
+        if (clip.isEmpty()) {
+            return;
+        }
+        resize(width, height);
+        this.clipLeft = clip.x;
+        this.clipTop = clip.y;
+        this.clipRight = clip.x + clip.width - 1;
+        this.clipBottom = clip.y + clip.height - 1;
+        this.background = background.getRGB() & 0xFFFFFF;
+        this.rasterizer.beginFrame(camera);
+        this.detail.beginFrame();
+        this.triangleCount = 0;
+
+        long cullStart = System.nanoTime();
+        scene.cullToView(camera, clip.x, clip.y, clip.x + clip.width,
+                clip.y + clip.height);
+        this.metrics.add(FrameMetrics.Phase.CULL,
+                System.nanoTime() - cullStart);
+
+        int colour = this.illumination.getColour().getRGB() & 0xFFFFFF;
+        for (int k = 0; k < scene.getVisibleCount(); k++) {
+            int i = scene.getVisible(k);
+            addMesh(camera, this.detail.select(camera, scene, i),
+                    scene.isCulling(i), colour);
+        } // for
+        for (int b = 0; b < scene.getBatchCount(); b++) {
+            InstanceBatch batch = scene.getBatch(b);
+            Mesh mesh = this.rasterizer.instanceMesh(batch);
+            for (int k = 0; k < scene.getVisibleInstanceCount(b); k++) {
+                int i = scene.getVisibleInstance(b, k);
+                batch.place(i, mesh);
+                addMesh(camera, mesh, batch.isCulling(),
+                        batch.getColour(i));
+            } // for
+        } // for
+
+        long binStart = System.nanoTime();
+        bin();
+        long fillStart = System.nanoTime();
+        this.metrics.add(FrameMetrics.Phase.SORT, fillStart - binStart);
+
+        //only the tiles the clip touches
+        int firstX = this.clipLeft / TILE_SIZE;
+        int firstY = this.clipTop / TILE_SIZE;
+        int columns = this.clipRight / TILE_SIZE - firstX + 1;
+        int rows = this.clipBottom / TILE_SIZE - firstY + 1;
+        IntStream.range(0, columns * rows).parallel()
+                .forEach(k -> drawTile((firstY + k / columns) * this.tilesX
+                        + firstX + k % columns));
+        long blitStart = System.nanoTime();
+        this.metrics.add(FrameMetrics.Phase.FILL, blitStart - fillStart);
+
+        g2D.drawImage(this.rasterizer.getImage(), 0, 0, null);
+        this.metrics.add(FrameMetrics.Phase.BLIT,
+                System.nanoTime() - blitStart);
+    } // render( Graphics2D, Camera, Scene, Color, int, int )
+
+    /**
+     * Returns the image the last frame was rasterized into.
+     *
+     * @return The image, or null before the first frame.
+     */
+    public BufferedImage getImage() {
+        return this.rasterizer.getImage();
+    } // getImage()
+
+    /**
+     * Makes a new image, depth buffer and bins if the size has changed.
+     */
+    private void resize(int width, int height) {
+        if (!this.rasterizer.resize(width, height)) {
+            return;
+        }
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.binOffsets = new int[this.tilesX * this.tilesY + 1];
+        this.binFill = new int[this.tilesX * this.tilesY];
+    } // resize( int, int )
+
+    /**
+     * Shades and projects a mesh and adds its visible faces to the frame's
+     * triangles, as fans.
+     */
+    private void addMesh(Camera camera, Mesh poly, boolean cull,
+            int colour) {
+        Rasterizer raster = this.rasterizer;
+        int count = raster.shade(camera, poly, cull, colour);
+        long start = System.nanoTime();
+        for (int j = 0; j < count; j++) {
+            int n = raster.corners(poly, j);
+            if (n == 0) {
+                continue;
+            }
+            ensureTriangles(this.triangleCount + n - 2);
+            int rgb = raster.colour(j);
+            for (int k = 1; k < n - 1; k++) {
+                addTriangle(raster.corner(0), raster.corner(k),
+                        raster.corner(k + 1), rgb);
+            } // for
+        } // for
+        this.metrics.add(FrameMetrics.Phase.FILL, System.nanoTime() - start);
+    } // addMesh( Camera, Mesh, boolean, int )
+
+    /**
+     * Grows the triangle arrays to hold at least a number of triangles.
+     */
+    private void ensureTriangles(int count) {
+        if (this.colours.length >= count) {
+            return;
+        }
+        int capacity = Math.max(count, 2 * this.colours.length);
+        this.triangles = Arrays.copyOf(this.triangles, STRIDE * capacity);
+        this.colours = Arrays.copyOf(this.colours, capacity);
+        this.triangleShades = Arrays.copyOf(this.triangleShades,
+                3 * capacity);
+        this.tileBounds = Arrays.copyOf(this.tileBounds, 4 * capacity);
+    } // ensureTriangles( int )
+
+    /**
+     * Adds a triangle of projected vertices, with the range of tiles its
+     * bounding box touches. Triangles that are edge on or entirely outside
+     * the clip are dropped.
+     */
+    private void addTriangle(int a, int b, int c, int colour) {
+        Rasterizer raster = this.rasterizer;
+        float x0 = raster.getScreenX(a), y0 = raster.getScreenY(a);
+        float x1 = raster.getScreenX(b), y1 = raster.getScreenY(b);
+        float x2 = raster.getScreenX(c), y2 = raster.getScreenY(c);
+        if ((x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0) == 0.0f) {
+            return;
+        }
+        int minX = Math.max(this.clipLeft,
+                (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(this.clipRight,
+                (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(this.clipTop,
+                (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(this.clipBottom,
+                (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        int t = this.triangleCount++;
+        int base = STRIDE * t;
+        this.triangles[base] = x0;
+        this.triangles[base + 1] = y0;
+        this.triangles[base + 2] = raster.getScreenZ(a);
+        this.triangles[base + 3] = x1;
+        this.triangles[base + 4] = y1;
+        this.triangles[base + 5] = raster.getScreenZ(b);
+        this.triangles[base + 6] = x2;
+        this.triangles[base + 7] = y2;
+        this.triangles[base + 8] = raster.getScreenZ(c);
+        this.colours[t] = colour;
+        if (raster.isGouraud()) {
+            this.triangleShades[3 * t] = raster.getShade(a);
+            this.triangleShades[3 * t + 1] = raster.getShade(b);
+            this.triangleShades[3 * t + 2] = raster.getShade(c);
+        }
+        this.tileBounds[4 * t] = minX / TILE_SIZE;
+        this.tileBounds[4 * t + 1] = maxX / TILE_SIZE;
+        this.tileBounds[4 * t + 2] = minY / TILE_SIZE;
+        this.tileBounds[4 * t + 3] = maxY / TILE_SIZE;
+    } // addTriangle( int, int, int, int )
+
+    /**
+     * Sorts the triangles into the bins of the tiles they touch: count each
+     * bin, turn the counts into offsets, then place each triangle.
+     */
+    private void bin() {
+        int tileCount = this.tilesX * this.tilesY;
+        int[] offsets = this.binOffsets;
+        Arrays.fill(offsets, 0);
+        int total = 0;
+        int[] bounds = this.tileBounds;
+        for (int t = 0; t < this.triangleCount; t++) {
+            int b = 4 * t;
+            for (int ty = bounds[b + 2]; ty <= bounds[b + 3]; ty++) {
+                for (int tx = bounds[b]; tx <= bounds[b + 1]; tx++) {
+                    offsets[ty * this.tilesX + tx + 1]++;
+                } // for tx
+            } // for ty
+            total += (bounds[b + 1] - bounds[b] + 1)
+                    * (bounds[b + 3] - bounds[b + 2] + 1);
+        } // for
+        for (int tile = 0; tile < tileCount; tile++) {
+            offsets[tile + 1] += offsets[tile];
+        } // for
+
+        if (this.binTriangles.length < total) {
+            this.binTriangles = new int[Math.max(total,
+                    2 * this.binTriangles.length)];
+        }
+        System.arraycopy(offsets, 0, this.binFill, 0, tileCount);
+        for (int t = 0; t < this.triangleCount; t++) {
+            int b = 4 * t;
+            for (int ty = bounds[b + 2]; ty <= bounds[b + 3]; ty++) {
+                for (int tx = bounds[b]; tx <= bounds[b + 1]; tx++) {
+                    this.binTriangles[this.binFill[ty * this.tilesX + tx]++] = t;
+                } // for tx
+            } // for ty
+        } // for
+    } // bin()
+
+    /**
+     * Clears the part of one tile inside the clip and rasterizes the
+     * triangles in its bin there. Runs on a fork/join worker and writes only
+     * the tile's own pixels.
+     *
+     * @param tile The tile, numbered across then down.
+     */
+    private void drawTile(int tile) {
+        int left = (tile % this.tilesX) * TILE_SIZE;
+        int top = (tile / this.tilesX) * TILE_SIZE;
+        int right = Math.min(this.clipRight, left + TILE_SIZE - 1);
+        int bottom = Math.min(this.clipBottom, top + TILE_SIZE - 1);
+        left = Math.max(this.clipLeft, left);
+        top = Math.max(this.clipTop, top);
+        this.rasterizer.clear(left, top, right, bottom, this.background);
+
+        int end = this.binOffsets[tile + 1];
+        for (int k = this.binOffsets[tile]; k < end; k++) {
+            int t = this.binTriangles[k];
+            this.rasterizer.fillTriangle(this.triangles, STRIDE * t,
+                    this.triangleShades, 3 * t, this.colours[t], left, top,
+                    right, bottom);
+        } // for
+    } // drawTile( int )
+
+} // TiledRenderer
@@ -0,0 +1,74 @@
+package swing3d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three copies of some state shared between one writer thread and one reader
+ * thread without locks. The writer fills the back copy and publishes it; the
+ * reader takes whatever was published most recently. Neither ever waits for
+ * the other, and neither ever sees a copy the other is working on.
+ *
+ * The middle copy sits between the two. Publishing swaps the back copy with
+ * the middle one and marks it fresh; reading swaps the front copy with the
+ * middle one, but only if it is fresh. Both swaps are a single atomic
+ * getAndSet.
+ *
+ * @author marcus
+ * @param <T> The type of the state.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    // The index of the middle copy, plus FRESH if it has not been read yet.
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    /**
+     * Creates a triple buffer over three separate copies of the state.
+     *
+     * @param first The first copy.
+     * @param second The second copy.
+     * @param third The third copy.
+     */
+    public TripleBuffer(T first, T second, T third) {
+        this.buffers = new Object[]{first, second, third};
+    } // TripleBuffer( T, T, T )
+
+    /**
+     * Returns the copy the writer may fill. Only the writer thread may call
+     * this.
+     *
+     * @return The back copy.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) this.buffers[this.back];
+    } // getBack()
+
+    /**
+     * Publishes the back copy and gives the writer a new one. Only the writer
+     * thread may call this.
+     */
+    public void publish() {
+        this.back = this.middle.getAndSet(this.back | FRESH) & INDEX_MASK;
+    } // publish()
+
+    /**
+     * Returns the most recently published copy. It stays valid, and unchanged,
+     * until the next call. Only the reader thread may call this.
+     *
+     * @return The front copy.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((this.middle.get() & FRESH) != 0) {
+            this.front = this.middle.getAndSet(this.front) & INDEX_MASK;
+        }
+        return (T) this.buffers[this.front];
+    } // acquire()
+
+} // TripleBuffer
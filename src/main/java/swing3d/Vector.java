@@ -6,6 +6,11 @@ package swing3d;
  * a 3D object in space. The x component is called u0, the y component u1, the z 
  * component u2, and the homogeneous component u3.
  * 
+ * Each operation that returns a new Vector also has a form that writes into
+ * a destination Vector, or into this one, so loops that run every frame need
+ * not allocate. The destination may be this vector or the other operand. For
+ * temporaries, VectorPool lends each thread vectors to reuse.
+ * 
  * @author marcus
  */
 
@@ -68,14 +73,39 @@ public class Vector {
      * @return The sum of this vector with another vector.
      */
     public Vector add(Vector v) {
-        return new Vector(this.get(0) + v.get(0), this.get(1) + v.get(1),
-                this.get(2) + v.get(2), this.get(3) + v.get(3));
+        Vector sum = new Vector();
+        this.addInto(v, sum);
+        return sum;
     } // add( Vector2D )
 
+    /**
+     * Writes the sum of the vector with another vector into a destination.
+     * 
+     * @param v The other vector.
+     * @param destination The vector that receives the sum.
+     */
+    public void addInto(Vector v, Vector destination) {
+        destination.set(this.u0 + v.u0, this.u1 + v.u1, this.u2 + v.u2,
+                this.u3 + v.u3);
+    } // addInto( Vector, Vector )
+
     public Vector subtract(Vector v) {
-        return new Vector(this.get(0) - v.get(0), this.get(1) - v.get(1),
-                this.get(2) - v.get(2), this.get(3));
+        Vector difference = new Vector();
+        this.subtractInto(v, difference);
+        return difference;
     } // add( Vector2D )
+
+    /**
+     * Writes this vector minus another into a destination. As with subtract,
+     * the homogeneous component is this vector's.
+     * 
+     * @param v The vector to subtract.
+     * @param destination The vector that receives the difference.
+     */
+    public void subtractInto(Vector v, Vector destination) {
+        destination.set(this.u0 - v.u0, this.u1 - v.u1, this.u2 - v.u2,
+                this.u3);
+    } // subtractInto( Vector, Vector )
     
     /**
      * Returns a vector scaled in each direction with different factors .
@@ -100,10 +130,23 @@ public class Vector {
      * @return The scaled vector
      */
     public Vector scale(double factor) {
-        return new Vector(factor * this.u0, factor * this.u1,
-                factor * this.u2, factor * this.u3);
+        Vector scaled = new Vector();
+        this.scaleInto(factor, scaled);
+        return scaled;
     } // scale( double )
 
+    /**
+     * Writes the vector scaled in every direction by a single factor into a
+     * destination.
+     * 
+     * @param factor The scale factor.
+     * @param destination The vector that receives the scaled vector.
+     */
+    public void scaleInto(double factor, Vector destination) {
+        destination.set(factor * this.u0, factor * this.u1, factor * this.u2,
+                factor * this.u3);
+    } // scaleInto( double, Vector )
+
     /**
      * Returns a vector rotated about the x-axis by a given angle.
      * 
@@ -111,11 +154,26 @@ public class Vector {
      * @return The rotated vector.
      */
     public Vector rotateX(double angle) {
-        Matrix4X4 rotationMatrix = new Matrix4X4();
-        rotationMatrix.rotationX(angle);
-        return rotationMatrix.multiply(this);
+        Vector rotated = new Vector();
+        this.rotateXInto(angle, rotated);
+        return rotated;
     } // rotate( double )
 
+    /**
+     * Writes the vector rotated about the x-axis by a given angle into a
+     * destination. It is the product Matrix4X4.rotationX would give, worked
+     * out directly.
+     * 
+     * @param angle The angle to rotate by.
+     * @param destination The vector that receives the rotated vector.
+     */
+    public void rotateXInto(double angle, Vector destination) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        destination.set(this.u0, cos * this.u1 - sin * this.u2,
+                sin * this.u1 + cos * this.u2, this.u3);
+    } // rotateXInto( double, Vector )
+
     /**
      * Returns the dot product of the vector with another vector.
      * 
@@ -123,10 +181,10 @@ public class Vector {
      * @return The dot product.
      */
     public double dot(Vector v) {
-        double u0Dot = this.get(0) * v.get(0);
-        double u1Dot = this.get(1) * v.get(1);
-        double u2Dot = this.get(2) * v.get(2);
-        double u3Dot = this.get(3) * v.get(3);
+        double u0Dot = this.u0 * v.u0;
+        double u1Dot = this.u1 * v.u1;
+        double u2Dot = this.u2 * v.u2;
+        double u3Dot = this.u3 * v.u3;
         return u0Dot + u1Dot + u2Dot + u3Dot;
     } // dotproduct ( Vector2D )
 
@@ -136,14 +194,50 @@ public class Vector {
      * @return The magnitude of the vector.
      */
     public double magnitude() {
-        double u0Sq = this.get(0) * this.get(0);
-        double u1Sq = this.get(1) * this.get(1);
-        double u2Sq = this.get(2) * this.get(2);
-        double u3Sq = this.get(3) * this.get(3);
+        double u0Sq = this.u0 * this.u0;
+        double u1Sq = this.u1 * this.u1;
+        double u2Sq = this.u2 * this.u2;
+        double u3Sq = this.u3 * this.u3;
         return Math.sqrt(u0Sq + u1Sq + u2Sq + u3Sq);
     } // magnitude ( Vector2D )
 
     
+    /**
+     * Returns the x component, u0.
+     * 
+     * @return The x component.
+     */
+    public double x() {
+        return this.u0;
+    } // x()
+
+    /**
+     * Returns the y component, u1.
+     * 
+     * @return The y component.
+     */
+    public double y() {
+        return this.u1;
+    } // y()
+
+    /**
+     * Returns the z component, u2.
+     * 
+     * @return The z component.
+     */
+    public double z() {
+        return this.u2;
+    } // z()
+
+    /**
+     * Returns the homogeneous component, u3.
+     * 
+     * @return The homogeneous component.
+     */
+    public double w() {
+        return this.u3;
+    } // w()
+
     /**
      * Returns a given component of the vector. The parameter takes an integer,
      * where 0 returns u0, the x component; 1 returns u1, the y component; 2
@@ -174,10 +268,19 @@ public class Vector {
      * @return The normalised vector.
      */
     public Vector normalise() {
-        double magnitude = this.magnitude();
-        return new Vector(this.get(0) / magnitude, this.get(1) / magnitude,
-                this.get(2) / magnitude, this.get(3) / magnitude);
+        Vector normalised = new Vector(this.u0, this.u1, this.u2, this.u3);
+        normalised.normaliseInPlace();
+        return normalised;
     }
+
+    /**
+     * Scales this vector, in place, to a magnitude of 1.
+     */
+    public void normaliseInPlace() {
+        double magnitude = this.magnitude();
+        this.set(this.u0 / magnitude, this.u1 / magnitude,
+                this.u2 / magnitude, this.u3 / magnitude);
+    } // normaliseInPlace()
     
     /**
      * Returns the cross product of this vector with another vector.
@@ -186,12 +289,25 @@ public class Vector {
      * @return The cross product vector
      */
     public Vector cross(Vector v) {
-        double newU0 = this.get(1)*v.get(2)-this.get(2)*v.get(1);
-        double newU1 = this.get(2)*v.get(0)-this.get(0)*v.get(2);
-        double newU2 = this.get(0)*v.get(1)-this.get(1)*v.get(0);
-        return new Vector(newU0, newU1, newU2);
+        Vector product = new Vector();
+        this.crossInto(v, product);
+        return product;
     }
 
+    /**
+     * Writes the cross product of this vector with another vector into a
+     * destination. As with cross, the homogeneous component is set to 1.
+     * 
+     * @param v The other vector.
+     * @param destination The vector that receives the cross product.
+     */
+    public void crossInto(Vector v, Vector destination) {
+        double newU0 = this.u1 * v.u2 - this.u2 * v.u1;
+        double newU1 = this.u2 * v.u0 - this.u0 * v.u2;
+        double newU2 = this.u0 * v.u1 - this.u1 * v.u0;
+        destination.set(newU0, newU1, newU2, 1.0);
+    } // crossInto( Vector, Vector )
+
     /**
      * Returns the vector in the string form "(u0, u1, u2, u3)"
      * 
@@ -225,10 +341,25 @@ public class Vector {
     
     
     public void set(Vector v) {
-        this.u0 = v.get(0);
-        this.u1 = v.get(1);
-        this.u2 = v.get(2);
-        this.u3 = v.get(3);
+        this.u0 = v.u0;
+        this.u1 = v.u1;
+        this.u2 = v.u2;
+        this.u3 = v.u3;
     } // get()
 
+    /**
+     * Sets all four components of the vector.
+     * 
+     * @param u0 The new x component
+     * @param u1 The new y component
+     * @param u2 The new z component
+     * @param u3 The new homogeneous component
+     */
+    public void set(double u0, double u1, double u2, double u3) {
+        this.u0 = u0;
+        this.u1 = u1;
+        this.u2 = u2;
+        this.u3 = u3;
+    } // set( double, double, double, double )
+
 } // Vector
@@ -0,0 +1,80 @@
+package swing3d;
+
+import java.util.Arrays;
+
+/**
+ * Scratch Vectors for temporaries, one pool per thread, so code that runs
+ * every frame can use Vector's destination-passing operations without
+ * allocating.
+ *
+ * The pool is a stack. A method takes its mark, borrows as many vectors as
+ * it needs and releases back to the mark before returning, so methods that
+ * call each other can all borrow from the same pool. A borrowed vector's
+ * components are whatever was last left in it; set them before use. The pool
+ * grows to the deepest use it has seen and is never shrunk.
+ *
+ * <pre>
+ * VectorPool pool = VectorPool.get();
+ * int mark = pool.mark();
+ * Vector edge = pool.take();
+ * ...
+ * pool.release(mark);
+ * </pre>
+ *
+ * @author marcus
+ */
+public final class VectorPool {
+
+    private static final ThreadLocal<VectorPool> POOLS
+            = ThreadLocal.withInitial(VectorPool::new);
+
+    private Vector[] vectors = new Vector[0];
+    private int used = 0;
+
+    private VectorPool() {
+    } // VectorPool()
+
+    /**
+     * Returns the calling thread's pool.
+     *
+     * @return The pool.
+     */
+    public static VectorPool get() {
+        return POOLS.get();
+    } // get()
+
+    /**
+     * Returns how many vectors are borrowed, to hand back to release.
+     *
+     * @return The mark.
+     */
+    public int mark() {
+        return this.used;
+    } // mark()
+
+    /**
+     * Borrows a vector until the next release to a mark taken before it.
+     *
+     * @return The vector.
+     */
+    public Vector take() {
+        if (this.used == this.vectors.length) {
+            int capacity = Math.max(8, 2 * this.used);
+            this.vectors = Arrays.copyOf(this.vectors, capacity);
+            for (int i = this.used; i < capacity; i++) {
+                this.vectors[i] = new Vector();
+            } // for
+        } // if
+        return this.vectors[this.used++];
+    } // take()
+
+    /**
+     * Hands back every vector borrowed since a mark was taken.
+     *
+     * @param mark The value mark returned.
+     */
+    public void release(int mark) {
+        this.used = mark;
+    } // release( int )
+
+} // VectorPool
@@ -0,0 +1,151 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a scene by rasterizing its faces straight into the int[] pixels of a
+ * TYPE_INT_RGB image, with a float depth buffer deciding which face is in
+ * front at each pixel. Faces are split into triangle fans and filled with edge
+ * functions. Each vertex of a mesh is projected once, however many faces
+ * share it, and the triangles index into the projected vertices. The finished
+ * image is drawn onto the Graphics2D once per frame. Only the part inside the
+ * Graphics2D's clip is cleared, filled and drawn; the rest of the image keeps
+ * whatever an earlier frame left there.
+ *
+ * Because every pixel is depth tested, faces need no sorting and intersecting
+ * objects come out right. The depth tested is the camera's projected depth,
+ * smaller being nearer the viewer; faces reaching nearer than the camera's
+ * near plane are not drawn.
+ * Faces are shaded flat, one colour each, or with Gouraud shading, the light
+ * intensity at each vertex blended across each triangle and turned into a
+ * colour at every pixel, as the illumination says. Either way the whole mesh
+ * is lit in one batch.
+ * Only the objects and instances the scene finds in view are drawn, each
+ * object at the level of detail the DetailSelector chooses. Back
+ * faces of objects the scene marks for culling are skipped. Instances
+ * are placed one at a time into a mesh of the renderer's own and drawn in
+ * their own colours. The image, shading and triangle fill are a Rasterizer's,
+ * shared with TiledRenderer.
+ *
+ * @author marcus
+ */
+public class ZBufferRenderer implements Renderer {
+
+    private final Illumination illumination;
+    private final FrameMetrics metrics;
+    private final DetailSelector detail;
+    private final Rasterizer rasterizer;
+    // The clipped area of this frame, right and bottom included.
+    private int clipLeft;
+    private int clipTop;
+    private int clipRight;
+    private int clipBottom;
+
+    public ZBufferRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics) {
+        this(illumination, culler, metrics, new DetailSelector());
+    } // ZBufferRenderer( Illumination, BackFaceCuller, FrameMetrics )
+
+    /**
+     * Creates a renderer that chooses levels of detail with a given
+     * selector, so its count of faces saved can be read.
+     *
+     * @param illumination The light and shape colour.
+     * @param culler The back-face culler.
+     * @param metrics Where to add the frame timings.
+     * @param detail The level-of-detail selector.
+     */
+    public ZBufferRenderer(Illumination illumination,
+            BackFaceCuller culler, FrameMetrics metrics,
+            DetailSelector detail) {
+        this.illumination = illumination;
+        this.metrics = metrics;
+        this.detail = detail;
+        this.rasterizer = new Rasterizer(illumination, culler, metrics);
+    } // ZBufferRenderer( Illumination, BackFaceCuller, FrameMetrics, DetailSelector )
+
+    @Override
+    public void render(Graphics2D g2D, Camera camera, Scene scene,
+            Color background, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Rectangle clip = Renderer.clipBounds(g2D, width, height);
+        if (clip.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.rasterizer.resize(width, height);
+        this.clipLeft = clip.x;
+        this.clipTop = clip.y;
+        this.clipRight = clip.x + clip.width - 1;
+        this.clipBottom = clip.y + clip.height - 1;
+        this.rasterizer.clear(this.clipLeft, this.clipTop, this.clipRight,
+                this.clipBottom, background.getRGB() & 0xFFFFFF);
+        this.rasterizer.beginFrame(camera);
+        this.detail.beginFrame();
+        this.metrics.add(FrameMetrics.Phase.FILL, System.nanoTime() - start);
+
+        long cullStart = System.nanoTime();
+        scene.cullToView(camera, clip.x, clip.y, clip.x + clip.width,
+                clip.y + clip.height);
+        this.metrics.add(FrameMetrics.Phase.CULL,
+                System.nanoTime() - cullStart);
+
+        int colour = this.illumination.getColour().getRGB() & 0xFFFFFF;
+        for (int k = 0; k < scene.getVisibleCount(); k++) {
+            int i = scene.getVisible(k);
+            drawMesh(camera, this.detail.select(camera, scene, i),
+                    scene.isCulling(i), colour);
+        } // for
+        for (int b = 0; b < scene.getBatchCount(); b++) {
+            InstanceBatch batch = scene.getBatch(b);
+            Mesh mesh = this.rasterizer.instanceMesh(batch);
+            for (int k = 0; k < scene.getVisibleInstanceCount(b); k++) {
+                int i = scene.getVisibleInstance(b, k);
+                batch.place(i, mesh);
+                drawMesh(camera, mesh, batch.isCulling(),
+                        batch.getColour(i));
+            } // for
+        } // for
+
+        long blitStart = System.nanoTime();
+        g2D.drawImage(this.rasterizer.getImage(), 0, 0, null);
+        this.metrics.add(FrameMetrics.Phase.BLIT,
+                System.nanoTime() - blitStart);
+    } // render( Graphics2D, Camera, Scene, Color, int, int )
+
+    /**
+     * Returns the image the last frame was rasterized into.
+     *
+     * @return The image, or null before the first frame.
+     */
+    public BufferedImage getImage() {
+        return this.rasterizer.getImage();
+    } // getImage()
+
+    /**
+     * Shades and projects a mesh and fills its visible faces, as fans,
+     * inside the clip.
+     */
+    private void drawMesh(Camera camera, Mesh poly,
+            boolean cull, int colour) {
+        Rasterizer raster = this.rasterizer;
+        int count = raster.shade(camera, poly, cull, colour);
+        long start = System.nanoTime();
+        for (int j = 0; j < count; j++) {
+            int n = raster.corners(poly, j);
+            int rgb = raster.colour(j);
+            for (int k = 1; k < n - 1; k++) {
+                raster.fillTriangle(raster.corner(0), raster.corner(k),
+                        raster.corner(k + 1), rgb, this.clipLeft,
+                        this.clipTop, this.clipRight, this.clipBottom);
+            } // for
+        } // for
+        this.metrics.add(FrameMetrics.Phase.FILL, System.nanoTime() - start);
+    } // drawMesh( Camera, Mesh, boolean, int )
+
+} // ZBufferRenderer
@@ -0,0 +1,98 @@
+package swing3d;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The BulkTransform built on the incubating JDK Vector API, working on as
+ * many vertices at once as the widest vector register holds. The vertices
+ * left over after the last full vector go through ScalarTransform.
+ *
+ * This is only compiled with the simd profile, and needs the JVM started
+ * with --add-modules jdk.incubator.vector. Get it through
+ * BulkTransform.detect rather than by name, so the code still runs where it
+ * is missing.
+ *
+ * @author marcus
+ */
+public class VectorTransform implements BulkTransform {
+
+    private static final VectorSpecies<Double> DOUBLES
+            = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS
+            = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Makes the transform.
+     *
+     * @throws UnsupportedOperationException If the hardware has no vector
+     * registers, so the scalar loop would be faster.
+     */
+    public VectorTransform() {
+        if (DOUBLES.length() < 2) {
+            throw new UnsupportedOperationException("no vector registers");
+        } // if
+    } // VectorTransform()
+
+    @Override
+    public void transform(double[] m, int offset,
+            double[] x, double[] y, double[] z, double[] w,
+            double[] toX, double[] toY, double[] toZ, double[] toW, int count) {
+        double m00 = m[offset], m01 = m[offset + 1], m02 = m[offset + 2], m03 = m[offset + 3];
+        double m10 = m[offset + 4], m11 = m[offset + 5], m12 = m[offset + 6], m13 = m[offset + 7];
+        double m20 = m[offset + 8], m21 = m[offset + 9], m22 = m[offset + 10], m23 = m[offset + 11];
+        int bound = DOUBLES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(DOUBLES, x, i);
+            DoubleVector vy = DoubleVector.fromArray(DOUBLES, y, i);
+            DoubleVector vz = DoubleVector.fromArray(DOUBLES, z, i);
+            DoubleVector vw = DoubleVector.fromArray(DOUBLES, w, i);
+            // Added up in the scalar loop's order, not fused, so both give
+            // the same results.
+            vx.mul(m00).add(vy.mul(m01)).add(vz.mul(m02)).add(vw.mul(m03))
+                    .intoArray(toX, i);
+            vx.mul(m10).add(vy.mul(m11)).add(vz.mul(m12)).add(vw.mul(m13))
+                    .intoArray(toY, i);
+            vx.mul(m20).add(vy.mul(m21)).add(vz.mul(m22)).add(vw.mul(m23))
+                    .intoArray(toZ, i);
+            vw.intoArray(toW, i);
+        } // for
+        ScalarTransform.transform(m, offset, x, y, z, w, toX, toY, toZ, toW,
+                i, count);
+    } // transform( double [], int, double [] ... , int )
+
+    @Override
+    public void transform(float[] m, int offset,
+            float[] x, float[] y, float[] z, float[] w,
+            float[] toX, float[] toY, float[] toZ, float[] toW, int count) {
+        float m00 = m[offset], m01 = m[offset + 1], m02 = m[offset + 2], m03 = m[offset + 3];
+        float m10 = m[offset + 4], m11 = m[offset + 5], m12 = m[offset + 6], m13 = m[offset + 7];
+        float m20 = m[offset + 8], m21 = m[offset + 9], m22 = m[offset + 10], m23 = m[offset + 11];
+        int bound = FLOATS.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOATS, x, i);
+            FloatVector vy = FloatVector.fromArray(FLOATS, y, i);
+            FloatVector vz = FloatVector.fromArray(FLOATS, z, i);
+            FloatVector vw = FloatVector.fromArray(FLOATS, w, i);
+            vx.mul(m00).add(vy.mul(m01)).add(vz.mul(m02)).add(vw.mul(m03))
+                    .intoArray(toX, i);
+            vx.mul(m10).add(vy.mul(m11)).add(vz.mul(m12)).add(vw.mul(m13))
+                    .intoArray(toY, i);
+            vx.mul(m20).add(vy.mul(m21)).add(vz.mul(m22)).add(vw.mul(m23))
+                    .intoArray(toZ, i);
+            vw.intoArray(toW, i);
+        } // for
+        ScalarTransform.transform(m, offset, x, y, z, w, toX, toY, toZ, toW,
+                i, count);
+    } // transform( float [], int, float [] ... , int )
+
+    @Override
+    public String getName() {
+        return "Vector API, " + DOUBLES.length() + " doubles or "
+                + FLOATS.length() + " floats at a time";
+    } // getName()
+
+} // VectorTransform
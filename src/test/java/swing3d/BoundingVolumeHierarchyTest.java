@@ -0,0 +1,206 @@
+package swing3d;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that BoundingVolumeHierarchy queries find exactly the leaves a brute
+ * force test over every leaf finds, before and after the leaves move and the
+ * tree is refitted.
+ *
+ * @author marcus
+ */
+public class BoundingVolumeHierarchyTest {
+
+    private static final int LEAVES = 500;
+
+    @Test
+    public void emptyTreeFindsNothing() {
+        BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy();
+        tree.refit();
+        assertEquals(0, tree.query(-1, -1, -1, 1, 1, 1, new int[0]));
+    } // emptyTreeFindsNothing()
+
+    @Test
+    public void boxQueryMatchesBruteForce() {
+        Random random = new Random(1);
+        double[] boxes = randomBoxes(random, LEAVES);
+        BoundingVolumeHierarchy tree = newTree(boxes);
+        for (int q = 0; q < 200; q++) {
+            double[] query = randomBox(random, 5.0);
+            assertQuery(tree, boxes, query);
+        } // for
+    } // boxQueryMatchesBruteForce()
+
+    @Test
+    public void refitFollowsMovedLeaves() {
+        Random random = new Random(2);
+        double[] boxes = randomBoxes(random, LEAVES);
+        BoundingVolumeHierarchy tree = newTree(boxes);
+        for (int frame = 0; frame < 10; frame++) {
+            //move every leaf, some a long way, without changing the count
+            for (int leaf = 0; leaf < LEAVES; leaf++) {
+                double dx = random.nextGaussian() * (leaf % 7 == 0 ? 20 : 1);
+                double dy = random.nextGaussian();
+                double dz = random.nextGaussian();
+                for (int k = 0; k < 6; k += 3) {
+                    boxes[6 * leaf + k] += dx;
+                    boxes[6 * leaf + k + 1] += dy;
+                    boxes[6 * leaf + k + 2] += dz;
+                } // for
+            } // for
+            setLeaves(tree, boxes);
+            tree.refit();
+            for (int q = 0; q < 50; q++) {
+                assertQuery(tree, boxes, randomBox(random, 8.0));
+            } // for
+        } // for
+    } // refitFollowsMovedLeaves()
+
+    @Test
+    public void refitRebuildsWhenTheCountChanges() {
+        Random random = new Random(3);
+        BoundingVolumeHierarchy tree = newTree(randomBoxes(random, LEAVES));
+        double[] boxes = randomBoxes(random, 37);
+        setLeaves(tree, boxes);
+        tree.refit();
+        assertEquals(37, tree.getLeafCount());
+        for (int q = 0; q < 100; q++) {
+            assertQuery(tree, boxes, randomBox(random, 10.0));
+        } // for
+    } // refitRebuildsWhenTheCountChanges()
+
+    @Test
+    public void planeQueryFindsLeavesNotOutsideAnyPlane() {
+        Random random = new Random(4);
+        double[] boxes = randomBoxes(random, LEAVES);
+        BoundingVolumeHierarchy tree = newTree(boxes);
+        int[] out = new int[LEAVES];
+        int inside = 0;
+        for (int q = 0; q < 100; q++) {
+            //four random planes through points near the middle
+            double[] planes = new double[16];
+            for (int p = 0; p < 4; p++) {
+                double a = random.nextGaussian();
+                double b = random.nextGaussian();
+                double c = random.nextGaussian();
+                planes[4 * p] = a;
+                planes[4 * p + 1] = b;
+                planes[4 * p + 2] = c;
+                planes[4 * p + 3] = -(a * random.nextGaussian() * 10
+                        + b * random.nextGaussian() * 10
+                        + c * random.nextGaussian() * 10);
+            } // for
+            int found = tree.query(planes, 4, out);
+            boolean[] hit = new boolean[LEAVES];
+            for (int k = 0; k < found; k++) {
+                assertFalse(hit[out[k]], "leaf found twice");
+                hit[out[k]] = true;
+            } // for
+            for (int leaf = 0; leaf < LEAVES; leaf++) {
+                boolean outside = false;
+                for (int p = 0; p < 4; p++) {
+                    outside |= isOutside(boxes, leaf, planes, 4 * p);
+                } // for
+                assertEquals(!outside, hit[leaf], "leaf " + leaf);
+                if (!outside) {
+                    inside++;
+                }
+            } // for
+        } // for
+        assertTrue(inside > 0, "no leaf was inside any query");
+    } // planeQueryFindsLeavesNotOutsideAnyPlane()
+
+    /**
+     * Checks that a box query finds exactly the leaves overlapping it, each
+     * once.
+     */
+    private static void assertQuery(BoundingVolumeHierarchy tree,
+            double[] boxes, double[] query) {
+        int count = boxes.length / 6;
+        int[] out = new int[count];
+        int found = tree.query(query[0], query[1], query[2], query[3],
+                query[4], query[5], out);
+        int[] actual = Arrays.copyOf(out, found);
+        Arrays.sort(actual);
+
+        int[] expected = new int[count];
+        int hits = 0;
+        for (int leaf = 0; leaf < count; leaf++) {
+            int o = 6 * leaf;
+            if (boxes[o] <= query[3] && boxes[o + 3] >= query[0]
+                    && boxes[o + 1] <= query[4] && boxes[o + 4] >= query[1]
+                    && boxes[o + 2] <= query[5] && boxes[o + 5] >= query[2]) {
+                expected[hits++] = leaf;
+            }
+        } // for
+        assertArrayEquals(Arrays.copyOf(expected, hits), actual);
+    } // assertQuery( BoundingVolumeHierarchy, double [], double [] )
+
+    /**
+     * Returns whether a leaf's box is wholly on the outside of a plane.
+     */
+    private static boolean isOutside(double[] boxes, int leaf,
+            double[] planes, int p) {
+        int o = 6 * leaf;
+        double a = planes[p];
+        double b = planes[p + 1];
+        double c = planes[p + 2];
+        //the corner furthest along the plane's normal
+        double x = a >= 0 ? boxes[o + 3] : boxes[o];
+        double y = b >= 0 ? boxes[o + 4] : boxes[o + 1];
+        double z = c >= 0 ? boxes[o + 5] : boxes[o + 2];
+        return a * x + b * y + c * z + planes[p + 3] < 0;
+    } // isOutside( double [], int, double [], int )
+
+    /**
+     * Creates a tree over boxes and refits it.
+     */
+    private static BoundingVolumeHierarchy newTree(double[] boxes) {
+        BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy();
+        setLeaves(tree, boxes);
+        tree.refit();
+        return tree;
+    } // newTree( double [] )
+
+    /**
+     * Sets a tree's leaves to boxes, six values each.
+     */
+    private static void setLeaves(BoundingVolumeHierarchy tree,
+            double[] boxes) {
+        tree.setLeafCount(boxes.length / 6);
+        for (int leaf = 0; leaf < boxes.length / 6; leaf++) {
+            int o = 6 * leaf;
+            tree.setLeaf(leaf, boxes[o], boxes[o + 1], boxes[o + 2],
+                    boxes[o + 3], boxes[o + 4], boxes[o + 5]);
+        } // for
+    } // setLeaves( BoundingVolumeHierarchy, double [] )
+
+    /**
+     * Returns count small boxes scattered over a cube 50 across.
+     */
+    private static double[] randomBoxes(Random random, int count) {
+        double[] boxes = new double[6 * count];
+        for (int leaf = 0; leaf < count; leaf++) {
+            System.arraycopy(randomBox(random, 1.0), 0, boxes, 6 * leaf, 6);
+        } // for
+        return boxes;
+    } // randomBoxes( Random, int )
+
+    /**
+     * Returns a box up to size across, somewhere in a cube 50 across.
+     */
+    private static double[] randomBox(Random random, double size) {
+        double x = (random.nextDouble() - 0.5) * 50;
+        double y = (random.nextDouble() - 0.5) * 50;
+        double z = (random.nextDouble() - 0.5) * 50;
+        return new double[]{x, y, z, x + random.nextDouble() * size,
+            y + random.nextDouble() * size, z + random.nextDouble() * size};
+    } // randomBox( Random, double )
+
+} // BoundingVolumeHierarchyTest
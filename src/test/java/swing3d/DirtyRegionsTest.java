@@ -0,0 +1,231 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that DirtyRegions returns few, separate regions inside the panel, and
+ * that repainting only those regions of a persistent image gives the same
+ * pixels as rendering every frame whole, for every renderer.
+ *
+ * @author marcus
+ */
+public class DirtyRegionsTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+    private static final int FRAMES = 40;
+    private static final Color BACKGROUND = Color.darkGray;
+
+    @Test
+    public void regionsAreFewSeparateAndInsideThePanel() {
+        for (boolean coalescing : new boolean[]{false, true}) {
+            for (int n : new int[]{1, 3, 30, 200}) {
+                Scene start = SwingPanel.createScene(n, 12, "normal");
+                Scene scene = new Scene(start);
+                DirtyRegions regions = new DirtyRegions();
+                regions.setCoalescing(coalescing);
+                int max = coalescing ? DirtyRegions.MAX_REGIONS : 1;
+                for (int frame = 0; frame < FRAMES; frame++) {
+                    move(start, scene, frame);
+                    List<Rectangle> dirty = regions.update(scene,
+                            newCamera(), WIDTH, HEIGHT, null);
+                    assertTrue(dirty.size() <= max,
+                            dirty.size() + " regions");
+                    Rectangle panel = new Rectangle(0, 0, WIDTH, HEIGHT);
+                    for (int a = 0; a < dirty.size(); a++) {
+                        assertFalse(dirty.get(a).isEmpty());
+                        assertTrue(panel.contains(dirty.get(a)),
+                                dirty.get(a) + " outside the panel");
+                        for (int b = a + 1; b < dirty.size(); b++) {
+                            assertFalse(dirty.get(a).intersects(dirty.get(b)),
+                                    dirty.get(a) + " overlaps " + dirty.get(b));
+                        } // for b
+                    } // for a
+                } // for frame
+            } // for n
+        } // for coalescing
+    } // regionsAreFewSeparateAndInsideThePanel()
+
+    @Test
+    public void separateShapesKeepSeparateRegions() {
+        Scene scene = SwingPanel.createScene(4, 12, "normal");
+        DirtyRegions regions = new DirtyRegions();
+        regions.setCoalescing(true);
+        Camera camera = newCamera();
+        List<Rectangle> dirty = regions.update(scene, camera, WIDTH, HEIGHT,
+                null);
+        assertEquals(4, dirty.size());
+        long area = 0;
+        for (Rectangle region : dirty) {
+            area += (long) region.width * region.height;
+        } // for
+        assertTrue(area < WIDTH * HEIGHT / 2, "repainted " + area);
+
+        //uncoalesced, the same shapes give the one rectangle round them all
+        regions = new DirtyRegions();
+        dirty = regions.update(scene, camera, WIDTH, HEIGHT, null);
+        assertEquals(1, dirty.size());
+    } // separateShapesKeepSeparateRegions()
+
+    @Test
+    public void extraRectangleIsClippedToThePanel() {
+        DirtyRegions regions = new DirtyRegions();
+        List<Rectangle> dirty = regions.update(new Scene(), newCamera(), WIDTH,
+                HEIGHT, new Rectangle(-10, 280, 50, 50));
+        assertEquals(1, dirty.size());
+        assertEquals(new Rectangle(0, 280, 40, 20), dirty.get(0));
+
+        //the next frame still erases it
+        dirty = regions.update(new Scene(), newCamera(), WIDTH, HEIGHT, null);
+        assertEquals(1, dirty.size());
+        assertEquals(new Rectangle(0, 280, 40, 20), dirty.get(0));
+        dirty = regions.update(new Scene(), newCamera(), WIDTH, HEIGHT, null);
+        assertEquals(0, dirty.size());
+    } // extraRectangleIsClippedToThePanel()
+
+    @Test
+    public void partialRepaintsMatchFullFrames() {
+        for (String kind : new String[]{"z", "tiled", "g2d"}) {
+            for (boolean coalescing : new boolean[]{false, true}) {
+                for (int n : new int[]{1, 3, 30}) {
+                    for (boolean instanced : new boolean[]{false, true}) {
+                        assertRepaints(kind, Illumination.Shading.FLAT,
+                                coalescing, n, instanced);
+                    } // for instanced
+                } // for n
+            } // for coalescing
+        } // for kind
+    } // partialRepaintsMatchFullFrames()
+
+    @Test
+    public void partialGouraudRepaintsMatchFullFrames() {
+        //Graphics2D always shades flat
+        for (String kind : new String[]{"z", "tiled"}) {
+            for (boolean coalescing : new boolean[]{false, true}) {
+                for (int n : new int[]{3, 30}) {
+                    assertRepaints(kind, Illumination.Shading.GOURAUD,
+                            coalescing, n, false);
+                } // for n
+            } // for coalescing
+        } // for kind
+    } // partialGouraudRepaintsMatchFullFrames()
+
+    /**
+     * Runs FRAMES moving frames, repainting only the dirty regions of one
+     * image, and checks each against a frame rendered whole.
+     */
+    private static void assertRepaints(String kind,
+            Illumination.Shading shading, boolean coalescing, int n,
+            boolean instanced) {
+        String name = kind + " " + shading
+                + (coalescing ? " coalescing" : "") + " with " + n
+                + (instanced ? " instanced" : "") + " shapes";
+        Scene start = instanced
+                ? SwingPanel.createInstancedScene(n, 12, "normal")
+                : SwingPanel.createScene(n, 12, "normal");
+        Scene scene = new Scene(start);
+        Illumination illumination = new Illumination();
+        illumination.setShading(shading);
+        Renderer full = newRenderer(kind, illumination);
+        Renderer partial = newRenderer(kind, illumination);
+        Camera camera = newCamera();
+        DirtyRegions regions = new DirtyRegions();
+        regions.setCoalescing(coalescing);
+        BufferedImage screen = newImage();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            move(start, scene, frame);
+            for (Rectangle region : regions.update(scene, camera, WIDTH,
+                    HEIGHT, null)) {
+                Graphics2D g = screen.createGraphics();
+                g.setClip(region);
+                g.setColor(BACKGROUND);
+                g.fill(region);
+                partial.render(g, camera, scene, BACKGROUND, WIDTH, HEIGHT);
+                g.dispose();
+            } // for
+
+            BufferedImage expected = newImage();
+            Graphics2D g = expected.createGraphics();
+            full.render(g, camera, scene, BACKGROUND, WIDTH, HEIGHT);
+            g.dispose();
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (expected.getRGB(x, y) != screen.getRGB(x, y)) {
+                        throw new AssertionError(name + ": frame " + frame
+                                + " differs at " + x + ", " + y);
+                    }
+                } // for x
+            } // for y
+        } // for frame
+    } // assertRepaints( String, Illumination.Shading, boolean, int, boolean )
+
+    /**
+     * Sets a scene to a frame of its start, also sliding plain objects
+     * across the panel at different speeds so regions part and meet.
+     */
+    private static void move(Scene start, Scene scene, int frame) {
+        scene.setFrame(start, 3L * frame);
+        Matrix4X4 pose = new Matrix4X4();
+        for (int i = 0; i < scene.size(); i++) {
+            start.getMotion(i).getPose(pose);
+            scene.getMotion(i).setPosition(
+                    pose.get(0, 3) + 0.02 * frame * (i % 3 - 1),
+                    pose.get(1, 3) + 0.015 * frame, pose.get(2, 3));
+            scene.getMotion(i).place(scene.getRest(i), scene.get(i));
+        } // for
+    } // move( Scene, Scene, int )
+
+    /**
+     * Returns a camera that shows the scene at half size, off to the left,
+     * leaving empty panel round it.
+     */
+    private static Camera newCamera() {
+        Camera camera = new Camera();
+        camera.setViewport(0, 0, WIDTH, HEIGHT);
+        Matrix4X4 view = new Matrix4X4();
+        view.scale(0.5, 0.5, 0.5);
+        view.set(0, 3, -0.3);
+        camera.setView(view);
+        return camera;
+    } // newCamera()
+
+    /**
+     * Returns a renderer of a kind.
+     */
+    private static Renderer newRenderer(String kind,
+            Illumination illumination) {
+        switch (kind) {
+            case "z":
+                return new ZBufferRenderer(illumination, new BackFaceCuller(),
+                        new FrameMetrics());
+            case "tiled":
+                return new TiledRenderer(illumination, new BackFaceCuller(),
+                        new FrameMetrics());
+            default:
+                return new Graphics2DRenderer(illumination,
+                        new BackFaceCuller(), new FrameMetrics());
+        } // switch
+    } // newRenderer( String, Illumination )
+
+    /**
+     * Returns an image filled with the background.
+     */
+    private static BufferedImage newImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return image;
+    } // newImage()
+
+} // DirtyRegionsTest
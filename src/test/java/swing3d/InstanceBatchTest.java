@@ -0,0 +1,139 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a scene of one InstanceBatch draws exactly what the same grid of
+ * separate meshes draws, in every renderer.
+ *
+ * @author marcus
+ */
+public class InstanceBatchTest {
+
+    private static final int SIZE = 300;
+    private static final int COUNT = 16;
+    private static final Color BACKGROUND = Color.darkGray;
+
+    @Test
+    public void drawsLikeOneMeshPerObject() {
+        assertSameAsPlain(createPlain(), createInstanced());
+    } // drawsLikeOneMeshPerObject()
+
+    @Test
+    public void updatesLikeOneMeshPerObject() {
+        Scene plain = createPlain();
+        Scene instanced = createInstanced();
+        for (int k = 0; k < 1000; k++) {
+            plain.update();
+            instanced.update();
+        } // for
+        assertSameAsPlain(plain, instanced);
+    } // updatesLikeOneMeshPerObject()
+
+    @Test
+    public void setFrameLikeOneMeshPerObject() {
+        Scene plainStart = createPlain();
+        Scene instancedStart = createInstanced();
+        Scene plain = new Scene(plainStart);
+        Scene instanced = new Scene(instancedStart);
+        plain.setFrame(plainStart, 777);
+        instanced.setFrame(instancedStart, 777);
+        assertSameAsPlain(plain, instanced);
+    } // setFrameLikeOneMeshPerObject()
+
+    @Test
+    public void copiesAreIndependent() {
+        InstanceBatch batch = createInstanced().getBatch(0);
+        InstanceBatch copy = new InstanceBatch(batch);
+        copy.update();
+        copy.setColour(0, Color.blue);
+        Matrix4X4 original = new Matrix4X4();
+        Matrix4X4 moved = new Matrix4X4();
+        batch.getPose(0, original);
+        copy.getPose(0, moved);
+        assertTrue(original.get(0, 0) != moved.get(0, 0), "pose shared");
+        assertEquals(Color.red.getRGB() & 0xFFFFFF, batch.getColour(0));
+        assertEquals(COUNT, copy.size());
+    } // copiesAreIndependent()
+
+    /**
+     * Checks that two scenes render the same in every renderer.
+     */
+    static void assertSameAsPlain(Scene plain, Scene instanced) {
+        for (String kind : new String[]{"z", "tiled", "g2d"}) {
+            Illumination illumination = new Illumination();
+            illumination.setColour(Color.red);
+            BufferedImage expected = render(kind, illumination, plain);
+            BufferedImage actual = render(kind, illumination, instanced);
+            int drawn = 0;
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int rgb = expected.getRGB(x, y);
+                    if (rgb != actual.getRGB(x, y)) {
+                        throw new AssertionError(kind + " differs at " + x
+                                + ", " + y);
+                    }
+                    if (rgb != BACKGROUND.getRGB()) {
+                        drawn++;
+                    }
+                } // for x
+            } // for y
+            assertTrue(drawn > 0, "nothing was drawn");
+        } // for kind
+    } // assertSameAsPlain( Scene, Scene )
+
+    /**
+     * Returns SwingPanel's grid of COUNT separate hexagonal prisms.
+     */
+    static Scene createPlain() {
+        return SwingPanel.createScene(COUNT, 6, "normal");
+    } // createPlain()
+
+    /**
+     * Returns SwingPanel's grid as a batch of instances, all coloured red
+     * like the plain grid.
+     */
+    static Scene createInstanced() {
+        Scene scene = SwingPanel.createInstancedScene(COUNT, 6, "normal");
+        for (int i = 0; i < COUNT; i++) {
+            scene.getBatch(0).setColour(i, Color.red);
+        } // for
+        return scene;
+    } // createInstanced()
+
+    /**
+     * Renders a scene with a new renderer of a kind.
+     */
+    private static BufferedImage render(String kind,
+            Illumination illumination, Scene scene) {
+        Renderer renderer;
+        switch (kind) {
+            case "z":
+                renderer = new ZBufferRenderer(illumination,
+                        new BackFaceCuller(), new FrameMetrics());
+                break;
+            case "tiled":
+                renderer = new TiledRenderer(illumination,
+                        new BackFaceCuller(), new FrameMetrics());
+                break;
+            default:
+                renderer = new Graphics2DRenderer(illumination,
+                        new BackFaceCuller(), new FrameMetrics());
+                break;
+        } // switch
+        Camera camera = new Camera();
+        camera.setViewport(0, 0, SIZE, SIZE);
+        BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        renderer.render(g, camera, scene, BACKGROUND, SIZE, SIZE);
+        g.dispose();
+        return image;
+    } // render( String, Illumination, Scene )
+
+} // InstanceBatchTest
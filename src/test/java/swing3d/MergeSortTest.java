@@ -0,0 +1,84 @@
+package swing3d;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests MergeSort.argsort, in particular that equal keys keep their original
+ * order, which the painter's sort relies on for ties to draw in scene order.
+ *
+ * @author marcus
+ */
+public class MergeSortTest {
+
+    @Test
+    public void sortsAscending() {
+        double[] keys = {3.0, -1.0, 2.5, 0.0, 7.0};
+        int[] order = new int[keys.length];
+        MergeSort.argsort(keys, order);
+        assertArrayEquals(new int[]{1, 3, 2, 0, 4}, order);
+    } // sortsAscending()
+
+    @Test
+    public void equalKeysKeepTheirOrder() {
+        double[] keys = {1.0, 0.0, 1.0, 0.0, 1.0, 0.0};
+        int[] order = new int[keys.length];
+        MergeSort.argsort(keys, order);
+        assertArrayEquals(new int[]{1, 3, 5, 0, 2, 4}, order);
+
+        MergeSort.argsort(keys, keys.length, order, new int[keys.length],
+                true);
+        assertArrayEquals(new int[]{0, 2, 4, 1, 3, 5}, order);
+    } // equalKeysKeepTheirOrder()
+
+    @Test
+    public void onlySortsTheFirstCount() {
+        double[] keys = {5.0, 4.0, 3.0, -100.0};
+        int[] order = {9, 9, 9, 9};
+        MergeSort.argsort(keys, 3, order, new int[3], false);
+        assertArrayEquals(new int[]{2, 1, 0, 9}, order);
+    } // onlySortsTheFirstCount()
+
+    @Test
+    public void isStableAcrossMergedRuns() {
+        //enough keys for several insertion runs and merge passes, with many ties
+        Random random = new Random(42);
+        for (int count : new int[]{0, 1, 2, 15, 16, 17, 33, 100, 1000}) {
+            double[] keys = new double[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(8);
+            } // for
+            int[] order = new int[count];
+            int[] scratch = new int[count];
+            for (boolean descending : new boolean[]{false, true}) {
+                MergeSort.argsort(keys, count, order, scratch, descending);
+                assertIsPermutation(order, count);
+                for (int k = 1; k < count; k++) {
+                    double before = keys[order[k - 1]];
+                    double after = keys[order[k]];
+                    assertTrue(descending ? before >= after : before <= after,
+                            "out of order at " + k);
+                    if (before == after) {
+                        assertTrue(order[k - 1] < order[k],
+                                "tie out of order at " + k);
+                    }
+                } // for
+            } // for descending
+        } // for count
+    } // isStableAcrossMergedRuns()
+
+    /**
+     * Checks that the first count elements of order hold 0 to count - 1 once
+     * each.
+     */
+    private static void assertIsPermutation(int[] order, int count) {
+        boolean[] seen = new boolean[count];
+        for (int k = 0; k < count; k++) {
+            assertTrue(!seen[order[k]], "index " + order[k] + " repeated");
+            seen[order[k]] = true;
+        } // for
+    } // assertIsPermutation( int [], int )
+
+} // MergeSortTest
@@ -0,0 +1,152 @@
+package swing3d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests MeshLoader on small OBJ and binary STL files written for each test.
+ *
+ * @author marcus
+ */
+public class MeshLoaderTest {
+
+    @Test
+    public void readsObjVerticesAndFaces(@TempDir Path dir)
+            throws IOException {
+        Mesh mesh = MeshLoader.load(write(dir, "quad.obj",
+                "# a unit square\n"
+                + "v 0 0 0\n"
+                + "v 1 0 0\n"
+                + "v 1 1 0\n"
+                + "v 0 1 0.5e1\n"
+                + "f 1/1/1 2/2/1 3/3/1 4/4/1\n"));
+        assertEquals(4, mesh.getVertexCount());
+        assertEquals(1, mesh.getFaceCount());
+        assertEquals(4, mesh.getFaceSize(0));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, corners(mesh, 0));
+        assertEquals(5.0, mesh.getZ(3), 0.0);
+    } // readsObjVerticesAndFaces( Path )
+
+    @Test
+    public void countsNegativeObjIndicesBackFromTheLastVertex(
+            @TempDir Path dir) throws IOException {
+        Mesh mesh = MeshLoader.loadObj(write(dir, "relative.obj",
+                "v 0 0 0\n"
+                + "v 1 0 0\n"
+                + "v 0 1 0\n"
+                + "f -3 -2 -1\n"
+                + "v 1 1 0\n"
+                + "f -3 -1 -2\n"
+                + "f 1 -1 3\n"));
+        assertEquals(3, mesh.getFaceCount());
+        assertArrayEquals(new int[]{0, 1, 2}, corners(mesh, 0));
+        assertArrayEquals(new int[]{1, 3, 2}, corners(mesh, 1));
+        assertArrayEquals(new int[]{0, 3, 2}, corners(mesh, 2));
+    } // countsNegativeObjIndicesBackFromTheLastVertex( Path )
+
+    @Test
+    public void dropsObjFacesWithTooFewCorners(@TempDir Path dir)
+            throws IOException {
+        Mesh mesh = MeshLoader.loadObj(write(dir, "line.obj",
+                "v 0 0 0\n"
+                + "v 1 0 0\n"
+                + "v 0 1 0\n"
+                + "f 1 2\n"
+                + "f 1 2 3\n"));
+        assertEquals(1, mesh.getFaceCount());
+        assertArrayEquals(new int[]{0, 1, 2}, corners(mesh, 0));
+    } // dropsObjFacesWithTooFewCorners( Path )
+
+    @Test
+    public void rejectsObjIndicesOutOfRange(@TempDir Path dir)
+            throws IOException {
+        Path before = write(dir, "before.obj", "v 0 0 0\nf -1 -2 1\n");
+        assertThrows(IOException.class, () -> MeshLoader.loadObj(before));
+        Path after = write(dir, "after.obj", "v 0 0 0\nf 1 1 2\n");
+        assertThrows(IOException.class, () -> MeshLoader.loadObj(after));
+    } // rejectsObjIndicesOutOfRange( Path )
+
+    @Test
+    public void readsBinaryStl(@TempDir Path dir) throws IOException {
+        Mesh mesh = MeshLoader.load(writeStl(dir, "two.stl", 2, 0));
+        assertEquals(6, mesh.getVertexCount());
+        assertEquals(2, mesh.getFaceCount());
+        assertArrayEquals(new int[]{3, 4, 5}, corners(mesh, 1));
+        for (int v = 0; v < 6; v++) {
+            assertEquals(v, mesh.getX(v), 0.0);
+            assertEquals(-v, mesh.getY(v), 0.0);
+            assertEquals(0.5 * v, mesh.getZ(v), 0.0);
+        } // for
+    } // readsBinaryStl( Path )
+
+    @Test
+    public void rejectsStlWhoseSizeDoesNotMatchItsCount(@TempDir Path dir)
+            throws IOException {
+        Path extra = writeStl(dir, "extra.stl", 2, 1);
+        assertThrows(IOException.class, () -> MeshLoader.loadStl(extra));
+        Path missing = writeStl(dir, "missing.stl", 2, -1);
+        assertThrows(IOException.class, () -> MeshLoader.loadStl(missing));
+        Path header = write(dir, "short.stl", "solid ascii\n");
+        assertThrows(IOException.class, () -> MeshLoader.loadStl(header));
+    } // rejectsStlWhoseSizeDoesNotMatchItsCount( Path )
+
+    @Test
+    public void rejectsUnknownExtensions(@TempDir Path dir)
+            throws IOException {
+        Path file = write(dir, "mesh.ply", "ply\n");
+        assertThrows(IOException.class, () -> MeshLoader.load(file));
+    } // rejectsUnknownExtensions( Path )
+
+    /**
+     * Writes a text file.
+     */
+    private static Path write(Path dir, String name, String text)
+            throws IOException {
+        return Files.write(dir.resolve(name),
+                text.getBytes(StandardCharsets.US_ASCII));
+    } // write( Path, String, String )
+
+    /**
+     * Writes a binary STL file of count triangles, whose vertex v is at
+     * (v, -v, v / 2), with extra bytes added to or cut from the end.
+     */
+    private static Path writeStl(Path dir, String name, int count, int extra)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(84 + 50 * count + extra)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(80, count);
+        for (int t = 0; t < count; t++) {
+            int offset = 84 + 50 * t + 12;
+            for (int k = 0; k < 3; k++) {
+                int v = 3 * t + k;
+                if (offset + 12 > buffer.limit()) {
+                    break;
+                }
+                buffer.putFloat(offset, v);
+                buffer.putFloat(offset + 4, -v);
+                buffer.putFloat(offset + 8, 0.5f * v);
+                offset += 12;
+            } // for
+        } // for
+        return Files.write(dir.resolve(name), buffer.array());
+    } // writeStl( Path, String, int, int )
+
+    /**
+     * Returns the vertex indices of a face.
+     */
+    private static int[] corners(Mesh mesh, int face) {
+        int[] corners = new int[mesh.getFaceSize(face)];
+        mesh.getFaceVertices(face, corners);
+        return corners;
+    } // corners( Mesh, int )
+
+} // MeshLoaderTest
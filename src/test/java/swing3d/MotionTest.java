@@ -0,0 +1,171 @@
+package swing3d;
+
+import java.awt.Color;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a Motion, and an InstanceBatch moving the same way, reach the
+ * same pose by stepping one update at a time as by jumping straight to a
+ * frame, however many updates are run.
+ *
+ * @author marcus
+ */
+public class MotionTest {
+
+    @Test
+    public void updateAgreesWithSetFrameAfterAMillionUpdates() {
+        //a polygon spun the way SwingPanel spins every one in its scenes
+        Matrix4X4 a = new Matrix4X4();
+        a.rotationX(-0.01);
+        Matrix4X4 b = new Matrix4X4();
+        b.rotationY(0.04);
+        Matrix4X4 c = new Matrix4X4();
+        c.rotationZ(0.025);
+        Scene start = new Scene();
+        start.add(Polygon3D.create(6, 0.3, 0.5, "normal"),
+                a.multiply(b).multiply(c), 0.2, 0.1, 0);
+        Scene stepped = new Scene(start);
+        for (int k = 0; k < 1000000; k++) {
+            stepped.update();
+        } // for
+        Scene direct = new Scene(start);
+        direct.setFrame(start, 1000000);
+
+        //rounding in the power's angle, about 5e4 radians by now, dominates;
+        //the largest difference is about 5e-13
+        Mesh expected = direct.get(0);
+        Mesh actual = stepped.get(0);
+        for (int v = 0; v < expected.getVertexCount(); v++) {
+            assertEquals(expected.getX(v), actual.getX(v), 1e-12);
+            assertEquals(expected.getY(v), actual.getY(v), 1e-12);
+            assertEquals(expected.getZ(v), actual.getZ(v), 1e-12);
+        } // for
+        Matrix4X4 pose = new Matrix4X4();
+        stepped.getMotion(0).getPose(pose);
+        assertOrthonormal(pose);
+    } // updateAgreesWithSetFrameAfterAMillionUpdates()
+
+    @Test
+    public void setTimeBetweenUpdates() {
+        Motion motion = newMotion();
+        Quaternion start = new Quaternion();
+        start.set(motion.getOrientation());
+        motion.setTime(0.5);
+        //half an update, applied twice, is one update
+        Quaternion half = new Quaternion(start.w(), -start.x(), -start.y(),
+                -start.z());
+        motion.getOrientation().multiplyInto(half, half);
+        Quaternion twice = new Quaternion();
+        half.multiplyInto(half, twice);
+        Quaternion spin = spin();
+        assertEquals(spin.w(), twice.w(), 1e-15);
+        assertEquals(spin.x(), twice.x(), 1e-15);
+        assertEquals(spin.y(), twice.y(), 1e-15);
+        assertEquals(spin.z(), twice.z(), 1e-15);
+        assertEquals(0.5, motion.getTime(), 0.0);
+    } // setTimeBetweenUpdates()
+
+    @Test
+    public void matrixSpinnerStartsUnrotated() {
+        Matrix4X4 spinner = new Matrix4X4();
+        spinner.rotationY(0.1);
+        Motion motion = new Motion(spinner, 1, 2, 3);
+        Matrix4X4 pose = new Matrix4X4();
+        motion.getPose(pose);
+        Matrix4X4 expected = new Matrix4X4();
+        expected.translate(1, 2, 3);
+        assertPose(expected, pose, 0.0);
+
+        motion.step();
+        motion.getPose(pose);
+        expected.set(spinner);
+        expected.set(0, 3, 1);
+        expected.set(1, 3, 2);
+        expected.set(2, 3, 3);
+        assertPose(expected, pose, 1e-15);
+    } // matrixSpinnerStartsUnrotated()
+
+    @Test
+    public void batchMovesLikeMotion() {
+        Motion motion = newMotion();
+        InstanceBatch batch = new InstanceBatch(triangle());
+        batch.add(newMotion().getOrientation(), spin(), 4, 5, 6, Color.red);
+        InstanceBatch start = new InstanceBatch(batch);
+        InstanceBatch direct = new InstanceBatch(batch);
+        Matrix4X4 expected = new Matrix4X4();
+        Matrix4X4 actual = new Matrix4X4();
+        for (int checkpoint = 1; checkpoint <= 4; checkpoint++) {
+            for (int k = 0; k < 50000; k++) {
+                motion.step();
+                batch.update();
+            } // for
+            motion.getPose(expected);
+            batch.getPose(0, actual);
+            //both normalise on the same steps, so they round alike
+            assertPose(expected, actual, 0.0);
+
+            direct.setFrame(start, 50000L * checkpoint);
+            direct.getPose(0, actual);
+            assertPose(expected, actual, 1e-12);
+        } // for
+        assertOrthonormal(actual);
+    } // batchMovesLikeMotion()
+
+    /**
+     * Returns a motion with an orientation and a spin that are not about any
+     * one axis.
+     */
+    private static Motion newMotion() {
+        Quaternion orientation = new Quaternion();
+        orientation.axisAngle(1, 2, 3, 0.7);
+        return new Motion(orientation, spin(), 4, 5, 6);
+    } // newMotion()
+
+    /**
+     * Returns the spin newMotion uses.
+     */
+    private static Quaternion spin() {
+        Quaternion spin = new Quaternion();
+        spin.axisAngle(-2, 1, 0.5, 0.013);
+        return spin;
+    } // spin()
+
+    /**
+     * Returns a mesh of one triangle.
+     */
+    private static Mesh triangle() {
+        return new Mesh(new double[]{0, 1, 0}, new double[]{0, 0, 1},
+                new double[]{0, 0, 0}, new int[]{0, 3}, new int[]{0, 1, 2});
+    } // triangle()
+
+    /**
+     * Checks that the top three rows of two poses are equal to within a
+     * tolerance.
+     */
+    private static void assertPose(Matrix4X4 expected, Matrix4X4 actual,
+            double tolerance) {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                assertEquals(expected.get(r, c), actual.get(r, c), tolerance,
+                        "element " + r + ", " + c);
+            } // for
+        } // for
+    } // assertPose( Matrix4X4, Matrix4X4, double )
+
+    /**
+     * Checks that the rotation in a pose has unit, perpendicular rows.
+     */
+    private static void assertOrthonormal(Matrix4X4 pose) {
+        for (int a = 0; a < 3; a++) {
+            for (int b = 0; b < 3; b++) {
+                double dot = 0.0;
+                for (int c = 0; c < 3; c++) {
+                    dot += pose.get(a, c) * pose.get(b, c);
+                } // for
+                assertEquals(a == b ? 1.0 : 0.0, dot, 1e-14);
+            } // for
+        } // for
+    } // assertOrthonormal( Matrix4X4 )
+
+} // MotionTest
@@ -0,0 +1,179 @@
+package swing3d;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests Quaternion against the Matrix4X4 rotations it stands in for.
+ *
+ * @author marcus
+ */
+public class QuaternionTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void axisAngleTurnsLikeTheMatrixRotations() {
+        for (double angle = -3.0; angle <= 3.0; angle += 0.25) {
+            Matrix4X4 expected = new Matrix4X4();
+            Quaternion q = new Quaternion();
+
+            expected.rotationX(angle);
+            q.axisAngle(1, 0, 0, angle);
+            assertRotation(expected, q);
+
+            expected.rotationY(angle);
+            q.axisAngle(0, 1, 0, angle);
+            assertRotation(expected, q);
+
+            expected.rotationZ(angle);
+            q.axisAngle(0, 0, 2, angle);
+            assertRotation(expected, q);
+        } // for
+    } // axisAngleTurnsLikeTheMatrixRotations()
+
+    @Test
+    public void fromMatrixRoundTrips() {
+        Random random = new Random(5);
+        Matrix4X4 m = new Matrix4X4();
+        Quaternion q = new Quaternion();
+        for (int n = 0; n < 1000; n++) {
+            m.set(randomRotation(random));
+            q.fromMatrix(m);
+            assertEquals(1.0, q.length(), TOLERANCE);
+            assertTrue(q.w() >= 0.0, "w was " + q.w());
+            assertRotation(m, q);
+        } // for
+
+        //half turns, where w is 0 and the largest of x, y and z is used
+        double[][] axes = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}, {1, 1, 0},
+            {0, 1, -1}, {1, 1, 1}};
+        for (double[] axis : axes) {
+            Quaternion half = new Quaternion();
+            half.axisAngle(axis[0], axis[1], axis[2], Math.PI);
+            half.toMatrix(m);
+            q.fromMatrix(m);
+            assertRotation(m, q);
+        } // for
+    } // fromMatrixRoundTrips()
+
+    @Test
+    public void multiplyIntoMatchesTheMatrixProduct() {
+        Random random = new Random(6);
+        Quaternion a = randomQuaternion(random);
+        Quaternion b = randomQuaternion(random);
+        Matrix4X4 ma = new Matrix4X4();
+        Matrix4X4 mb = new Matrix4X4();
+        a.toMatrix(ma);
+        b.toMatrix(mb);
+        Quaternion product = new Quaternion();
+        a.multiplyInto(b, product);
+        assertRotation(ma.multiply(mb), product);
+
+        //writing over the left operand
+        a.multiplyInto(b, a);
+        assertRotation(ma.multiply(mb), a);
+    } // multiplyIntoMatchesTheMatrixProduct()
+
+    @Test
+    public void powerIntoMatchesTheMatrixPower() {
+        Random random = new Random(7);
+        Matrix4X4 m = new Matrix4X4();
+        Matrix4X4 power = new Matrix4X4();
+        Quaternion q = new Quaternion();
+        Quaternion result = new Quaternion();
+        for (int n = 0; n < 50; n++) {
+            q.axisAngle(random.nextGaussian(), random.nextGaussian(),
+                    random.nextGaussian(), random.nextDouble() * 0.2);
+            q.toMatrix(m);
+            for (long exponent : new long[]{0, 1, 2, 3, 17, 1000, 123457}) {
+                m.powerInto(exponent, power);
+                q.powerInto(exponent, result);
+                //the matrix power's own rounding grows with its products
+                assertRotation(power, result, 1e-9);
+            } // for
+        } // for
+    } // powerIntoMatchesTheMatrixPower()
+
+    @Test
+    public void powerIntoTurnsPartOfTheWay() {
+        Quaternion q = new Quaternion();
+        q.axisAngle(0, 1, 0, 0.8);
+        Quaternion quarter = new Quaternion();
+        q.powerInto(0.25, quarter);
+        Quaternion expected = new Quaternion();
+        expected.axisAngle(0, 1, 0, 0.2);
+        assertQuaternion(expected, quarter);
+
+        //the identity has no axis, so its powers are all the identity
+        Quaternion identity = new Quaternion();
+        identity.powerInto(0.5, q);
+        assertQuaternion(new Quaternion(), q);
+
+        //writing over the quaternion itself
+        expected.axisAngle(0, 1, 0, 2.4);
+        quarter.axisAngle(0, 1, 0, 0.2);
+        quarter.powerInto(12, quarter);
+        assertQuaternion(expected, quarter);
+    } // powerIntoTurnsPartOfTheWay()
+
+    /**
+     * Checks that a quaternion's matrix matches a rotation matrix.
+     */
+    private static void assertRotation(Matrix4X4 expected, Quaternion q) {
+        assertRotation(expected, q, TOLERANCE);
+    } // assertRotation( Matrix4X4, Quaternion )
+
+    /**
+     * Checks that a quaternion's matrix matches a rotation matrix to within
+     * a tolerance.
+     */
+    private static void assertRotation(Matrix4X4 expected, Quaternion q,
+            double tolerance) {
+        Matrix4X4 actual = new Matrix4X4();
+        q.toMatrix(actual);
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                assertEquals(expected.get(r, c), actual.get(r, c), tolerance,
+                        "element " + r + ", " + c);
+            } // for
+        } // for
+    } // assertRotation( Matrix4X4, Quaternion, double )
+
+    /**
+     * Checks that two quaternions are equal.
+     */
+    private static void assertQuaternion(Quaternion expected, Quaternion q) {
+        assertEquals(expected.w(), q.w(), TOLERANCE);
+        assertEquals(expected.x(), q.x(), TOLERANCE);
+        assertEquals(expected.y(), q.y(), TOLERANCE);
+        assertEquals(expected.z(), q.z(), TOLERANCE);
+    } // assertQuaternion( Quaternion, Quaternion )
+
+    /**
+     * Returns a random rotation.
+     */
+    private static Quaternion randomQuaternion(Random random) {
+        Quaternion q = new Quaternion();
+        q.axisAngle(random.nextGaussian(), random.nextGaussian(),
+                random.nextGaussian(), (random.nextDouble() - 0.5) * 2
+                * Math.PI);
+        return q;
+    } // randomQuaternion( Random )
+
+    /**
+     * Returns a random rotation matrix built from the matrix rotations.
+     */
+    private static Matrix4X4 randomRotation(Random random) {
+        Matrix4X4 x = new Matrix4X4();
+        Matrix4X4 y = new Matrix4X4();
+        Matrix4X4 z = new Matrix4X4();
+        x.rotationX((random.nextDouble() - 0.5) * 2 * Math.PI);
+        y.rotationY((random.nextDouble() - 0.5) * 2 * Math.PI);
+        z.rotationZ((random.nextDouble() - 0.5) * 2 * Math.PI);
+        return z.multiply(y).multiply(x);
+    } // randomRotation( Random )
+
+} // QuaternionTest
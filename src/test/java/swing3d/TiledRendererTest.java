@@ -0,0 +1,96 @@
+package swing3d;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that TiledRenderer draws exactly what ZBufferRenderer draws: within a
+ * tile, triangles keep their submission order, so the depth tests and ties
+ * come out the same.
+ *
+ * @author marcus
+ */
+public class TiledRendererTest {
+
+    private static final Color BACKGROUND = Color.darkGray;
+
+    @Test
+    public void matchesTheZBufferForAFewObjects() {
+        assertSameAsZBuffer(300, 300, 9, false);
+        assertSameAsZBuffer(300, 300, 9, true);
+    } // matchesTheZBufferForAFewObjects()
+
+    @Test
+    public void matchesTheZBufferForManyObjects() {
+        assertSameAsZBuffer(1920, 1200, 400, false);
+        assertSameAsZBuffer(1920, 1200, 400, true);
+    } // matchesTheZBufferForManyObjects()
+
+    @Test
+    public void matchesTheZBufferForOddSizes() {
+        //panels that end part way through a tile
+        assertSameAsZBuffer(65, 130, 4, false);
+        assertSameAsZBuffer(333, 97, 16, true);
+    } // matchesTheZBufferForOddSizes()
+
+    /**
+     * Renders a few frames of a scene with both renderers, flat and Gouraud
+     * shaded, and checks every pixel agrees.
+     */
+    private static void assertSameAsZBuffer(int width, int height, int n,
+            boolean instanced) {
+        Scene start = instanced
+                ? SwingPanel.createInstancedScene(n, 12, "normal")
+                : SwingPanel.createScene(n, 12, "normal");
+        Scene scene = new Scene(start);
+        Camera camera = new Camera();
+        camera.setViewport(0, 0, width, height);
+        for (Illumination.Shading shading : Illumination.Shading.values()) {
+            Illumination illumination = new Illumination();
+            illumination.setShading(shading);
+            Renderer zBuffer = new ZBufferRenderer(illumination,
+                    new BackFaceCuller(), new FrameMetrics());
+            Renderer tiled = new TiledRenderer(illumination,
+                    new BackFaceCuller(), new FrameMetrics());
+            for (long frame : new long[]{0, 37, 500}) {
+                scene.setFrame(start, frame);
+                BufferedImage expected = render(zBuffer, camera, scene, width,
+                        height);
+                BufferedImage actual = render(tiled, camera, scene, width,
+                        height);
+                int drawn = 0;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int rgb = expected.getRGB(x, y);
+                        if (rgb != actual.getRGB(x, y)) {
+                            throw new AssertionError(width + "x" + height
+                                    + " " + shading + " frame " + frame
+                                    + " differs at " + x + ", " + y);
+                        }
+                        if (rgb != BACKGROUND.getRGB()) {
+                            drawn++;
+                        }
+                    } // for x
+                } // for y
+                assertTrue(drawn > 0, "nothing was drawn");
+            } // for frame
+        } // for shading
+    } // assertSameAsZBuffer( int, int, int, boolean )
+
+    /**
+     * Renders a scene onto a new image.
+     */
+    private static BufferedImage render(Renderer renderer, Camera camera,
+            Scene scene, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        renderer.render(g, camera, scene, BACKGROUND, width, height);
+        g.dispose();
+        return image;
+    } // render( Renderer, Camera, Scene, int, int )
+
+} // TiledRendererTest
@@ -0,0 +1,83 @@
+package swing3d;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that TripleBuffer hands the reader the latest published copy, keeps
+ * it until something newer is published, and never lets the writer and the
+ * reader hold the same copy.
+ *
+ * @author marcus
+ */
+public class TripleBufferTest {
+
+    @Test
+    public void acquireReturnsTheLatestPublished() {
+        TripleBuffer<int[]> buffer = newBuffer();
+        buffer.getBack()[0] = 1;
+        buffer.publish();
+        buffer.getBack()[0] = 2;
+        buffer.publish();
+        assertEquals(2, buffer.acquire()[0]);
+    } // acquireReturnsTheLatestPublished()
+
+    @Test
+    public void acquireKeepsTheFrontWhenNothingIsNew() {
+        TripleBuffer<int[]> buffer = newBuffer();
+        buffer.getBack()[0] = 1;
+        buffer.publish();
+        int[] front = buffer.acquire();
+        assertSame(front, buffer.acquire());
+        assertEquals(1, front[0]);
+    } // acquireKeepsTheFrontWhenNothingIsNew()
+
+    @Test
+    public void writerNeverGetsTheFront() {
+        TripleBuffer<int[]> buffer = newBuffer();
+        for (int frame = 1; frame <= 20; frame++) {
+            buffer.getBack()[0] = frame;
+            buffer.publish();
+            //read every other frame, so both fresh and stale acquires happen
+            if (frame % 2 == 0) {
+                int[] front = buffer.acquire();
+                assertEquals(frame, front[0]);
+                assertNotSame(front, buffer.getBack());
+            }
+        } // for
+    } // writerNeverGetsTheFront()
+
+    @Test
+    public void readerSeesWholeFramesInOrder() throws InterruptedException {
+        TripleBuffer<int[]> buffer = newBuffer();
+        int frames = 200000;
+        Thread writer = new Thread(() -> {
+            for (int frame = 1; frame <= frames; frame++) {
+                int[] back = buffer.getBack();
+                back[0] = frame;
+                back[1] = -frame;
+                buffer.publish();
+            } // for
+        });
+        writer.start();
+        int last = 0;
+        while (last < frames) {
+            int[] front = buffer.acquire();
+            assertEquals(front[0], -front[1], "torn frame");
+            assertTrue(front[0] >= last, "went back from " + last);
+            last = front[0];
+        } // while
+        writer.join();
+    } // readerSeesWholeFramesInOrder()
+
+    /**
+     * Creates a buffer over three two-element arrays.
+     */
+    private static TripleBuffer<int[]> newBuffer() {
+        return new TripleBuffer<>(new int[2], new int[2], new int[2]);
+    } // newBuffer()
+
+} // TripleBufferTest